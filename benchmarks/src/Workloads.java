@@ -0,0 +1,130 @@
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.event.KeyEvent;
+import java.awt.event.KeyListener;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.function.IntSupplier;
+import java.util.function.IntUnaryOperator;
+import java.util.function.Supplier;
+
+/**
+ * For use in the game DinoType (Version 2)
+ *  The game code exercised by the JMH benchmarks. JMH refuses benchmark
+ *  classes in the default package and the game lives there, so the
+ *  benchmarks in the benchmarks package reach the game through these
+ *  factories, each returning a plain java.util.function type.
+ * @author Jay Acosta
+ */
+public class Workloads {
+
+    private static boolean assetsLoaded;
+
+    // returns a task that scans the prompt file and returns its segment count
+    public static IntSupplier parsePrompt(Path file) {
+        return () -> {
+            try {
+                return PromptFile.parse(file).size();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        };
+    }
+
+    // returns a function that types one character of the prompt into a matcher,
+    // starting over once the prompt is complete, and returns the matched length
+    public static IntUnaryOperator matcherKeystroke(String prompt) {
+
+        TypingMatcher matcher = new TypingMatcher();
+        matcher.reset(prompt);
+
+        return typed -> {
+            matcher.append((char) typed);
+            if (matcher.isComplete() || matcher.hasError()) {
+                matcher.reset(prompt);
+            }
+            return matcher.getMatchedLength();
+        };
+    }
+
+    // returns a function that sends one key event to a game panel, the same path a
+    // real key takes through KeyboardEar, and returns the length of the typed text.
+    // The key is typed into the game on the panel's game thread, so this measures
+    // what a key costs the EDT.
+    public static IntUnaryOperator panelKeystroke(String prompt) {
+
+        loadAssets();
+
+        GamePanel panel = new GamePanel();
+        KeyListener listener = panel.getKeyListeners()[0];
+        int[] typedLength = new int[1];
+
+        // repeat the prompt so a finished segment never ends the game
+        PromptSequence segments = PromptSequence.of(prompt, prompt, prompt, prompt);
+        panel.setCurrentPrompt(null, segments);
+
+        return typed -> {
+            if (typedLength[0] == prompt.length()) {
+                panel.resetGame();
+                panel.setCurrentPrompt(null, segments);
+                typedLength[0] = 0;
+            }
+
+            listener.keyTyped(new KeyEvent(panel, KeyEvent.KEY_TYPED, 0, 0, KeyEvent.VK_UNDEFINED, (char) typed));
+            return ++typedLength[0];
+        };
+    }
+
+    // returns a task that picks a prompt name from a catalog of the given size
+    public static Supplier<String> randomPrompt(int catalogSize, String selection) {
+
+        PromptCatalog catalog = new PromptCatalog();
+        for (int i = 0; i < catalogSize; i++) {
+            catalog.add("prompt-" + i + ".txt");
+        }
+
+        PromptCatalog.Selection mode = PromptCatalog.Selection.valueOf(selection);
+        Random random = new Random(42);
+
+        return () -> catalog.pick(mode, random);
+    }
+
+    // returns a task that draws the game panel into an offscreen image, either the
+    // whole frame or only the input line the way a keystroke repaints it
+    public static IntSupplier renderFrame(boolean inputLineOnly) {
+
+        loadAssets();
+
+        GamePanel panel = new GamePanel();
+        panel.setCurrentPrompt(null, FileManager.getRandomPrompt());
+
+        BufferedImage image = new BufferedImage(GameFrame.WIDTH, GameFrame.HEIGHT, BufferedImage.TYPE_INT_RGB);
+        Rectangle inputLine = new Rectangle(0, GameFrame.HEIGHT - 4 * 20 - 30, GameFrame.WIDTH, 40);
+
+        return () -> {
+            Graphics2D graphics = image.createGraphics();
+            try {
+                if (inputLineOnly) {
+                    graphics.setClip(inputLine);
+                }
+                panel.render(graphics, 1.0);
+            } finally {
+                graphics.dispose();
+            }
+            return image.getRGB(0, GameFrame.HEIGHT - 1);
+        };
+    }
+
+    // loads the prompts and dino frames the panel draws, once per JVM
+    private static synchronized void loadAssets() {
+        if (!assetsLoaded) {
+            // panels made for benchmarks should not open a sound device or click on every key
+            System.setProperty("dinotype.audio", "false");
+            new FileManager();
+            assetsLoaded = true;
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package benchmarks;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * For use in the game DinoType (Version 2)
+ *  Prints how every benchmark changed between two JMH CSV result files, so a
+ *  review can show the effect of a change next to the committed baseline.
+ *  Usage: CompareResults baseline.csv latest.csv
+ * @author Jay Acosta
+ */
+public class CompareResults {
+
+    public static void main(String[] args) throws IOException {
+
+        if (args.length != 2) {
+            System.out.println("usage: CompareResults <baseline.csv> <latest.csv>");
+            System.exit(1);
+        }
+
+        Path baselinePath = Paths.get(args[0]);
+        if (!Files.exists(baselinePath)) {
+            System.out.println("No baseline at " + baselinePath + ", run jmhBaseline to create one.");
+            return;
+        }
+
+        Map<String, String[]> baseline = read(baselinePath);
+        Map<String, String[]> latest = read(Paths.get(args[1]));
+
+        System.out.println(String.format("%-70s %14s %14s %9s  %s", "benchmark", "baseline", "latest", "change", "unit"));
+
+        for (Map.Entry<String, String[]> entry : latest.entrySet()) {
+
+            String[] now = entry.getValue();
+            String[] before = baseline.get(entry.getKey());
+            double score = Double.parseDouble(now[1]);
+
+            if (before == null) {
+                System.out.println(String.format("%-70s %14s %14.3f %9s  %s", entry.getKey(), "-", score, "new", now[2]));
+            } else {
+                double previous = Double.parseDouble(before[1]);
+                double change = (score - previous) / previous * 100;
+                System.out.println(String.format("%-70s %14.3f %14.3f %+8.1f%%  %s",
+                        entry.getKey(), previous, score, change, now[2]));
+            }
+        }
+    }
+
+    // returns {mode, score, unit} for each benchmark and parameter combination in the file
+    private static Map<String, String[]> read(Path path) throws IOException {
+
+        List<String> lines = Files.readAllLines(path, StandardCharsets.UTF_8);
+        Map<String, String[]> results = new LinkedHashMap<>();
+
+        if (lines.isEmpty()) {
+            return results;
+        }
+
+        List<String> header = parseLine(lines.get(0));
+        int benchmark = header.indexOf("Benchmark");
+        int mode = header.indexOf("Mode");
+        int score = header.indexOf("Score");
+        int unit = header.indexOf("Unit");
+
+        for (String line : lines.subList(1, lines.size())) {
+
+            List<String> columns = parseLine(line);
+            StringBuilder key = new StringBuilder(columns.get(benchmark));
+
+            // every column after the unit is a parameter
+            for (int i = unit + 1; i < columns.size(); i++) {
+                if (columns.get(i).isEmpty()) {
+                    // the parameter belongs to another benchmark in the file
+                    continue;
+                }
+                key.append(' ').append(header.get(i).replace("Param: ", "")).append('=').append(columns.get(i));
+            }
+
+            results.put(key.toString(), new String[]{columns.get(mode), columns.get(score), columns.get(unit)});
+        }
+
+        return results;
+    }
+
+    // splits a CSV line, values in quotes may contain commas
+    private static List<String> parseLine(String line) {
+
+        List<String> columns = new ArrayList<>();
+        StringBuilder current = new StringBuilder();
+        boolean quoted = false;
+
+        for (int i = 0; i < line.length(); i++) {
+
+            char c = line.charAt(i);
+
+            if (c == '"') {
+                if (quoted && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    current.append('"');
+                    i++;
+                } else {
+                    quoted = !quoted;
+                }
+            } else if (c == ',' && !quoted) {
+                columns.add(current.toString());
+                current.setLength(0);
+            } else {
+                current.append(c);
+            }
+        }
+
+        columns.add(current.toString());
+        return columns;
+    }
+}
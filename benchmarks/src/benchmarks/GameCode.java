@@ -0,0 +1,34 @@
+package benchmarks;
+
+import java.lang.reflect.Method;
+
+/**
+ * For use in the game DinoType (Version 2)
+ *  Looks up the workloads the game exposes in the default package class
+ *  Workloads. Lookups happen once per trial in @Setup, so the measured code
+ *  only ever calls the returned java.util.function object.
+ * @author Jay Acosta
+ */
+final class GameCode {
+
+    private GameCode() {
+    }
+
+    // returns the result of Workloads.<factory>(arguments) as the given type
+    static <T> T workload(String factory, Class<T> type, Object... arguments) {
+
+        try {
+            Class<?> workloads = Class.forName("Workloads");
+
+            for (Method method : workloads.getMethods()) {
+                if (method.getName().equals(factory) && method.getParameterCount() == arguments.length) {
+                    return type.cast(method.invoke(null, arguments));
+                }
+            }
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("cannot create workload " + factory, e);
+        }
+
+        throw new IllegalArgumentException("there is no workload named " + factory);
+    }
+}
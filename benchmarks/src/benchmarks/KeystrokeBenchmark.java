@@ -0,0 +1,53 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntUnaryOperator;
+
+/**
+ * For use in the game DinoType (Version 2)
+ *  Cost of one keystroke: the prompt matcher alone, and a full key event
+ *  through the game panel's KeyboardEar, which is where checkGameConditions
+ *  runs in the game.
+ * @author Jay Acosta
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class KeystrokeBenchmark {
+
+    // a short lyric line and a long one, typed as one segment however long it is
+    @Param({"Take on Me", "We're talking away, I don't know what I'm to say"})
+    public String prompt;
+
+    private IntUnaryOperator matcher;
+    private IntUnaryOperator panel;
+    private int position;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        matcher = GameCode.workload("matcherKeystroke", IntUnaryOperator.class, prompt);
+        panel = GameCode.workload("panelKeystroke", IntUnaryOperator.class, prompt);
+    }
+
+    @Benchmark
+    public int matcher() {
+        return matcher.applyAsInt(nextChar());
+    }
+
+    @Benchmark
+    public int panel() {
+        return panel.applyAsInt(nextChar());
+    }
+
+    // types the prompt correctly, over and over
+    private char nextChar() {
+        char next = prompt.charAt(position);
+        position = (position + 1) % prompt.length();
+        return next;
+    }
+}
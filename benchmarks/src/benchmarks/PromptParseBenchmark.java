@@ -0,0 +1,88 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntSupplier;
+
+/**
+ * For use in the game DinoType (Version 2)
+ *  Throughput of scanning one prompt file into its segment table, the work
+ *  FileManager.updateWordFiles does for every new or changed file. The
+ *  corpus is generated lyrics with repeated lines and the occasional long
+ *  line, which stays one segment and is only wrapped when the game lays it
+ *  out on screen.
+ * @author Jay Acosta
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class PromptParseBenchmark {
+
+    // song sized, album sized and book sized prompts
+    @Param({"40", "4000", "100000"})
+    public int lines;
+
+    private Path corpus;
+    private IntSupplier parse;
+
+    @Setup(Level.Trial)
+    public void generateCorpus() throws IOException {
+
+        corpus = Files.createTempFile("dinotype-corpus", ".txt");
+        Random random = new Random(lines);
+        String[] words = {"take", "on", "me", "dance", "with", "somebody", "every", "breath", "you",
+                "jessie's", "girl", "I", "wanna", "feel", "the", "heat", "watching", "away"};
+        String[] chorus = new String[8];
+
+        for (int i = 0; i < chorus.length; i++) {
+            chorus[i] = line(random, words, 4 + random.nextInt(6));
+        }
+
+        try (Writer writer = Files.newBufferedWriter(corpus, StandardCharsets.UTF_8)) {
+            for (int i = 0; i < lines; i++) {
+                // a third of the lines repeat the chorus, one in twenty is a long line
+                if (random.nextInt(3) == 0) {
+                    writer.write(chorus[random.nextInt(chorus.length)]);
+                } else {
+                    writer.write(line(random, words, random.nextInt(20) == 0 ? 25 : 3 + random.nextInt(8)));
+                }
+                writer.write('\n');
+            }
+        }
+
+        parse = GameCode.workload("parsePrompt", IntSupplier.class, corpus);
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteCorpus() throws IOException {
+        Files.deleteIfExists(corpus);
+    }
+
+    @Benchmark
+    public int parse() {
+        return parse.getAsInt();
+    }
+
+    private static String line(Random random, String[] words, int length) {
+
+        StringBuilder line = new StringBuilder();
+        for (int i = 0; i < length; i++) {
+            if (i > 0) {
+                line.append(' ');
+            }
+            line.append(words[random.nextInt(words.length)]);
+        }
+
+        return line.toString();
+    }
+}
@@ -0,0 +1,40 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * For use in the game DinoType (Version 2)
+ *  Cost of picking a prompt for "Play random!" from catalogs of different
+ *  sizes in each of the catalog's selection modes.
+ * @author Jay Acosta
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class RandomPromptBenchmark {
+
+    @Param({"10", "10000", "100000"})
+    public int catalogSize;
+
+    @Param({"UNIFORM", "SHUFFLE", "WEIGHTED"})
+    public String selection;
+
+    private Supplier<String> pick;
+
+    @Setup(Level.Trial)
+    @SuppressWarnings("unchecked")
+    public void setUp() {
+        pick = GameCode.workload("randomPrompt", Supplier.class, catalogSize, selection);
+    }
+
+    @Benchmark
+    public String pick() {
+        return pick.get();
+    }
+}
@@ -0,0 +1,40 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntSupplier;
+
+/**
+ * For use in the game DinoType (Version 2)
+ *  Cost of drawing the game panel into an offscreen BufferedImage, as a whole
+ *  frame and as the input line repaint that follows a keystroke.
+ * @author Jay Acosta
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class RenderBenchmark {
+
+    private IntSupplier fullFrame;
+    private IntSupplier inputLine;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        fullFrame = GameCode.workload("renderFrame", IntSupplier.class, false);
+        inputLine = GameCode.workload("renderFrame", IntSupplier.class, true);
+    }
+
+    @Benchmark
+    public int fullFrame() {
+        return fullFrame.getAsInt();
+    }
+
+    @Benchmark
+    public int inputLine() {
+        return inputLine.getAsInt();
+    }
+}
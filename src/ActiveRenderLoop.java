@@ -0,0 +1,174 @@
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.GraphicsConfiguration;
+import java.awt.GraphicsDevice;
+import java.awt.GraphicsEnvironment;
+import java.awt.DisplayMode;
+import java.awt.Toolkit;
+import java.awt.image.VolatileImage;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * For use in the game DinoType (Version 2)
+ *  Draws a GamePanel from its own thread instead of waiting for repaints.
+ *  The game thread updates the game in fixed time steps; this loop draws its
+ *  newest snapshot as often as the display refreshes into an accelerated
+ *  VolatileImage, interpolating between the last two updates so movement
+ *  stays smooth whatever the frame rate.
+ *  Achieved frames per second and frame time jitter are measured as it runs.
+ * @author Jay Acosta
+ */
+public class ActiveRenderLoop implements Runnable {
+
+    // class constants
+    // the game thread ticks this often while the loop draws
+    public static final long UPDATE_NANOS = 10_000_000L; // 100 updates per second
+    private static final int DEFAULT_REFRESH_RATE = 60;
+    private static final int STATS_SAMPLES = 120;
+
+    private final GamePanel panel;
+    private final long frameNanos;
+
+    // the thread currently driving the panel, a stopped thread sees it replaced and exits
+    private volatile Thread thread;
+    private VolatileImage backBuffer;
+
+    // the most recent frame times in a ring, used for the rate and jitter
+    private final long[] frameTimes = new long[STATS_SAMPLES];
+    private int frameCount;
+    private volatile double framesPerSecond;
+    private volatile double jitterMillis;
+
+    public ActiveRenderLoop(GamePanel panel) {
+        this.panel = panel;
+        this.frameNanos = 1_000_000_000L / displayRefreshRate();
+    }
+
+    // post: starts drawing the panel if the loop is not already running
+    public synchronized void start() {
+
+        if (thread != null) {
+            return;
+        }
+
+        thread = new Thread(this, "render-loop");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    // post: the loop stops after the current frame
+    public synchronized void stop() {
+        thread = null;
+    }
+
+    public boolean isRunning() {
+        return thread != null;
+    }
+
+    // returns the frames drawn per second, averaged over the last STATS_SAMPLES frames
+    public double getFramesPerSecond() {
+        return framesPerSecond;
+    }
+
+    // returns the standard deviation of the time between frames in milliseconds
+    public double getJitterMillis() {
+        return jitterMillis;
+    }
+
+    public void run() {
+
+        while (thread == Thread.currentThread()) {
+
+            long now = System.nanoTime();
+
+            // draw the dino part of the way from the last tick to the next one
+            long sinceTick = now - panel.getSnapshot().getTickNanos();
+            double alpha = Math.max(0, Math.min(1, (double) sinceTick / UPDATE_NANOS));
+
+            long paintStart = System.nanoTime();
+            GameSnapshot drawn = renderFrame(alpha);
+            if (drawn != null) {
+                GameMetrics.get().framePainted(paintStart, System.nanoTime(), drawn.getKeyNanos());
+            }
+            recordFrame(now);
+
+            long sleep = now + frameNanos - System.nanoTime();
+            if (sleep > 0) {
+                LockSupport.parkNanos(sleep);
+            }
+        }
+    }
+
+    // post: draws a frame and returns the snapshot it showed, or null if the panel is not on screen
+    private GameSnapshot renderFrame(double alpha) {
+
+        GraphicsConfiguration configuration = panel.getGraphicsConfiguration();
+        if (configuration == null) {
+            // the panel is not on screen yet
+            return null;
+        }
+
+        GameSnapshot drawn;
+        do {
+            if (backBuffer == null
+                    || backBuffer.validate(configuration) == VolatileImage.IMAGE_INCOMPATIBLE) {
+                backBuffer = configuration.createCompatibleVolatileImage(GameFrame.WIDTH, GameFrame.HEIGHT);
+            }
+
+            Graphics2D graphics = backBuffer.createGraphics();
+            try {
+                drawn = panel.render(graphics, alpha);
+            } finally {
+                graphics.dispose();
+            }
+
+            Graphics screen = panel.getGraphics();
+            if (screen != null) {
+                screen.drawImage(backBuffer, 0, 0, null);
+                screen.dispose();
+            }
+        } while (backBuffer.contentsLost());
+
+        Toolkit.getDefaultToolkit().sync();
+        return drawn;
+    }
+
+    private void recordFrame(long now) {
+
+        frameTimes[frameCount % STATS_SAMPLES] = now;
+        frameCount++;
+
+        int samples = Math.min(frameCount, STATS_SAMPLES);
+        if (samples < 2) {
+            return;
+        }
+
+        // walk the ring from the oldest frame to the newest
+        int oldest = (frameCount - samples) % STATS_SAMPLES;
+        double sum = 0;
+        double sumOfSquares = 0;
+
+        for (int i = 1; i < samples; i++) {
+            long interval = frameTimes[(oldest + i) % STATS_SAMPLES] - frameTimes[(oldest + i - 1) % STATS_SAMPLES];
+            double millis = interval / 1e6;
+            sum += millis;
+            sumOfSquares += millis * millis;
+        }
+
+        double mean = sum / (samples - 1);
+        framesPerSecond = 1000.0 / mean;
+        jitterMillis = Math.sqrt(Math.max(0, sumOfSquares / (samples - 1) - mean * mean));
+    }
+
+    private static int displayRefreshRate() {
+
+        if (GraphicsEnvironment.isHeadless()) {
+            return DEFAULT_REFRESH_RATE;
+        }
+
+        GraphicsDevice device = GraphicsEnvironment.getLocalGraphicsEnvironment().getDefaultScreenDevice();
+        int refreshRate = device.getDisplayMode().getRefreshRate();
+
+        return refreshRate == DisplayMode.REFRESH_RATE_UNKNOWN ? DEFAULT_REFRESH_RATE : refreshRate;
+    }
+}
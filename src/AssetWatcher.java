@@ -0,0 +1,111 @@
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * For use in the game DinoType (Version 2)
+ *  Watches the prompts and dino frames directories on a background thread and
+ *  tells the FileManager which files changed, so files can be added, edited
+ *  and removed while the game is running.
+ * @author Jay Acosta
+ */
+public class AssetWatcher implements Runnable {
+
+    // class constants
+    // editors often write a file in several steps, so wait for the directory to go quiet
+    private static final long QUIET_PERIOD_MILLIS = 200;
+
+    private final FileManager fileManager;
+    private final WatchService watchService;
+
+    private final WatchKey framesKey;
+
+    /**
+     * pre: both directories exist
+     * post: registers the directories with a new WatchService, call start() to begin watching
+     */
+    public AssetWatcher(FileManager fileManager, String promptsDirectory, String framesDirectory) throws IOException {
+        this.fileManager = fileManager;
+
+        watchService = FileSystems.getDefault().newWatchService();
+        register(Paths.get(promptsDirectory));
+        framesKey = register(Paths.get(framesDirectory));
+    }
+
+    // post: starts watching on a daemon thread
+    public void start() {
+        Thread thread = new Thread(this, "asset-watcher");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    // post: stops watching, the watcher thread exits shortly after
+    public void stop() {
+        try {
+            watchService.close();
+        } catch (IOException e) {
+            System.out.println("Error while closing the asset watcher");
+        }
+    }
+
+    public void run() {
+
+        try {
+            while (true) {
+
+                // block until something changes, then gather everything else that changes with it
+                WatchKey key = watchService.take();
+
+                Set<String> changedPrompts = new HashSet<>();
+                boolean framesChanged = false;
+                boolean rescanPrompts = false;
+
+                while (key != null) {
+
+                    for (WatchEvent<?> event : key.pollEvents()) {
+
+                        if (key == framesKey) {
+                            framesChanged = true;
+                        } else if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                            // too many events were dropped, look at the whole directory again
+                            rescanPrompts = true;
+                        } else {
+                            changedPrompts.add(event.context().toString());
+                        }
+                    }
+
+                    key.reset();
+                    key = watchService.poll(QUIET_PERIOD_MILLIS, TimeUnit.MILLISECONDS);
+                }
+
+                if (rescanPrompts) {
+                    fileManager.reloadAllPrompts();
+                } else if (!changedPrompts.isEmpty()) {
+                    fileManager.reloadPrompts(changedPrompts);
+                }
+
+                if (framesChanged) {
+                    fileManager.reloadFrames();
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // the watcher was stopped
+        }
+    }
+
+    private WatchKey register(Path directory) throws IOException {
+        return directory.register(watchService,
+                StandardWatchEventKinds.ENTRY_CREATE,
+                StandardWatchEventKinds.ENTRY_MODIFY,
+                StandardWatchEventKinds.ENTRY_DELETE);
+    }
+}
@@ -0,0 +1,78 @@
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.UnsupportedAudioFileException;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * For use in the game DinoType (Version 2)
+ *  A short sound decoded ahead of time into mono 16 bit samples at the rate
+ *  of the AudioEngine, so playing it only copies samples.
+ * @author Jay Acosta
+ */
+public final class AudioClip {
+
+    // class constants
+    public static final AudioFormat FORMAT = new AudioFormat(AudioEngine.SAMPLE_RATE, 16, 1, true, false);
+
+    private final short[] samples;
+
+    private AudioClip(short[] samples) {
+        this.samples = samples;
+    }
+
+    /**
+     * pre: path != null
+     * post: reads and decodes the whole file, which must be a format Java Sound
+     *  can convert to FORMAT, such as a 16 bit WAV at the same rate
+     */
+    public static AudioClip decode(Path path) throws IOException {
+
+        try (AudioInputStream source = AudioSystem.getAudioInputStream(path.toFile());
+             AudioInputStream converted = AudioSystem.getAudioInputStream(FORMAT, source)) {
+
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            converted.transferTo(bytes);
+
+            byte[] data = bytes.toByteArray();
+            short[] samples = new short[data.length / 2];
+            for (int i = 0; i < samples.length; i++) {
+                samples[i] = (short) ((data[2 * i] & 0xFF) | (data[2 * i + 1] << 8));
+            }
+
+            return new AudioClip(samples);
+        } catch (UnsupportedAudioFileException | IllegalArgumentException e) {
+            throw new IOException(path.getFileName() + " cannot be decoded: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * pre: frequency > 0, millis > 0, 0 <= volume <= 1
+     * post: returns a sine tone that fades out over its length, for key clicks
+     *  and other effects when there are no sound files
+     */
+    public static AudioClip tone(double frequency, int millis, double volume) {
+
+        short[] samples = new short[(int) (AudioEngine.SAMPLE_RATE * millis / 1000)];
+
+        for (int i = 0; i < samples.length; i++) {
+            double fade = 1 - (double) i / samples.length;
+            double value = Math.sin(2 * Math.PI * frequency * i / AudioEngine.SAMPLE_RATE) * fade * fade;
+            samples[i] = (short) (value * volume * Short.MAX_VALUE);
+        }
+
+        return new AudioClip(samples);
+    }
+
+    // returns the number of samples in the clip
+    public int length() {
+        return samples.length;
+    }
+
+    // the samples themselves, for use by AudioEngine only, which never writes them
+    short[] samples() {
+        return samples;
+    }
+}
@@ -0,0 +1,439 @@
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.LineUnavailableException;
+import javax.sound.sampled.SourceDataLine;
+import javax.sound.sampled.UnsupportedAudioFileException;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * For use in the game DinoType (Version 2)
+ *  Plays the song of a prompt as the player types it, along with short effect
+ *  clips. The song is split evenly across the segments of the prompt and only
+ *  plays as far as the end of the segment being typed, so a player who types
+ *  faster hears more of it sooner and a player who stops hears it stop.
+ *
+ *  One mixer thread streams the song from its file and mixes it with the clips
+ *  into a small block, then writes the block to a SourceDataLine, whose small
+ *  buffer keeps the delay between a key and its click short. Other threads
+ *  only set volatile fields and queue clips in a fixed ring, and the mixer
+ *  reuses the same buffers for every block, so once a song is open mixing
+ *  does not allocate. Without a sound device the same mixing can be driven by
+ *  render() instead, to test timing and sync.
+ * @author Jay Acosta
+ */
+public class AudioEngine implements Runnable {
+
+    // class constants
+    public static final float SAMPLE_RATE = 44_100;
+    public static final AudioFormat FORMAT = new AudioFormat(SAMPLE_RATE, 16, 2, true, false);
+    private static final int CHANNELS = 2;
+    private static final int FRAME_BYTES = 4;
+
+    // frames mixed at a time, about 6 ms
+    public static final int BLOCK_FRAMES = 256;
+    // blocks the line buffers ahead of what is heard, about 23 ms
+    private static final int LINE_BLOCKS = 4;
+
+    private static final int MAX_VOICES = 16;
+    private static final int TRIGGER_CAPACITY = 64; // a power of two
+
+    // the line is null when rendering without a device
+    private final SourceDataLine line;
+    private volatile boolean running;
+    private Thread mixer;
+
+    // clips are added before the mixer starts and never change after
+    private final List<AudioClip> clips = new ArrayList<>();
+    private short[][] clipSamples = new short[0][];
+
+    // clips to start, written by one thread and read by the mixer
+    private final int[] triggers = new int[TRIGGER_CAPACITY];
+    private volatile long triggersWritten;
+    private volatile long triggersRead;
+
+    // voices playing a clip, owned by the mixer
+    private final int[] voiceClip = new int[MAX_VOICES];
+    private final int[] voicePosition = new int[MAX_VOICES];
+    private int voiceCount;
+
+    // the song the mixer should play next, handed over by setSong
+    private volatile Path requestedSong;
+    private volatile boolean songChanged;
+
+    // the song being played, owned by the mixer
+    private AudioInputStream song;
+    private long songFrames; // length of the song, or -1 if it is not known
+    private long songPosition; // frames played so far
+
+    // how far the player has typed, as segments finished out of segmentCount
+    private volatile long progress; // finished segments in the high half, segment count in the low half
+
+    // buffers reused for every block
+    private final int[] mix = new int[BLOCK_FRAMES * CHANNELS];
+    private final short[] block = new short[BLOCK_FRAMES * CHANNELS];
+    // frames of block already handed out by render, the rest go out on the next call
+    private int blockFramesRendered = BLOCK_FRAMES;
+    private final byte[] blockBytes = new byte[BLOCK_FRAMES * FRAME_BYTES];
+    private final byte[] songBytes = new byte[BLOCK_FRAMES * FRAME_BYTES];
+
+    private volatile long framesMixed;
+    private volatile long triggersDropped;
+
+    private AudioEngine(SourceDataLine line) {
+        this.line = line;
+    }
+
+    /**
+     * pre: none
+     * post: opens the default sound device and returns an engine that plays to
+     *  it once started, or prints why and returns null if there is no device
+     */
+    public static AudioEngine open() {
+
+        try {
+            SourceDataLine line = AudioSystem.getSourceDataLine(FORMAT);
+            line.open(FORMAT, LINE_BLOCKS * BLOCK_FRAMES * FRAME_BYTES);
+            return new AudioEngine(line);
+        } catch (LineUnavailableException | IllegalArgumentException | SecurityException e) {
+            System.out.println("Error while opening the sound device, playing without sound: " + e.getMessage());
+            return null;
+        }
+    }
+
+    // returns an engine with no device, mixed only by calling render()
+    public static AudioEngine headless() {
+        return new AudioEngine(null);
+    }
+
+    /**
+     * pre: the engine has not started or rendered yet, clip != null
+     * post: adds a clip to be played with play() and returns its number
+     */
+    public synchronized int addClip(AudioClip clip) {
+
+        // check preconditions
+        if (running || framesMixed > 0) {
+            throw new IllegalStateException("clips must be added before the engine starts");
+        }
+
+        clips.add(clip);
+        clipSamples = new short[clips.size()][];
+        for (int i = 0; i < clipSamples.length; i++) {
+            clipSamples[i] = clips.get(i).samples();
+        }
+
+        return clips.size() - 1;
+    }
+
+    /**
+     * pre: the engine was opened on a device and is not running
+     * post: starts the mixer thread playing to the device
+     */
+    public synchronized void start() {
+
+        // check preconditions
+        if (line == null) {
+            throw new IllegalStateException("a headless engine is mixed by render()");
+        }
+        if (running) {
+            throw new IllegalStateException("the engine is already running");
+        }
+
+        running = true;
+        line.start();
+
+        mixer = new Thread(this, "audio-mixer");
+        mixer.setDaemon(true);
+        mixer.setPriority(Thread.MAX_PRIORITY);
+        mixer.start();
+    }
+
+    // post: stops the mixer and closes the device and the song
+    public synchronized void close() {
+
+        running = false;
+
+        if (mixer != null) {
+            try {
+                mixer.join(1000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        if (line != null) {
+            line.close();
+        }
+        closeSong();
+    }
+
+    /**
+     * pre: 0 <= clip < number of clips added
+     * post: starts the clip at the next block. Called by one thread only, the
+     *  game thread in the game. Never blocks, a clip is dropped if too many wait.
+     */
+    public void play(int clip) {
+
+        long written = triggersWritten;
+        if (written - triggersRead == TRIGGER_CAPACITY) {
+            triggersDropped++;
+            return;
+        }
+
+        triggers[(int) (written & (TRIGGER_CAPACITY - 1))] = clip;
+        triggersWritten = written + 1;
+    }
+
+    /**
+     * pre: none
+     * post: plays the song in the file from the start, paused until setProgress
+     *  lets it go. A null file, or one that cannot be played, plays no song.
+     */
+    public void setSong(Path file) {
+        progress = 0;
+        requestedSong = file;
+        songChanged = true;
+    }
+
+    /**
+     * pre: 0 <= finishedSegments <= segmentCount
+     * post: lets the song play up to the end of the segment after the finished
+     *  ones. A segment count of 0 holds the song where it is.
+     */
+    public void setProgress(int finishedSegments, int segmentCount) {
+        progress = ((long) finishedSegments << 32) | segmentCount;
+    }
+
+    public void run() {
+        while (running) {
+            mixBlock();
+            toBytes(block, blockBytes);
+            // blocks until the device has room, which paces the mixer
+            line.write(blockBytes, 0, blockBytes.length);
+        }
+        line.drain();
+    }
+
+    /**
+     * pre: the engine is headless, out has room for frames * 2 samples
+     * post: mixes the next frames of sound into out as interleaved stereo,
+     *  exactly as they would have been written to a device. Sound is still
+     *  mixed a block at a time; what a call does not use of its last block
+     *  starts the next call, so any number of frames may be asked for.
+     */
+    public void render(short[] out, int frames) {
+
+        // check preconditions
+        if (line != null) {
+            throw new IllegalStateException("only a headless engine is rendered by hand");
+        }
+
+        int done = 0;
+        while (done < frames) {
+
+            if (blockFramesRendered == BLOCK_FRAMES) {
+                mixBlock();
+                blockFramesRendered = 0;
+            }
+
+            int count = Math.min(BLOCK_FRAMES - blockFramesRendered, frames - done);
+            System.arraycopy(block, blockFramesRendered * CHANNELS, out, done * CHANNELS, count * CHANNELS);
+            blockFramesRendered += count;
+            done += count;
+        }
+    }
+
+    // returns the frames of the song played so far
+    public long getSongPosition() {
+        return songPosition;
+    }
+
+    // returns the length of the song in frames, or -1 if there is no song or its length is not known
+    public long getSongFrames() {
+        return song == null ? -1 : songFrames;
+    }
+
+    public long getFramesMixed() {
+        return framesMixed;
+    }
+
+    public long getTriggersDropped() {
+        return triggersDropped;
+    }
+
+    // returns the delay from a clip being played to it being heard, at most, in nanoseconds
+    public long getLatencyNanos() {
+        long bufferedFrames = line == null ? BLOCK_FRAMES : (long) BLOCK_FRAMES + line.getBufferSize() / FRAME_BYTES;
+        return (long) (bufferedFrames * 1e9 / SAMPLE_RATE);
+    }
+
+    // post: mixes the next BLOCK_FRAMES of the song and the clips into block
+    private void mixBlock() {
+
+        if (songChanged) {
+            songChanged = false;
+            openSong(requestedSong);
+        }
+
+        Arrays.fill(mix, 0);
+        startTriggeredClips();
+        mixSong();
+        mixVoices();
+
+        for (int i = 0; i < mix.length; i++) {
+            block[i] = (short) Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, mix[i]));
+        }
+
+        framesMixed += BLOCK_FRAMES;
+    }
+
+    private void startTriggeredClips() {
+
+        long read = triggersRead;
+        long written = triggersWritten;
+
+        for (; read < written; read++) {
+            int clip = triggers[(int) (read & (TRIGGER_CAPACITY - 1))];
+
+            // when every voice is busy the oldest one makes way
+            if (voiceCount == MAX_VOICES) {
+                removeVoice(0);
+            }
+
+            voiceClip[voiceCount] = clip;
+            voicePosition[voiceCount] = 0;
+            voiceCount++;
+        }
+
+        triggersRead = read;
+    }
+
+    private void mixVoices() {
+
+        for (int voice = voiceCount - 1; voice >= 0; voice--) {
+
+            short[] samples = clipSamples[voiceClip[voice]];
+            int position = voicePosition[voice];
+            int count = Math.min(BLOCK_FRAMES, samples.length - position);
+
+            // clips are mono, so the same sample goes to both channels
+            for (int frame = 0; frame < count; frame++) {
+                int sample = samples[position + frame];
+                mix[frame * CHANNELS] += sample;
+                mix[frame * CHANNELS + 1] += sample;
+            }
+
+            voicePosition[voice] = position + count;
+            if (voicePosition[voice] >= samples.length) {
+                removeVoice(voice);
+            }
+        }
+    }
+
+    private void removeVoice(int voice) {
+        voiceCount--;
+        System.arraycopy(voiceClip, voice + 1, voiceClip, voice, voiceCount - voice);
+        System.arraycopy(voicePosition, voice + 1, voicePosition, voice, voiceCount - voice);
+    }
+
+    // post: adds as much of the song as the player's progress allows to the block
+    private void mixSong() {
+
+        if (song == null) {
+            return;
+        }
+
+        int frames = (int) Math.min(BLOCK_FRAMES, Math.max(0, songLimit() - songPosition));
+        if (frames == 0) {
+            return;
+        }
+
+        int bytes = 0;
+        try {
+            while (bytes < frames * FRAME_BYTES) {
+                int read = song.read(songBytes, bytes, frames * FRAME_BYTES - bytes);
+                if (read < 0) {
+                    break;
+                }
+                bytes += read;
+            }
+        } catch (IOException e) {
+            System.out.println("Error while reading the song: " + e.getMessage());
+            closeSong();
+            return;
+        }
+
+        int framesRead = bytes / FRAME_BYTES;
+        for (int i = 0; i < framesRead * CHANNELS; i++) {
+            mix[i] += (short) ((songBytes[2 * i] & 0xFF) | (songBytes[2 * i + 1] << 8));
+        }
+
+        songPosition += framesRead;
+
+        if (framesRead < frames) {
+            // the song ended early
+            closeSong();
+        }
+    }
+
+    // returns the frame the song may play up to, given how far the player has typed
+    private long songLimit() {
+
+        long current = progress;
+        int finished = (int) (current >>> 32);
+        int segments = (int) current;
+
+        if (segments <= 0) {
+            return songPosition;
+        }
+        if (songFrames < 0) {
+            // without a length there is nothing to split, play on while there is progress
+            return Long.MAX_VALUE;
+        }
+
+        return songFrames * Math.min(finished + 1, segments) / segments;
+    }
+
+    private void openSong(Path file) {
+
+        closeSong();
+        songPosition = 0;
+
+        if (file == null) {
+            return;
+        }
+
+        try {
+            AudioInputStream source = AudioSystem.getAudioInputStream(file.toFile());
+            song = AudioSystem.getAudioInputStream(FORMAT, source);
+            songFrames = song.getFrameLength() == AudioSystem.NOT_SPECIFIED ? -1 : song.getFrameLength();
+        } catch (IOException | UnsupportedAudioFileException | IllegalArgumentException e) {
+            System.out.println("Error while opening the song " + file.getFileName() + ": " + e.getMessage());
+            song = null;
+        }
+    }
+
+    private void closeSong() {
+
+        if (song != null) {
+            try {
+                song.close();
+            } catch (IOException e) {
+                // nothing more to read from it either way
+            }
+            song = null;
+        }
+    }
+
+    private static void toBytes(short[] samples, byte[] bytes) {
+        for (int i = 0; i < samples.length; i++) {
+            bytes[2 * i] = (byte) samples[i];
+            bytes[2 * i + 1] = (byte) (samples[i] >> 8);
+        }
+    }
+}
@@ -0,0 +1,60 @@
+import java.awt.Font;
+import java.awt.Graphics2D;
+import java.awt.font.FontRenderContext;
+import java.awt.font.GlyphVector;
+
+/**
+ * For use in the game DinoType (Version 2)
+ *  A line of text whose glyphs are laid out once and reused on every paint
+ *  until the text, the font or the render context changes.
+ * @author Jay Acosta
+ */
+public class CachedText {
+
+    private final Font font;
+
+    private String text = "";
+    private GlyphVector glyphs;
+    private FontRenderContext renderContext;
+
+    public CachedText(Font font) {
+        this.font = font;
+    }
+
+    /**
+     * pre: text != null
+     * post: replaces the text, returns true if it is different from before
+     */
+    public boolean setText(String text) {
+
+        if (text.equals(this.text)) {
+            return false;
+        }
+
+        this.text = text;
+        glyphs = null;
+        return true;
+    }
+
+    public String getText() {
+        return text;
+    }
+
+    // post: draws the text with its baseline starting at (x, y) in the current color
+    public void draw(Graphics2D graphics, float x, float y) {
+
+        if (text.isEmpty()) {
+            return;
+        }
+
+        FontRenderContext current = graphics.getFontRenderContext();
+
+        // the layout depends on the context, e.g. antialiasing, so redo it if that changed
+        if (glyphs == null || !current.equals(renderContext)) {
+            renderContext = current;
+            glyphs = font.createGlyphVector(current, text);
+        }
+
+        graphics.drawGlyphVector(glyphs, x, y);
+    }
+}
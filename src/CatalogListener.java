@@ -0,0 +1,15 @@
+/**
+ * For use in the game DinoType (Version 2)
+ *  Told about every name added to or removed from a PromptCatalog, along with
+ *  its position in alphabetical order at the time. The catalog calls it while locked and
+ *  in the order the changes are made, so it must return quickly.
+ * @author Jay Acosta
+ */
+public interface CatalogListener {
+
+    // post: reacts to a name added at sortedIndex, the names after it moved down one
+    void nameAdded(String name, int sortedIndex);
+
+    // post: reacts to the name removed from sortedIndex, the names after it moved up one
+    void nameRemoved(String name, int sortedIndex);
+}
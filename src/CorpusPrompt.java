@@ -0,0 +1,78 @@
+import java.lang.ref.Cleaner;
+import java.util.Arrays;
+
+/**
+ * For use in the game DinoType (Version 2)
+ *  A prompt stored as the ids of its lines in a PromptCorpus shared by every
+ *  prompt, so a line repeated within or across prompts is held only once.
+ *  Once nothing uses the prompt any more its lines are given back to the
+ *  corpus, so a prompt dropped from memory frees the lines only it had.
+ * @author Jay Acosta
+ */
+public final class CorpusPrompt implements PromptSequence {
+
+    // class constants
+    // gives the lines of unreachable prompts back to their corpus, on a thread of its own
+    private static final Cleaner RELEASER = Cleaner.create();
+
+    private final PromptCorpus corpus;
+    private final int[] lineIds;
+    private final long retainedBytes;
+
+    // pre: every id was returned by corpus.intern once for each time it is listed,
+    //  lineIds is not changed after and is released by this prompt alone
+    CorpusPrompt(PromptCorpus corpus, int[] lineIds) {
+        this.corpus = corpus;
+        this.lineIds = lineIds;
+        this.retainedBytes = retainedBytes(corpus, lineIds);
+
+        // the action holds the corpus and the ids, never the prompt, or it would never be unreachable
+        RELEASER.register(this, () -> corpus.release(lineIds));
+    }
+
+    public int size() {
+        return lineIds.length;
+    }
+
+    /**
+     * pre: 0 <= index < size()
+     * post: returns the given line from the corpus
+     */
+    public String getSegment(int index) {
+
+        // check preconditions
+        if (index < 0 || index >= lineIds.length) {
+            throw new IndexOutOfBoundsException("segment index " + index + " is out of bounds");
+        }
+
+        return corpus.getLine(lineIds[index]);
+    }
+
+    public PromptCorpus getCorpus() {
+        return corpus;
+    }
+
+    /**
+     * post: returns roughly how many bytes of heap dropping the prompt could
+     *  free: its ids, and its distinct lines as if no other prompt shared
+     *  them. It does not change, so a cache can weigh the prompt by it.
+     */
+    public long getRetainedBytes() {
+        return retainedBytes;
+    }
+
+    private static long retainedBytes(PromptCorpus corpus, int[] lineIds) {
+
+        int[] distinct = lineIds.clone();
+        Arrays.sort(distinct);
+
+        long bytes = PromptCorpus.OBJECT_BYTES + PromptCorpus.ARRAY_BYTES + 4L * lineIds.length;
+        for (int i = 0; i < distinct.length; i++) {
+            if (i == 0 || distinct[i] != distinct[i - 1]) {
+                bytes += PromptCorpus.LINE_BYTES + corpus.getLineBytes(distinct[i]);
+            }
+        }
+
+        return bytes;
+    }
+}
@@ -1,11 +1,166 @@
+import javax.swing.SwingUtilities;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.net.InetSocketAddress;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicReference;
+
 /**
  * For use in the game DinoType (Version 2)
+ *
+ *  java Driver                                   play on your own
+ *  java Driver --join host[:port] [--name you]   play in the races of a server
+ *  java Driver --server [port] [--players n] [--difficulty 0-3] [--prompt file.txt] [--pick shuffle|uniform|weighted]
+ *  java Driver --load-test host[:port] players [wordsPerMinute] [seconds]
+ *
+ *  The result of every game, and of every racer on a server, is kept in SESSIONS_PATH.
  * @author Jay Acosta
  */
 public class Driver {
-    public static void main(String[] args) {
 
-        FileManager file = new FileManager();
-        GameFrame game = new GameFrame(file);
+    // class constants
+    private static final Path SESSIONS_PATH = Paths.get("./sessions.log");
+
+    public static void main(String[] args) throws IOException {
+
+        String mode = args.length > 0 ? args[0] : "";
+
+        if (mode.equals("--server")) {
+            runServer(args);
+            return;
+        }
+
+        if (mode.equals("--load-test")) {
+            RaceLoadTest.main(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
+
+        StartupTimer startup = new StartupTimer();
+
+        // show the main menu first and load everything else behind it
+        FileManager files = FileManager.empty();
+        GameFrame game = openWindow(files, startup);
+        CompletableFuture<Void> assets = files.load(game);
+
+        GameMetrics.get().register();
+        FileManager.getPromptCache().register();
+        startup.phaseDone("metrics");
+
+        SessionStore sessions = openSessions();
+        if (sessions != null) {
+            game.setSessionStore(sessions);
+        }
+        startup.phaseDone("sessions");
+
+        try {
+            assets.join();
+        } catch (CompletionException e) {
+            // the menu waits for assetsLoaded, so the game goes on with whatever did load
+            e.getCause().printStackTrace();
+            System.out.println("Error while loading the game files, starting with the ones that loaded");
+        }
+        files.watchForChanges();
+        game.assetsLoaded();
+        startup.phaseDone("assets");
+        startup.report();
+
+        if (mode.equals("--join") && args.length > 1) {
+            String name = option(args, "--name", System.getProperty("user.name"));
+            game.joinRace(parseAddress(args[1]), name);
+        }
+    }
+
+    // post: builds the window on the EDT and returns it, recording when it first shows in startup
+    private static GameFrame openWindow(FileManager files, StartupTimer startup) {
+
+        AtomicReference<GameFrame> window = new AtomicReference<>();
+
+        try {
+            SwingUtilities.invokeAndWait(() -> {
+                GameFrame game = new GameFrame(files);
+                game.addWindowListener(new WindowAdapter() {
+                    public void windowOpened(WindowEvent e) {
+                        startup.phaseDone("window");
+                    }
+                });
+                window.set(game);
+            });
+        } catch (InterruptedException | InvocationTargetException e) {
+            throw new IllegalStateException("the game window could not be opened", e);
+        }
+
+        startup.phaseDone("menu");
+        return window.get();
+    }
+
+    private static void runServer(String[] args) throws IOException {
+
+        int port = args.length > 1 && !args[1].startsWith("--") ? Integer.parseInt(args[1]) : RaceProtocol.DEFAULT_PORT;
+        int players = Integer.parseInt(option(args, "--players", "1"));
+        int difficulty = Integer.parseInt(option(args, "--difficulty", "1"));
+        String prompt = option(args, "--prompt", null);
+        PromptCatalog.Selection pick = PromptCatalog.Selection.valueOf(
+                option(args, "--pick", "shuffle").toUpperCase());
+
+        // the server races the prompts every player has in their own prompts folder
+        new FileManager();
+        SessionStore sessions = openSessions();
+
+        // weighted picks favour the prompts raced most often
+        if (pick == PromptCatalog.Selection.WEIGHTED && sessions != null) {
+            FileManager.weightByPlays(sessions);
+        }
+
+        RaceServer server = new RaceServer(port, players, difficulty, () -> {
+            if (prompt != null) {
+                return prompt;
+            }
+            String picked = FileManager.getCatalog().pick(pick, ThreadLocalRandom.current());
+            return picked == null ? "" : picked;
+        });
+
+        server.setSessionStore(sessions);
+        server.start();
+        System.out.println("Race server listening on port " + server.getPort());
+    }
+
+    // returns the session store, or null if it cannot be opened, in which case results are not kept
+    private static SessionStore openSessions() {
+        try {
+            return SessionStore.open(SESSIONS_PATH);
+        } catch (IOException e) {
+            System.out.println("Error while opening " + SESSIONS_PATH + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    // returns the value after the given option, or the default if the option is missing
+    private static String option(String[] args, String name, String defaultValue) {
+
+        for (int i = 0; i < args.length - 1; i++) {
+            if (args[i].equals(name)) {
+                return args[i + 1];
+            }
+        }
+
+        return defaultValue;
+    }
+
+    // returns the address of host[:port], using the default race port if there is none
+    public static InetSocketAddress parseAddress(String address) {
+
+        int colon = address.lastIndexOf(':');
+        if (colon < 0) {
+            return new InetSocketAddress(address, RaceProtocol.DEFAULT_PORT);
+        }
+
+        return new InetSocketAddress(address.substring(0, colon), Integer.parseInt(address.substring(colon + 1)));
     }
 }
@@ -2,11 +2,24 @@
 import javax.imageio.ImageIO;
 import javax.swing.*;
 import java.awt.*;
+import java.awt.image.BufferedImage;
 import java.io.File;
-import java.io.FileNotFoundException;
+import java.io.FileReader;
 import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.file.Paths;
 import java.util.*;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * For use in the game DinoType (Version 2)
@@ -18,150 +31,565 @@ public class FileManager {
 
     // class constants
     private final String PROMPTS_DIR_PATH = "./prompts/";
-    // Make one instance of all the text files present in the game
-    // Resetting the game is necessary in order to account for added files
-    private static Map<String, Queue<String>> textFiles;
-    private static List<Image> dinoFrames;
+    // cache of segment tables so unchanged prompts are not scanned on every launch
+    private final String PROMPT_INDEX_PATH = "./prompts.idx";
+    // share of the heap the prompts may take unless -Ddinotype.prompts.cache.mb says otherwise
+    private static final int DEFAULT_CACHE_SHARE = 4;
+    // The names of all text files present in the game, and the most recently
+    // played of them in memory. Added, edited and removed files are picked up by watchForChanges
+    private static PromptCatalog catalog;
+    private static PromptCache prompts;
+    // the distinct lines of the prompts in memory, each prompt holds only the ids of its lines
+    private static PromptCorpus corpus;
+    // the titles and lyrics of the same prompts indexed for type-ahead search, filled in
+    // by one thread of its own so loading never waits for the text of every prompt
+    private static PromptSearch search;
+    private static final ExecutorService searchIndexer = Executors.newSingleThreadExecutor(task -> {
+        Thread thread = new Thread(task, "prompt-search");
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MIN_PRIORITY);
+        return thread;
+    });
+    private static volatile SpriteAtlas dinoSprites;
     private final String FRAMES_DIR_PATH = "./images/dino-frames/";
+    // optional frame timing and sprite sheet settings inside the frames directory
+    private final String FRAMES_METADATA_FILE = "frames.properties";
+
+    // read by whichever thread asks for a prompt that is no longer in memory
+    private volatile PromptIndex promptIndex;
+    // notified after prompts or frames change on disk while the game is running
+    private final List<Runnable> changeListeners = new CopyOnWriteArrayList<>();
+
+    // number of files parsed or decoded at the same time
+    private final int LOADER_THREADS = Runtime.getRuntime().availableProcessors();
 
     /**
      * Updates the file processor
      */
     public FileManager() {
+        this(null);
+    }
 
-        textFiles = new HashMap<>();
-        dinoFrames = new LinkedList<>();
-        updateWordFiles();
-        updateFrameFiles();
+    /**
+     * Updates the file processor, loading prompts and frames in parallel
+     * and reporting every loaded file to the listener if it is not null
+     */
+    public FileManager(LoadProgressListener listener) {
+        this(listener, true);
     }
 
-    public static Queue<String> getRandomPrompt() {
+    private FileManager(LoadProgressListener listener, boolean loadNow) {
 
-        Queue<String> temp = new LinkedList<>();
-        temp.add("It looks like you have no files currently. Why?");
+        catalog = new PromptCatalog();
+        corpus = new PromptCorpus();
+        prompts = new PromptCache(cacheBudgetBytes(), this::readPrompt);
+        search = new PromptSearch();
+        dinoSprites = SpriteAtlas.empty();
 
-        if (textFiles == null || textFiles.isEmpty()) {
-            return temp;
+        if (loadNow) {
+            load(listener).join();
         }
+    }
+
+    /**
+     * pre: none
+     * post: returns a file processor with no prompts or frames yet, see load
+     */
+    public static FileManager empty() {
+        return new FileManager(null, false);
+    }
+
+    /**
+     * pre: nothing has been loaded yet
+     * post: loads prompts and frames in parallel on background threads, reporting
+     *  every loaded file to the listener if it is not null. Returns right away;
+     *  the result completes once everything is loaded and the change listeners
+     *  have been told.
+     */
+    public CompletableFuture<Void> load(LoadProgressListener listener) {
+
+        ExecutorService loaders = Executors.newFixedThreadPool(LOADER_THREADS, new LoaderThreadFactory());
 
-        int randomIndex = (int) (Math.random() * textFiles.size());
-        int index = 0;
+        // even listing the directories touches the disk, so that happens on the loaders too
+        return CompletableFuture.supplyAsync(() -> {
 
-        for (Queue<String> promptQueue : textFiles.values()) {
+            File[] promptFiles = listFiles(PROMPTS_DIR_PATH, "txt");
+            File[] images = listFiles(FRAMES_DIR_PATH, "jpg");
+            LoadProgress progress = new LoadProgress(promptFiles.length + images.length, listener);
 
-            if (index == randomIndex)
-                return promptQueue;
-            index++;
+            return CompletableFuture.allOf(
+                    updateWordFiles(promptFiles, loaders, progress),
+                    updateFrameFiles(images, loaders, progress));
+        }, loaders).thenCompose(loaded -> loaded).whenComplete((loaded, error) -> {
+            loaders.shutdown();
+            notifyChangeListeners();
+        });
+    }
+
+    // returns a random prompt, never repeating one until every prompt has been played
+    public static PromptSequence getRandomPrompt() {
+        return getRandomPrompt(PromptCatalog.Selection.SHUFFLE);
+    }
+
+    // returns a random prompt picked in the given way
+    public static PromptSequence getRandomPrompt(PromptCatalog.Selection selection) {
+
+        String fileName = getRandomPromptName(selection);
+
+        if (fileName == null) {
+            return PromptSequence.of("It looks like you have no files currently. Why?");
         }
 
-        return temp;
+        return getPrompt(fileName);
+    }
+
+    // returns the name of a random prompt file picked in the given way, or null if there are none
+    public static String getRandomPromptName(PromptCatalog.Selection selection) {
+        return catalog == null ? null : catalog.pick(selection, ThreadLocalRandom.current());
+    }
+
+    // returns the shared segments of the given prompt file, read from disk again if it is not in memory
+    public static PromptSequence getPrompt(String fileName) {
+
+        if (catalog == null || fileName == null || !catalog.contains(fileName)) {
+            return PromptSequence.of("It looks like that file is gone. Why?");
+        }
+
+        try {
+            return prompts.get(fileName);
+        } catch (IOException e) {
+            System.out.println("Error while reading " + fileName + " again: " + e.getMessage());
+            return PromptSequence.of("It looks like that file is gone. Why?");
+        }
+    }
+
+    /**
+     * pre: sessions != null
+     * post: weights every prompt by one more than the games of it in sessions,
+     *  counting the games added from now on too, so weighted picks favour the
+     *  prompts played most. Prompts loaded later start at the default weight.
+     */
+    public static void weightByPlays(SessionStore sessions) {
+
+        Map<String, Integer> plays = new ConcurrentHashMap<>();
+
+        for (SessionResult result : sessions.readAll()) {
+            plays.merge(result.getPromptName(), 1, Integer::sum);
+        }
+        plays.forEach(FileManager::setPlays);
+
+        sessions.addListener(result -> setPlays(result.getPromptName(),
+                plays.merge(result.getPromptName(), 1, Integer::sum)));
+    }
+
+    // post: weights the prompt by its number of games, if it is in the catalog
+    private static void setPlays(String fileName, int games) {
+
+        // the prompt cannot be removed between checking and weighting it
+        synchronized (catalog) {
+            if (catalog.contains(fileName)) {
+                catalog.setWeight(fileName, 1 + games);
+            }
+        }
+    }
+
+    public static PromptCache getPromptCache() {
+        return prompts;
     }
 
-    public static Map<String, Queue<String>> getTextFiles() {
-        return textFiles;
+    public static PromptCorpus getCorpus() {
+        return corpus;
     }
 
-    public Map<String, Queue<String>> getFilesInAlphabeticalOrder() {
-        return new TreeMap<>(textFiles);
+    public static PromptCatalog getCatalog() {
+        return catalog;
     }
 
-    public static List<Image> getDinoFrames() {
-        return dinoFrames;
+    public static PromptSearch getSearch() {
+        return search;
+    }
+
+    // returns a copy of the names of all prompt files in alphabetical order
+    public List<String> getFilesInAlphabeticalOrder() {
+        return catalog.getSortedNames();
+    }
+
+    // returns the number of lines of the prompt file without reading it, or -1 if it is not known
+    public int getLineCount(String fileName) {
+        PromptIndex index = promptIndex;
+        PromptFile prompt = index == null ? null : index.get(fileName);
+        return prompt == null ? -1 : prompt.size();
+    }
+
+    public static SpriteAtlas getDinoSprites() {
+        return dinoSprites;
+    }
+
+    // post: the listener is run on the watcher thread whenever prompts or frames are reloaded
+    public void addChangeListener(Runnable listener) {
+        changeListeners.add(listener);
     }
 
     /**
-     * pre: the directory "prompts" exists within the local directory
-     * post: updates the map contain the prompts that will be used in the main game
+     * pre: none
+     * post: starts watching the prompts and frames directories so that added,
+     *  edited and removed files are picked up without restarting the game
      */
-    private void updateWordFiles() {
+    public void watchForChanges() {
+        try {
+            new AssetWatcher(this, PROMPTS_DIR_PATH, FRAMES_DIR_PATH).start();
+        } catch (IOException e) {
+            e.printStackTrace();
+            System.out.println("Error while watching for new files, restart the game to load them");
+        }
+    }
 
+    /**
+     * pre: fileNames are names of files in the prompts directory
+     * post: parses each changed prompt again, or removes it if it was deleted or emptied.
+     *  A changed prompt leaves memory in one step, so readers see either the old
+     *  version or read the new one from disk.
+     */
+    void reloadPrompts(Set<String> fileNames) {
+
+        FilenameFilter textFilter = new GenericFilenameFilter("txt");
         File directory = new File(PROMPTS_DIR_PATH);
+        int updated = 0;
+
+        // a load that failed before reading the index leaves it to the first reload
+        if (promptIndex == null) {
+            promptIndex = PromptIndex.load(Paths.get(PROMPT_INDEX_PATH), Paths.get(PROMPTS_DIR_PATH));
+        }
+
+        for (String fileName : fileNames) {
+
+            if (!textFilter.accept(directory, fileName)) {
+                continue;
+            }
+
+            File textFile = new File(directory, fileName);
+
+            try {
+
+                PromptFile prompt = textFile.isFile() ? promptIndex.getOrParse(textFile) : null;
+
+                if (prompt != null && prompt.size() > 0) {
+                    putPrompt(fileName, prompt);
+                } else {
+                    removePrompt(fileName);
+                    promptIndex.remove(fileName);
+                }
+
+                updated++;
+            } catch (IOException e) {
+                e.printStackTrace();
+                System.out.println(" error while trying to read " + fileName);
+            }
+        }
+
+        if (updated > 0) {
+            promptIndex.save();
+            System.out.println("Reloaded " + updated + " prompt files.");
+            notifyChangeListeners();
+        }
+    }
+
+    // post: checks every prompt file again, used when changes were missed
+    void reloadAllPrompts() {
+
+        Set<String> fileNames = new HashSet<>(catalog.getSortedNames());
+        for (File textFile : listFiles(PROMPTS_DIR_PATH, "txt")) {
+            fileNames.add(textFile.getName());
+        }
+
+        reloadPrompts(fileNames);
+    }
+
+    // post: decodes all dino frames again and replaces the frame list in one step
+    void reloadFrames() {
+
+        File[] images = listFiles(FRAMES_DIR_PATH, "jpg");
+        updateFrameFiles(images, Runnable::run, new LoadProgress(images.length, null)).join();
+        notifyChangeListeners();
+    }
+
+    // post: the prompt is in the catalog, any older version of it is out of memory, and the
+    //  search index reads it next. Its lines are only read into the corpus once it is played.
+    private static void putPrompt(String fileName, PromptFile prompt) {
+        prompts.remove(fileName);
+        catalog.add(fileName);
+        searchIndexer.execute(() -> indexForSearch(fileName, prompt));
+    }
+
+    // post: the prompt is in neither the catalog nor memory, and leaves the search index next
+    private static void removePrompt(String fileName) {
+        searchIndexer.execute(() -> search.remove(fileName));
+        catalog.remove(fileName);
+        prompts.remove(fileName);
+    }
+
+    // post: the search index holds the words of the prompt, read from disk once and not kept
+    private static void indexForSearch(String fileName, PromptFile prompt) {
+        try {
+            search.add(fileName, prompt.read());
+        } catch (IOException e) {
+            System.out.println("Error while indexing " + fileName + " for search: " + e.getMessage());
+        }
+    }
+
+    // pre: fileName was listed from the prompts directory
+    // post: reads the prompt from disk again, reusing its segment table if the file has not changed
+    private CorpusPrompt readPrompt(String fileName) throws IOException {
+        return promptIndex.getOrParse(new File(PROMPTS_DIR_PATH, fileName)).intern(corpus);
+    }
+
+    // returns the bytes the prompts in memory may take, set in megabytes by -Ddinotype.prompts.cache.mb
+    private static long cacheBudgetBytes() {
+
+        long megabytes = Long.getLong("dinotype.prompts.cache.mb", 0);
+        if (megabytes > 0) {
+            return megabytes * 1024 * 1024;
+        }
+
+        return Runtime.getRuntime().maxMemory() / DEFAULT_CACHE_SHARE;
+    }
+
+    private void notifyChangeListeners() {
+        for (Runnable listener : changeListeners) {
+            listener.run();
+        }
+    }
+
+    /**
+     * pre: the directory exists within the local directory
+     * post: returns all files in the directory with the given extension, sorted by name
+     */
+    private File[] listFiles(String directoryPath, String extension) {
+
+        File directory = new File(directoryPath);
 
         // check preconditions
         if (!directory.exists() && directory.isDirectory()) {
             throw new IllegalStateException("the directory " + directory.getPath() + " does not exist within game files.");
         }
 
-        System.out.println("Loading prompts...");
+        File[] files = directory.listFiles(new GenericFilenameFilter(extension));
 
-        // get all files in the directory that are .txt files
-        FilenameFilter textFilter = new GenericFilenameFilter("txt");
-        File[] promptFiles = directory.listFiles(textFilter);
+        assert files != null : directoryPath + " was null";
+        Arrays.sort(files);
 
-        assert promptFiles != null : "prompts directory was null";
+        return files;
+    }
 
-        // iterate through all text files and add to the map of text files
-        for (File textFile : promptFiles) {
+    /**
+     * pre: promptFiles were listed from the "prompts" directory
+     * post: parses every prompt on the loader threads and completes once the map
+     *  contains the prompts that will be used in the main game
+     */
+    private CompletableFuture<Void> updateWordFiles(File[] promptFiles, Executor loaders,
+                                                    LoadProgress progress) {
 
-            try {
+        System.out.println("Loading prompts...");
 
-                // add a text file if not already in the list of prompts
-                if (!textFiles.containsKey(textFile.getName())) {
+        PromptIndex index = PromptIndex.load(Paths.get(PROMPT_INDEX_PATH), Paths.get(PROMPTS_DIR_PATH));
+        promptIndex = index;
+        Set<String> names = new HashSet<>();
+        CompletableFuture<?>[] tasks = new CompletableFuture<?>[promptFiles.length];
 
-                    Queue<String> promptQueue = new LinkedList<>();
-                    Scanner input = new Scanner(textFile);
-                    // input.useDelimiter("[A-Za-z]");
+        // parse all text files in parallel and add them to the map of text files
+        for (int i = 0; i < promptFiles.length; i++) {
 
-                    final int CHAR_CAP = 50;
-                    // StringBuilder promptSegment = new StringBuilder();
+            File textFile = promptFiles[i];
+            names.add(textFile.getName());
 
-                    // parse through the text file and add the words to a List<String>
-                    while (input.hasNextLine()) {
+            tasks[i] = CompletableFuture.runAsync(() -> {
 
-                        String currentLine = input.nextLine();
+                try {
 
-                        if (currentLine.length() <= CHAR_CAP) {
-                            promptQueue.add(currentLine);
-                        } else {
+                    // add a text file if not already in the list of prompts
+                    if (!catalog.contains(textFile.getName())) {
 
-                            int index;
-                            for (index = 0; index < currentLine.length() - CHAR_CAP; index += CHAR_CAP) {
-                                promptQueue.add(currentLine.substring(index, index + CHAR_CAP).trim() + "-");
-                            }
+                        // the segment table usually comes from the index, so an unchanged file is not read at all.
+                        // Its lines go into the corpus when it is first played.
+                        PromptFile prompt = index.getOrParse(textFile);
 
-                            promptQueue.add(currentLine.substring(index));
+                        if (prompt.size() > 0) {
+                            catalog.add(textFile.getName());
                         }
                     }
+                } catch (IOException e) {
+                    e.printStackTrace();
+                    System.out.println(" error while trying to read " + textFile.getName());
+                }
 
-                    // add this word list to the map
-                    if (!promptQueue.isEmpty()) {
-                        textFiles.put(textFile.getName(), promptQueue);
-                    }
+                progress.fileLoaded(textFile.getName());
+            }, loaders);
+        }
+
+        return CompletableFuture.allOf(tasks).thenRun(() -> {
+
+            // forget deleted files and store any new segment tables for the next launch
+            index.retainAll(names);
+            index.save();
+
+            // the lyrics become searchable in one pass over the prompts, after the game is ready
+            for (String fileName : catalog.getSortedNames()) {
+                PromptFile prompt = index.get(fileName);
+                if (prompt != null) {
+                    searchIndexer.execute(() -> indexForSearch(fileName, prompt));
                 }
-            } catch (FileNotFoundException e) {
-                e.printStackTrace();
-                System.out.println(" error while trying to read " + textFile.getName());
             }
+
+            System.out.println("Successfully loaded " + catalog.size() + " files.");
+        });
+    }
+
+    /**
+     * pre: images were listed from the dino frames directory
+     * post: decodes every frame on the loader threads and completes once the
+     *  frames are packed into one atlas in file name order, or cut from the
+     *  sprite sheet named in the frames metadata
+     */
+    private CompletableFuture<Void> updateFrameFiles(File[] images, Executor loaders,
+                                                     LoadProgress progress) {
+
+        System.out.println("Loading dino frames...");
+
+        // each frame is decoded into its own slot so the order does not depend on timing
+        BufferedImage[] decoded = new BufferedImage[images.length];
+        CompletableFuture<?>[] tasks = new CompletableFuture<?>[images.length];
+
+        for (int i = 0; i < images.length; i++) {
+
+            File fileImage = images[i];
+            int slot = i;
+
+            tasks[i] = CompletableFuture.runAsync(() -> {
+
+                try {
+                    decoded[slot] = ImageIO.read(fileImage);
+                } catch (Exception e) {
+                    System.out.println("Error while reading " + fileImage.getName());
+                }
+
+                progress.fileLoaded(fileImage.getName());
+            }, loaders);
         }
 
-        System.out.println("Successfully loaded " + textFiles.size() + " files.");
+        return CompletableFuture.allOf(tasks).thenRun(() -> {
+
+            Properties metadata = loadFrameMetadata();
+            long defaultNanos = frameNanos(metadata.getProperty("frameDuration"));
+            String sheetName = metadata.getProperty("sheet");
+
+            if (sheetName != null) {
+                dinoSprites = loadSpriteSheet(sheetName, metadata, defaultNanos);
+            } else {
+
+                List<BufferedImage> frames = new ArrayList<>();
+                List<Long> durations = new ArrayList<>();
+
+                for (int i = 0; i < decoded.length; i++) {
+                    if (decoded[i] != null) {
+                        frames.add(decoded[i]);
+                        durations.add(frameNanos(metadata.getProperty(images[i].getName() + ".duration",
+                                metadata.getProperty("frameDuration"))));
+                    }
+                }
+
+                long[] durationNanos = new long[durations.size()];
+                for (int i = 0; i < durationNanos.length; i++) {
+                    durationNanos[i] = durations.get(i);
+                }
+
+                dinoSprites = SpriteAtlas.pack(frames, durationNanos);
+            }
+
+            System.out.println("Successfully loaded " + dinoSprites.size() + " images.");
+        });
     }
 
-    private void updateFrameFiles() {
-        File directory = new File(FRAMES_DIR_PATH);
+    // returns the frame metadata, or no settings if there is no metadata file
+    private Properties loadFrameMetadata() {
 
-        // check preconditions
-        if (!directory.exists() && directory.isDirectory()) {
-            throw new IllegalStateException("the directory " + directory.getPath() + " does not exist within game files.");
+        Properties metadata = new Properties();
+        File metadataFile = new File(FRAMES_DIR_PATH, FRAMES_METADATA_FILE);
+
+        if (metadataFile.isFile()) {
+            try (Reader reader = new FileReader(metadataFile)) {
+                metadata.load(reader);
+            } catch (IOException e) {
+                System.out.println("Error while reading " + metadataFile.getName());
+            }
         }
 
-        System.out.println("Loading dino frames...");
+        return metadata;
+    }
+
+    // pre: the metadata names a sheet with sheetFrameWidth and sheetFrameHeight
+    // post: returns the frames cut from the sheet, or no frames if it cannot be read
+    private SpriteAtlas loadSpriteSheet(String sheetName, Properties metadata, long frameNanos) {
 
-        // get all files in the directory that are .jpg files
-        FilenameFilter imageFilter = new GenericFilenameFilter("jpg");
-        File[] images = directory.listFiles(imageFilter);
+        try {
+            BufferedImage sheet = ImageIO.read(new File(FRAMES_DIR_PATH, sheetName));
+            int frameWidth = Integer.parseInt(metadata.getProperty("sheetFrameWidth", "0").trim());
+            int frameHeight = Integer.parseInt(metadata.getProperty("sheetFrameHeight", "0").trim());
+
+            return SpriteAtlas.fromSheet(sheet, frameWidth, frameHeight, frameNanos);
+        } catch (IOException | RuntimeException e) {
+            System.out.println("Error while reading sprite sheet " + sheetName);
+            return SpriteAtlas.empty();
+        }
+    }
 
-        assert images != null : FRAMES_DIR_PATH + " was empty";
-        for (File fileImage : images) {
+    // returns the frame duration in nanoseconds for a value in milliseconds, or the default
+    private static long frameNanos(String millis) {
 
+        if (millis != null) {
             try {
-                dinoFrames.add(ImageIO.read(fileImage));
-            } catch (Exception e) {
-                System.out.println("Error while reading " + fileImage.getName());
+                long value = Long.parseLong(millis.trim());
+                if (value > 0) {
+                    return value * 1_000_000L;
+                }
+            } catch (NumberFormatException e) {
+                System.out.println("Ignoring frame duration " + millis);
             }
         }
 
-        System.out.println("Successfully loaded " + dinoFrames.size() + " images.");
+        return SpriteAtlas.DEFAULT_FRAME_NANOS;
+    }
+
+    // counts loaded files across all loader threads
+    private static class LoadProgress {
+
+        private final int total;
+        private final AtomicInteger loaded = new AtomicInteger();
+        private final LoadProgressListener listener;
+
+        private LoadProgress(int total, LoadProgressListener listener) {
+            this.total = total;
+            this.listener = listener;
+        }
+
+        private void fileLoaded(String fileName) {
+
+            int count = loaded.incrementAndGet();
+            if (listener != null) {
+                listener.assetLoaded(fileName, count, total);
+            }
+        }
+    }
+
+    // creates daemon loader threads so a stuck read never keeps the game alive
+    private static class LoaderThreadFactory implements ThreadFactory {
+
+        private final AtomicInteger count = new AtomicInteger();
+
+        public Thread newThread(Runnable task) {
+            Thread thread = new Thread(task, "asset-loader-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
     }
 
     // file filter class that allows only certain file types
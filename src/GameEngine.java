@@ -0,0 +1,326 @@
+/**
+ * For use in the game DinoType (Version 2)
+ *  The rules of a game of DinoType without any Swing: the dino running laps,
+ *  the lives it costs, and the player typing through the segments of a prompt.
+ *  Time only moves when tick() is called, so the same keys on the same ticks
+ *  always play out the same game, whether a window drives it in real time or
+ *  a replay drives it as fast as it can.
+ * @author Jay Acosta
+ */
+public class GameEngine {
+
+    public enum State {
+        WAITING, // nothing typed yet, the dino has not started running
+        PLAYING,
+        WON,
+        LOST
+    }
+
+    // class constants
+    private static final int WIDTH = GameFrame.WIDTH;
+
+    // the distance the dino covers every DIFFICULTY_TICK_NANOS at each difficulty
+    private static final int[] DIFFICULTIES = {
+            25 * WIDTH / 3000,
+            50 * WIDTH / 3000,
+            75 * WIDTH / 3000,
+            120 * WIDTH / 3000
+    };
+    private static final long DIFFICULTY_TICK_NANOS = 100_000_000L;
+
+    public static final int DIFFICULTY_COUNT = DIFFICULTIES.length;
+    public static final int LAP_LENGTH = 200 + WIDTH;
+    public static final char BACKSPACE = '\b';
+
+    private final long tickNanos;
+    private final double tickSeconds;
+
+    private State state;
+    private long ticks; // ticks played since the first key
+
+    private int lives;
+    private int difficulty;
+    // movement is measured in time, so the position is kept between whole pixels
+    private double dinoX;
+    private double previousDinoX;
+    private double dinoSpeed; // pixels per second
+
+    // the prompt is shared with other games, so only the index into it is ours
+    private PromptSequence prompt;
+    private int promptIndex;
+    private String currentSegment;
+
+    private final StringBuilder typedText = new StringBuilder();
+    private int typedTextVersion; // changes every time the typed text does
+    private final TypingMatcher matcher = new TypingMatcher();
+    private boolean error;
+
+    // the game being recorded, or null when recording is off
+    private boolean recording;
+    private KeystrokeTrace trace;
+
+    /**
+     * pre: tickNanos > 0
+     * post: creates a game that moves forward tickNanos every tick
+     */
+    public GameEngine(long tickNanos) {
+
+        // check preconditions
+        if (tickNanos <= 0) {
+            throw new IllegalArgumentException("ticks must take some time");
+        }
+
+        this.tickNanos = tickNanos;
+        this.tickSeconds = tickNanos / 1e9;
+
+        reset();
+        setDifficulty(DIFFICULTY_COUNT - 1);
+    }
+
+    // post: puts the dino back at the start with one life and no prompt to type
+    public void reset() {
+        state = State.WAITING;
+        ticks = 0;
+        lives = 1;
+        dinoX = 0;
+        previousDinoX = 0;
+        error = false;
+        trace = null;
+
+        setPrompt(PromptSequence.of("The current text file is empty."));
+    }
+
+    // post: starts the prompt from its first segment without copying it
+    public void setPrompt(PromptSequence prompt) {
+        this.prompt = prompt;
+        promptIndex = 0;
+        clearTypedText();
+        loadCurrentSegment();
+    }
+
+    public void setDifficulty(int difficultyIndex) {
+
+        // check preconditions
+        if (difficultyIndex < 0 || difficultyIndex >= DIFFICULTY_COUNT) {
+            throw new IllegalArgumentException("difficulty index is out of bounds");
+        }
+
+        difficulty = difficultyIndex;
+        dinoSpeed = DIFFICULTIES[difficultyIndex] * 1e9 / DIFFICULTY_TICK_NANOS;
+    }
+
+    // post: every game started from now on keeps a trace of its keys, see getTrace()
+    public void setRecording(boolean recording) {
+        this.recording = recording;
+    }
+
+    /**
+     * pre: none
+     * post: moves the dino and its animation forward by one tick, taking a life
+     *  every time it finishes a lap. Does nothing unless the game is being played.
+     */
+    public void tick() {
+
+        if (state != State.PLAYING) {
+            return;
+        }
+
+        ticks++;
+        previousDinoX = dinoX;
+        dinoX += dinoSpeed * tickSeconds;
+
+        if (dinoX >= LAP_LENGTH) {
+            dinoX -= LAP_LENGTH;
+            // don't interpolate back across the whole screen
+            previousDinoX = dinoX;
+            lives--;
+        }
+
+        if (lives <= 0) {
+            finish(State.LOST);
+        }
+    }
+
+    /**
+     * pre: none
+     * post: the player typed the given character, BACKSPACE deletes the last one.
+     *  The first key starts the game, keys after it is over are ignored.
+     *  Returns true if the key was the next character of the segment.
+     */
+    public boolean keyTyped(char key) {
+
+        if (state == State.WON || state == State.LOST) {
+            return false;
+        }
+
+        if (state == State.WAITING) {
+            state = State.PLAYING;
+            if (recording) {
+                trace = new KeystrokeTrace(tickNanos, difficulty);
+            }
+        }
+
+        if (trace != null) {
+            trace.addKey(ticks, key);
+        }
+
+        int matchedBefore = matcher.getMatchedLength();
+
+        if (key == BACKSPACE) {
+
+            // if the current char typed is a backspace, delete the last character
+            if (typedText.length() > 0) {
+                typedText.deleteCharAt(typedText.length() - 1);
+                matcher.deleteLast();
+                typedTextVersion++;
+            }
+        } else {
+
+            typedText.append(key);
+            matcher.append(key);
+            typedTextVersion++;
+        }
+
+        boolean correct = matcher.getMatchedLength() > matchedBefore;
+        checkGameConditions();
+
+        return correct;
+    }
+
+    private void checkGameConditions() {
+
+        // the following conditionals will be checked if the current prompt is not empty
+        if (currentSegment == null) {
+            return;
+        }
+
+        if (matcher.isComplete()) {
+
+            // player has written the prompt on the screen, move onto the next prompt
+            promptIndex++;
+            lives++;
+            loadCurrentSegment();
+
+            if (currentSegment == null) {
+                // if there are no segments left, we won!
+                finish(State.WON);
+            } else {
+                // otherwise, clear the current text for the player and match the next prompt
+                clearTypedText();
+            }
+        } else {
+
+            // the matcher already knows whether the typed text is still a prefix of the prompt
+            error = matcher.hasError();
+        }
+    }
+
+    private void finish(State outcome) {
+
+        state = outcome;
+
+        if (trace != null) {
+            trace.finish(this);
+        }
+    }
+
+    // post: reads the segment at promptIndex, or null once the prompt is finished
+    private void loadCurrentSegment() {
+        currentSegment = promptIndex < prompt.size() ? prompt.getSegment(promptIndex) : null;
+        matcher.reset(currentSegment == null ? "" : currentSegment);
+    }
+
+    private void clearTypedText() {
+        typedText.setLength(0);
+        matcher.reset(matcher.getPrompt());
+        typedTextVersion++;
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    // returns true once the game has been won or lost
+    public boolean isOver() {
+        return state == State.WON || state == State.LOST;
+    }
+
+    public long getTicks() {
+        return ticks;
+    }
+
+    public long getTickNanos() {
+        return tickNanos;
+    }
+
+    // returns the time the dino has been running for
+    public long getElapsedNanos() {
+        return ticks * tickNanos;
+    }
+
+    public int getLives() {
+        return lives;
+    }
+
+    public int getDifficulty() {
+        return difficulty;
+    }
+
+    public double getDinoX() {
+        return dinoX;
+    }
+
+    // pre: 0 <= alpha <= 1
+    // post: returns the position alpha of the way from the last tick's position to the current one
+    public double getDinoX(double alpha) {
+        return previousDinoX + (dinoX - previousDinoX) * alpha;
+    }
+
+    public PromptSequence getPrompt() {
+        return prompt;
+    }
+
+    public int getPromptIndex() {
+        return promptIndex;
+    }
+
+    public int getPromptsLeft() {
+        return prompt.size() - promptIndex;
+    }
+
+    // returns how much of the prompt is typed correctly, from 0 to 1
+    public double getProgress() {
+
+        int segments = prompt.size();
+        if (segments == 0 || currentSegment == null) {
+            return segments == 0 ? 0 : 1;
+        }
+
+        double segmentProgress = currentSegment.isEmpty() ? 0
+                : (double) matcher.getMatchedLength() / currentSegment.length();
+
+        return (promptIndex + segmentProgress) / segments;
+    }
+
+    // returns the segment being typed, or null once the prompt is finished
+    public String getCurrentSegment() {
+        return currentSegment;
+    }
+
+    public CharSequence getTypedText() {
+        return typedText;
+    }
+
+    public int getTypedTextVersion() {
+        return typedTextVersion;
+    }
+
+    public boolean hasError() {
+        return error;
+    }
+
+    // returns the trace of the current game, or null if it is not being recorded
+    public KeystrokeTrace getTrace() {
+        return trace;
+    }
+}
@@ -1,19 +1,29 @@
 // imports
 
 import javax.swing.*;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
 import java.awt.*;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.awt.event.KeyEvent;
 import java.awt.event.KeyListener;
-import java.util.Set;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 
 /**
  * For use in the game DinoType (Version 2)
- *
+ *  The window of the game. Only the main menu is built up front, so the
+ *  window shows while prompts and frames are still loading; the selection
+ *  and game screens are built the first time the player needs them.
  * @author Jay Acosta
  */
-public class GameFrame extends JFrame {
+public class GameFrame extends JFrame implements LoadProgressListener {
 
     // class constants
     private final String GAME_NAME = "Dino Type 2";
@@ -25,6 +35,9 @@ public class GameFrame extends JFrame {
     private final String GAME_STATE = "GAME_STATE";
     private final String EXIT_STATE = "EXIT_STATE";
 
+    // the most search results shown at once
+    private final int SEARCH_RESULTS = 20;
+
     private CardLayout currentLayout;
 
     // cards contains all the current panels and stores them in a CardLayout format
@@ -33,6 +46,26 @@ public class GameFrame extends JFrame {
     private String fileName;
 
     private FileManager fileManager;
+    // built on first use, read by the race client thread
+    private volatile GamePanel gamePanel;
+    private boolean selectionBuilt;
+    // the prompt being read for the next game, replaced if another is picked first
+    private CompletableFuture<Void> promptLoad;
+
+    // the loading progress on the main menu, until every asset is loaded
+    private JProgressBar loadingBar;
+    private JButton startButton;
+    private final AtomicBoolean progressPending = new AtomicBoolean();
+    private volatile int assetsLoaded;
+    private volatile int assetsTotal;
+
+    // settings for the game screen, kept until it is built
+    private volatile SessionStore sessions;
+    private volatile String playerName;
+
+    // the best results of the chosen prompt and difficulty, shown on the selection screen
+    private volatile Leaderboard leaderboard;
+    private JTextArea leaderboardText;
 
     public GameFrame(FileManager fileManager) {
         this.fileManager = fileManager;
@@ -53,10 +86,8 @@ public class GameFrame extends JFrame {
         currentLayout = new CardLayout();
         cards = new JPanel(currentLayout);
 
-        // set up game states
+        // set up the main menu now, the other game states are set up on first use
         setUpMainMenu();
-        setUpSelectionScreen();
-        setUpGameScreen();
 
         // add the CardLayout to the content pane
         contentPane.add(cards);
@@ -96,6 +127,17 @@ public class GameFrame extends JFrame {
         buttons[0].addActionListener(new TransitionState(MAIN_MENU_STATE, SELECTION_STATE));
         buttons[1].addActionListener(new TransitionState(MAIN_MENU_STATE, EXIT_STATE));
 
+        // there is nothing to play until the assets are loaded
+        startButton = buttons[0];
+        startButton.setEnabled(false);
+
+        loadingBar = new JProgressBar();
+        loadingBar.setStringPainted(true);
+        loadingBar.setString("Loading...");
+        loadingBar.setMaximumSize(new Dimension(WIDTH / 2, 24));
+        loadingBar.setAlignmentX(Component.CENTER_ALIGNMENT);
+        panel.add(loadingBar);
+
         for (JButton button : buttons) {
             button.setFont(new Font("Comic Sans MS", Font.BOLD, 20));
             button.setAlignmentX(Component.CENTER_ALIGNMENT);
@@ -117,24 +159,93 @@ public class GameFrame extends JFrame {
         // panel.setLayout(new BoxLayout(panel, BoxLayout.PAGE_AXIS));
         panel.setBackground(Color.BLACK);
 
-        Set<String> keySet = fileManager.getFilesInAlphabeticalOrder().keySet();
-
-        String[] promptArr = new String[keySet.size()];
-        int index = 0;
-        for (String key : keySet) {
-            promptArr[index++] = key;
+        // every prompt in alphabetical order; with fixed cell sizes the list only
+        // asks the model for the rows on screen, however many prompts there are
+        PromptListModel prompts = new PromptListModel(FileManager.getCatalog(), this::describePrompt);
+        JList<String> promptList = new JList<>(prompts);
+        promptList.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+        promptList.setCellRenderer(new PromptRenderer(prompts));
+        promptList.setFixedCellWidth(WIDTH - 60);
+        promptList.setFixedCellHeight(promptList.getFontMetrics(promptList.getFont()).getHeight() + 4);
+        promptList.setVisibleRowCount(8);
+        JScrollPane promptPane = new JScrollPane(promptList);
+
+        if (prompts.getSize() > 0) {
+            promptList.setSelectedIndex(0);
         }
+        fileName = promptList.getSelectedValue();
+
+        // added and removed prompts arrive through the catalog, edited ones are drawn again
+        fileManager.addChangeListener(() -> SwingUtilities.invokeLater(prompts::refresh));
+
+        // type-ahead search over titles and lyrics, a result picks the prompt
+        JTextField searchBox = new JTextField(20);
+        searchBox.setToolTipText("Search titles and lyrics");
+        DefaultListModel<String> searchResults = new DefaultListModel<>();
+        JList<String> searchList = new JList<>(searchResults);
+        searchList.setVisibleRowCount(5);
+        searchList.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+        JScrollPane searchPane = new JScrollPane(searchList);
+        searchPane.setPreferredSize(new Dimension(WIDTH - 40, 100));
+
+        Runnable search = () -> {
+            List<String> matches = FileManager.getSearch().search(searchBox.getText(), SEARCH_RESULTS);
+            searchResults.clear();
+            searchResults.addAll(matches);
+        };
+
+        searchBox.getDocument().addDocumentListener(new DocumentListener() {
+            public void insertUpdate(DocumentEvent e) {
+                search.run();
+            }
+
+            public void removeUpdate(DocumentEvent e) {
+                search.run();
+            }
+
+            public void changedUpdate(DocumentEvent e) {
+            }
+        });
+
+        // enter plays the best match
+        searchBox.addActionListener(e -> {
+            if (!searchResults.isEmpty()) {
+                selectPrompt(promptList, searchResults.get(0));
+                new TransitionState(SELECTION_STATE, GAME_STATE).goToPanel();
+            }
+        });
+
+        searchList.addListSelectionListener(e -> {
+            String match = searchList.getSelectedValue();
+            if (!e.getValueIsAdjusting() && match != null) {
+                selectPrompt(promptList, match);
+            }
+        });
+
+        // files added or edited while the screen is open can change the results
+        fileManager.addChangeListener(() -> SwingUtilities.invokeLater(search));
 
-        JComboBox<String> promptChoices = new JComboBox<>(promptArr);
         JComboBox<String> difficultyChoices = new JComboBox<>(new String[]{"Easy", "Medium", "Hard", "Very Hard"});
 
-        promptChoices.addActionListener(e -> {
-            fileName = promptChoices.getItemAt(promptChoices.getSelectedIndex());
+        promptList.addListSelectionListener(e -> {
+            String selected = promptList.getSelectedValue();
+            if (!e.getValueIsAdjusting() && selected != null && !selected.equals(fileName)) {
+                fileName = selected;
+                showLeaderboard();
+            }
         });
 
-        difficultyChoices.addActionListener(e ->
-                difficulty = difficultyChoices.getSelectedIndex()
-        );
+        difficultyChoices.addActionListener(e -> {
+            difficulty = difficultyChoices.getSelectedIndex();
+            showLeaderboard();
+        });
+
+        leaderboardText = new JTextArea(Leaderboard.DEFAULT_SIZE + 1, 40);
+        leaderboardText.setEditable(false);
+        leaderboardText.setFocusable(false);
+        leaderboardText.setFont(new Font(Font.MONOSPACED, Font.PLAIN, 14));
+        leaderboardText.setBackground(Color.BLACK);
+        leaderboardText.setForeground(Color.WHITE);
 
         JButton go = new JButton("Play game!");
         JButton random = new JButton("Play random!");
@@ -146,21 +257,274 @@ public class GameFrame extends JFrame {
         backToMain.addActionListener(new TransitionState(SELECTION_STATE, MAIN_MENU_STATE));
 
         // add components to the panel
-        panel.add(promptChoices);
+        panel.add(searchBox);
+        panel.add(searchPane);
+        panel.add(promptPane);
         panel.add(difficultyChoices);
         panel.add(go);
         panel.add(random);
         panel.add(backToMain);
+        panel.add(leaderboardText);
+        showLeaderboard();
 
         cards.add(panel, SELECTION_STATE);
     }
 
+    // pre: called on the EDT
+    // post: shows the best results of the chosen prompt and difficulty
+    private void showLeaderboard() {
+
+        // the selection screen is not built yet, it shows the leaderboard once it is
+        if (leaderboardText == null) {
+            return;
+        }
+
+        Leaderboard board = leaderboard;
+        if (board == null || fileName == null) {
+            leaderboardText.setText("");
+            return;
+        }
+
+        List<SessionResult> top = board.getTop(fileName, difficulty);
+        StringBuilder text = new StringBuilder("Best on " + fileName + "\n");
+
+        if (top.isEmpty()) {
+            text.append("  nobody has played it at this difficulty yet");
+        }
+
+        for (int i = 0; i < top.size(); i++) {
+            SessionResult result = top.get(i);
+            text.append(String.format("%2d. %-16.16s %6.1f WPM  %s%n", i + 1, result.getPlayerName(),
+                    result.getWordsPerMinute(), result.isWon() ? "won" : "lost"));
+        }
+
+        leaderboardText.setText(text.toString());
+    }
+
+    // post: shows the progress on the main menu, called on the loader threads
+    public void assetLoaded(String fileName, int loaded, int total) {
+
+        assetsLoaded = loaded;
+        assetsTotal = total;
+
+        // one update waiting on the EDT is enough however many files finish meanwhile
+        if (progressPending.compareAndSet(false, true)) {
+            SwingUtilities.invokeLater(() -> {
+                progressPending.set(false);
+                loadingBar.setMaximum(assetsTotal);
+                loadingBar.setValue(assetsLoaded);
+                loadingBar.setString("Loading " + assetsLoaded + " of " + assetsTotal + "...");
+            });
+        }
+    }
+
+    // post: lets the player start once every asset is loaded, safe to call from any thread
+    public void assetsLoaded() {
+        SwingUtilities.invokeLater(() -> {
+            loadingBar.setVisible(false);
+            startButton.setEnabled(true);
+        });
+    }
+
+    // pre: called on the EDT
+    // post: builds the screen of the given state if it has not been built yet
+    private void setUpGameState(String state) {
+
+        if (state.equals(SELECTION_STATE) && !selectionBuilt) {
+            selectionBuilt = true;
+            setUpSelectionScreen();
+        }
+
+        // the game screen is built along with the selection screen, so its
+        // prompts are laid out while the player is still choosing
+        if ((state.equals(SELECTION_STATE) || state.equals(GAME_STATE)) && gamePanel == null) {
+            setUpGameScreen();
+        }
+    }
+
+    // pre: called on the EDT
+    // post: selects the prompt in the list and scrolls to it, if it is still there
+    private void selectPrompt(JList<String> promptList, String name) {
+
+        int index = FileManager.getCatalog().getSortedIndex(name);
+        if (index >= 0 && index < promptList.getModel().getSize()) {
+            promptList.setSelectedIndex(index);
+            promptList.ensureIndexIsVisible(index);
+        }
+    }
+
+    // returns the text shown for a prompt in the list, its title and length, without reading the prompt
+    private String describePrompt(String name) {
+
+        int lines = fileManager.getLineCount(name);
+        String title = PromptSearch.titleOf(name);
+
+        return lines < 0 ? title : title + "  (" + lines + " lines)";
+    }
+
     // pre: none
     // post: sets the GUI for the game screen
     private void setUpGameScreen() {
-        GamePanel gamePanel = new GamePanel();
-        gamePanel.setGameEndTransition(new TransitionState(GAME_STATE, MAIN_MENU_STATE));
-        cards.add(gamePanel, GAME_STATE);
+        GamePanel panel = new GamePanel();
+        panel.setGameEndTransition(new TransitionState(GAME_STATE, MAIN_MENU_STATE));
+        cards.add(panel, GAME_STATE);
+
+        if (sessions != null) {
+            panel.setSessionStore(sessions);
+        }
+        if (playerName != null) {
+            panel.setPlayerName(playerName);
+        }
+
+        gamePanel = panel;
+
+        // lay the prompts in memory out for the screen before they are picked, and again whenever they change
+        prefetchLayouts();
+        fileManager.addChangeListener(this::prefetchLayouts);
+    }
+
+    // post: the game panel keeps the layouts of the prompts in memory now and drops the rest
+    private void prefetchLayouts() {
+        gamePanel.prefetchLayouts(FileManager.getPromptCache().getCachedPrompts());
+    }
+
+    /**
+     * pre: called on the EDT
+     * post: reads the prompt off the EDT, then hands it to start on the EDT,
+     *  unless another prompt was loaded since
+     */
+    private void loadPrompt(Supplier<PromptSequence> read, Consumer<PromptSequence> start) {
+
+        if (promptLoad != null) {
+            promptLoad.cancel(false);
+        }
+
+        promptLoad = CompletableFuture
+                .supplyAsync(read)
+                .thenAcceptAsync(prompt -> {
+                    // the prompts evicted to make room for this one leave the layouts too
+                    prefetchLayouts();
+                    start.accept(prompt);
+                }, SwingUtilities::invokeLater);
+
+        promptLoad.exceptionally(e -> {
+            e.printStackTrace();
+            System.out.println("Error while loading the prompt");
+            return null;
+        });
+    }
+
+    /**
+     * pre: sessions != null, no game has been played yet
+     * post: keeps the result of every game played in this window in sessions,
+     *  and builds the leaderboards of the selection screen from the results in it
+     */
+    public void setSessionStore(SessionStore sessions) {
+
+        this.sessions = sessions;
+        SwingUtilities.invokeLater(() -> {
+            if (gamePanel != null) {
+                gamePanel.setSessionStore(sessions);
+            }
+        });
+
+        Leaderboard board = new Leaderboard();
+        board.addAll(sessions.readAll());
+        sessions.addListener(result -> {
+            if (board.add(result)) {
+                SwingUtilities.invokeLater(this::showLeaderboard);
+            }
+        });
+
+        leaderboard = board;
+        SwingUtilities.invokeLater(this::showLeaderboard);
+    }
+
+    /**
+     * pre: server != null, name != null
+     * post: joins the races of the server, every race it starts takes the
+     *  player straight into a game of its prompt. Prints an error and carries
+     *  on alone if the server cannot be reached.
+     */
+    public void joinRace(InetSocketAddress server, String name) {
+        try {
+            RaceClient client = RaceClient.connect(server, name);
+            playerName = name;
+            SwingUtilities.invokeLater(() -> {
+                if (gamePanel != null) {
+                    gamePanel.setPlayerName(name);
+                }
+            });
+            client.start(new RaceEar(client));
+            setTitle(GAME_NAME + " - racing on " + server.getHostString());
+        } catch (IOException e) {
+            System.out.println("Error while joining the race at " + server + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * The PromptRenderer class draws each row of the prompt list
+     * as the text its model worked out for it
+     */
+    private static class PromptRenderer extends DefaultListCellRenderer {
+
+        private final PromptListModel prompts;
+
+        private PromptRenderer(PromptListModel prompts) {
+            this.prompts = prompts;
+        }
+
+        public Component getListCellRendererComponent(JList<?> list, Object value, int index,
+                                                      boolean isSelected, boolean cellHasFocus) {
+
+            Object text = index >= 0 && index < prompts.getSize() ? prompts.getDescription(index) : value;
+            return super.getListCellRendererComponent(list, text, index, isSelected, cellHasFocus);
+        }
+    }
+
+    /**
+     * The RaceEar class follows the races of the server
+     * and takes the player into each one as it starts
+     */
+    private class RaceEar implements RaceListener {
+
+        private final RaceClient client;
+
+        private RaceEar(RaceClient client) {
+            this.client = client;
+        }
+
+        public void raceStarted(String promptName, int raceDifficulty, long startNanos) {
+            SwingUtilities.invokeLater(() -> {
+                setUpGameState(GAME_STATE);
+                currentLayout.show(cards, GAME_STATE);
+                gamePanel.grabFocus();
+
+                loadPrompt(() -> FileManager.getPrompt(promptName), prompt -> {
+                    gamePanel.resetGame();
+                    gamePanel.setCurrentPrompt(promptName, prompt);
+                    gamePanel.setDifficulty(raceDifficulty);
+                    gamePanel.joinRace(client, startNanos);
+                });
+            });
+        }
+
+        public void racersChanged() {
+            GamePanel panel = gamePanel;
+            if (panel != null) {
+                panel.racersChanged();
+            }
+        }
+
+        public void raceOver(List<Integer> ranking) {
+
+            int place = ranking.indexOf(client.getPlayerId()) + 1;
+            String message = place > 0
+                    ? "You finished the race in place " + place + " of " + ranking.size() + "!"
+                    : "The race is over, the next one starts soon.";
+
+            SwingUtilities.invokeLater(() -> JOptionPane.showMessageDialog(GameFrame.this, message));
+        }
     }
 
     public class TransitionState implements ActionListener {
@@ -182,6 +546,7 @@ public class GameFrame extends JFrame {
                 System.out.println("Exiting...");
                 System.exit(69);
             } else {
+                setUpGameState(to);
                 currentLayout.show(cards, to);
 
                 JPanel currentPanel = getCurrentPanel();
@@ -191,14 +556,21 @@ public class GameFrame extends JFrame {
                 // if we are currently in the game, recognize
                 if (currentPanel instanceof GamePanel) {
                     GamePanel gamePanel = (GamePanel) currentPanel;
-                    gamePanel.resetGame();
-
-                    if (from.equals("RANDOM_BUTTON")) {
-                        gamePanel.setCurrentPrompt(FileManager.getRandomPrompt());
-                    } else {
-                        gamePanel.setCurrentPrompt(FileManager.getTextFiles().get(fileName));
-                    }
-                    gamePanel.setDifficulty(difficulty);
+                    boolean random = from.equals("RANDOM_BUTTON");
+                    String name = random ? FileManager.getRandomPromptName(PromptCatalog.Selection.SHUFFLE) : fileName;
+                    int gameDifficulty = difficulty;
+                    Supplier<PromptSequence> read = random && name == null
+                            ? FileManager::getRandomPrompt : () -> FileManager.getPrompt(name);
+
+                    // the game starts once the prompt is read, keys typed before then are dropped
+                    loadPrompt(read, prompt -> {
+                        gamePanel.resetGame();
+                        gamePanel.setCurrentPrompt(name, prompt);
+                        gamePanel.setDifficulty(gameDifficulty);
+                    });
+                } else if (promptLoad != null) {
+                    // a prompt still being read when the player leaves is not started
+                    promptLoad.cancel(false);
                 }
             }
         }
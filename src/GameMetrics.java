@@ -0,0 +1,212 @@
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.awt.EventQueue;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * For use in the game DinoType (Version 2)
+ *  Latency measurements of the game, published over JMX and optionally
+ *  written to a file. Run with -Ddinotype.metrics.file=path to record from
+ *  the moment the game starts.
+ * @author Jay Acosta
+ */
+public class GameMetrics implements GameMetricsMXBean {
+
+    // class constants
+    private static final GameMetrics INSTANCE = new GameMetrics();
+    private static final String OBJECT_NAME = "dinotype:type=GameMetrics";
+    private static final long PROBE_INTERVAL_MILLIS = 50;
+    private static final long DEFAULT_RECORDING_INTERVAL_MILLIS = 1000;
+
+    private final LatencyHistogram inputToPaint = new LatencyHistogram("inputToPaint");
+    private final LatencyHistogram paint = new LatencyHistogram("paint");
+    private final LatencyHistogram tick = new LatencyHistogram("tick");
+    private final LatencyHistogram eventQueueDelay = new LatencyHistogram("eventQueueDelay");
+
+    // arrival time of the newest key a frame has shown, 0 before the first
+    private final AtomicLong paintedKeyNanos = new AtomicLong();
+
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(task -> {
+        Thread thread = new Thread(task, "game-metrics");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private boolean registered;
+    private ScheduledFuture<?> recording;
+    private BufferedWriter recordingWriter;
+
+    private GameMetrics() {
+    }
+
+    public static GameMetrics get() {
+        return INSTANCE;
+    }
+
+    /**
+     * pre: none
+     * post: publishes the metrics to the platform MBean server and starts probing
+     *  the event queue. Calling it again does nothing.
+     */
+    public synchronized void register() {
+
+        if (registered) {
+            return;
+        }
+
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            server.registerMBean(this, new ObjectName(OBJECT_NAME));
+        } catch (JMException e) {
+            System.out.println("Error while registering game metrics: " + e.getMessage());
+        }
+
+        scheduler.scheduleAtFixedRate(this::probeEventQueue,
+                PROBE_INTERVAL_MILLIS, PROBE_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+
+        String path = System.getProperty("dinotype.metrics.file");
+        if (path != null) {
+            startRecording(path, DEFAULT_RECORDING_INTERVAL_MILLIS);
+        }
+
+        // write out the last interval when the game exits
+        Runtime.getRuntime().addShutdownHook(new Thread(this::stopRecording, "game-metrics-shutdown"));
+
+        registered = true;
+    }
+
+    /**
+     * pre: paintStartNanos <= paintEndNanos, keyNanos is when the newest key in
+     *  the snapshot drawn arrived, or 0 if it has none
+     * post: records the paint time, and the input latency of the key if this is
+     *  the first frame to show it
+     */
+    public void framePainted(long paintStartNanos, long paintEndNanos, long keyNanos) {
+
+        paint.record(paintEndNanos - paintStartNanos);
+
+        long painted = paintedKeyNanos.get();
+        if (keyNanos != 0 && (painted == 0 || keyNanos - painted > 0)
+                && paintedKeyNanos.compareAndSet(painted, keyNanos)) {
+            inputToPaint.record(paintEndNanos - keyNanos);
+        }
+    }
+
+    public void tickFinished(long tickStartNanos, long tickEndNanos) {
+        tick.record(tickEndNanos - tickStartNanos);
+    }
+
+    public HistogramSnapshot getInputToPaint() {
+        return new HistogramSnapshot(inputToPaint);
+    }
+
+    public HistogramSnapshot getPaint() {
+        return new HistogramSnapshot(paint);
+    }
+
+    public HistogramSnapshot getTick() {
+        return new HistogramSnapshot(tick);
+    }
+
+    public HistogramSnapshot getEventQueueDelay() {
+        return new HistogramSnapshot(eventQueueDelay);
+    }
+
+    public void reset() {
+        inputToPaint.reset();
+        paint.reset();
+        tick.reset();
+        eventQueueDelay.reset();
+    }
+
+    public synchronized void startRecording(String path, long intervalMillis) {
+
+        // check preconditions
+        if (intervalMillis <= 0) {
+            throw new IllegalArgumentException("the recording interval must be positive");
+        }
+
+        stopRecording();
+
+        Path file = Paths.get(path);
+        try {
+            boolean newFile = !Files.exists(file);
+            recordingWriter = Files.newBufferedWriter(file, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+
+            if (newFile) {
+                recordingWriter.write("timeMillis,histogram,count,p50Micros,p90Micros,p99Micros,p999Micros,maxMicros");
+                recordingWriter.newLine();
+            }
+        } catch (IOException e) {
+            System.out.println("Error while opening " + path + " for metrics");
+            recordingWriter = null;
+            return;
+        }
+
+        recording = scheduler.scheduleAtFixedRate(this::writeRecording, intervalMillis, intervalMillis,
+                TimeUnit.MILLISECONDS);
+    }
+
+    public synchronized void stopRecording() {
+
+        if (recording == null) {
+            return;
+        }
+
+        recording.cancel(false);
+        recording = null;
+
+        try {
+            writeRecording();
+            recordingWriter.close();
+        } catch (IOException e) {
+            System.out.println("Error while closing the metrics file");
+        }
+
+        recordingWriter = null;
+    }
+
+    public synchronized boolean isRecording() {
+        return recording != null;
+    }
+
+    private synchronized void writeRecording() {
+
+        if (recordingWriter == null) {
+            return;
+        }
+
+        long now = System.currentTimeMillis();
+
+        try {
+            for (LatencyHistogram histogram : new LatencyHistogram[]{inputToPaint, paint, tick, eventQueueDelay}) {
+                HistogramSnapshot snapshot = new HistogramSnapshot(histogram);
+                recordingWriter.write(String.format("%d,%s,%d,%.1f,%.1f,%.1f,%.1f,%.1f", now, histogram.getName(),
+                        snapshot.getCount(), snapshot.getP50Micros(), snapshot.getP90Micros(),
+                        snapshot.getP99Micros(), snapshot.getP999Micros(), snapshot.getMaxMicros()));
+                recordingWriter.newLine();
+            }
+            recordingWriter.flush();
+        } catch (IOException e) {
+            System.out.println("Error while writing metrics");
+        }
+    }
+
+    // posts an empty task to the EDT and measures how long it waits to run
+    private void probeEventQueue() {
+        long posted = System.nanoTime();
+        EventQueue.invokeLater(() -> eventQueueDelay.record(System.nanoTime() - posted));
+    }
+}
@@ -0,0 +1,30 @@
+/**
+ * For use in the game DinoType (Version 2)
+ *  Management interface of GameMetrics, shown under "dinotype:type=GameMetrics"
+ *  in JConsole, VisualVM or any other JMX client.
+ * @author Jay Acosta
+ */
+public interface GameMetricsMXBean {
+
+    // time from a key event reaching the panel to the frame that shows it
+    HistogramSnapshot getInputToPaint();
+
+    // time spent drawing one frame
+    HistogramSnapshot getPaint();
+
+    // time spent in one update of the game loop
+    HistogramSnapshot getTick();
+
+    // time a task waits in the event queue before the EDT runs it
+    HistogramSnapshot getEventQueueDelay();
+
+    // forgets everything recorded so far
+    void reset();
+
+    // appends a line per histogram to the file every intervalMillis until stopped
+    void startRecording(String path, long intervalMillis);
+
+    void stopRecording();
+
+    boolean isRecording();
+}
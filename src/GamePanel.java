@@ -1,13 +1,26 @@
 import javax.swing.*;
 import java.awt.*;
-import java.awt.event.ActionEvent;
-import java.awt.event.ActionListener;
 import java.awt.event.KeyEvent;
 import java.awt.event.KeyListener;
-import java.util.LinkedList;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collection;
 import java.util.Queue;
-import java.util.List;
-
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * For use in the game DinoType (Version 2)
+ *  Plays and draws the game. One game thread owns the game: it applies the
+ *  changes asked for by the rest of the game in the order they were asked,
+ *  takes every key typed since it last ran as one batch, ticks the engine,
+ *  and then publishes an immutable GameSnapshot. The panel only ever draws a
+ *  snapshot, so keys, ticks and painting never wait for each other, and a
+ *  burst of keys such as a paste is one update and one repaint.
+ * @author Jay Acosta
+ */
 public class GamePanel extends JPanel {
 
     // instance variables and constants
@@ -16,31 +29,132 @@ public class GamePanel extends JPanel {
     private final int HEIGHT = GameFrame.HEIGHT;
     private final int WIDTH = GameFrame.WIDTH;
 
-    private final int[] LOCAL_DIFFICULTIES = {
-            25 * WIDTH / 3000,
-            50 * WIDTH / 3000,
-            75 * WIDTH / 3000,
-            120 * WIDTH / 3000
-    };
     private final Font FONT = new Font("Comic Sans MS", Font.BOLD, 20);
 
-    // instance variables
-    private boolean error;
-    private boolean gameStarted;
+    // the game thread moves the dino and its animation every tick
+    private final int TICK_MILLIS = 100;
+    // after a long stall, drop time rather than running hundreds of ticks to catch up
+    private final long MAX_LAG_NANOS = 250_000_000L;
+    // a tick failing every time prints at most one error this often
+    private final long ERROR_REPORT_NANOS = 1_000_000_000L;
+    // keys waiting for the game thread, far more than anyone types between two updates
+    private final int INPUT_CAPACITY = 1024;
+
+    // baselines of each line of text and the top of the dino
+    private final int LAPS_Y = 2 * 20;
+    private final int PROMPTS_LEFT_Y = 4 * 20;
+    private final int PROMPT_Y = HEIGHT - 6 * 20;
+    private final int INPUT_Y = HEIGHT - 4 * 20;
+    private final int DINO_Y = 120;
+    // prompts are broken into segments that fit this width, with a little room to spare
+    private final float LINE_WIDTH = WIDTH - 20;
+
+    // typing stats sit right of the prompt count, in a smaller font
+    private final Font SMALL_FONT = new Font("Comic Sans MS", Font.PLAIN, 14);
+    private final int STATS_X = WIDTH - 300;
+
+    // the other racers run in small lanes under the dino, the furthest ahead on top
+    private final int RACE_Y = 330;
+    private final int LANE_HEIGHT = 24;
+    private final int MAX_LANES = 5;
+
+    // run with -Ddinotype.activeRendering=true to draw from a dedicated render loop thread
+    private final boolean ACTIVE_RENDERING = Boolean.getBoolean("dinotype.activeRendering");
+    // run with -Ddinotype.traces.dir=path to save a trace of every finished game for TraceReplayer
+    private final String TRACES_DIR_PATH = System.getProperty("dinotype.traces.dir");
+    // run with -Ddinotype.audio=false to play without sound
+    private final boolean AUDIO = !"false".equals(System.getProperty("dinotype.audio"));
+    // the song of a prompt is the .wav file of the same name in this directory
+    private final String SONGS_DIR_PATH = System.getProperty("dinotype.songs.dir", "songs");
+
+    // sounds a batch of keys can make, the most important one is played
+    private final int NO_SOUND = 0;
+    private final int CLICK_SOUND = 1;
+    private final int ERROR_SOUND = 2;
+    private final int SEGMENT_SOUND = 3;
 
-    private int lives;
-    private int dinoX;
-    private int stepSize;
+    // instance variables
 
-    private List<Image> frames;
-    private int frameIndex;
+    // owned by the game thread once it has started
 
-    private Queue<String> promptQueue;
-    private Timer gameTimer;
+    // the game itself, this panel only draws it and feeds it keys and ticks
+    private GameEngine engine;
+    private final long tickNanos;
+    private final TypingStats stats = new TypingStats();
 
-    private StringBuilder currentText;
+    private SpriteAtlas sprites;
+    private int frameIndex;
 
-    private GameFrame.TransitionState stateAfterDone; // for exiting to the main menu
+    // the race this game is part of, or null when playing alone
+    private RaceClient race;
+    private long raceStartNanos;
+    private Timer countdownTimer;
+
+    // whether the engine is being ticked, and when the next tick is due
+    private boolean ticking;
+    private long nextTickNanos;
+    // when the last tick was due, the dino is drawn between it and the next
+    private long lastTickNanos;
+    // when the newest key typed into the game arrived, 0 before the first
+    private long lastKeyNanos;
+    // whether the end of the current game has been handled
+    private boolean gameEnded;
+    private String promptName;
+
+    // keys drained from the input ring in one batch
+    private final char[] keyBatch = new char[INPUT_CAPACITY];
+    private final long[] keyNanosBatch = new long[INPUT_CAPACITY];
+
+    // sound, null when the game plays without it
+    private AudioEngine audio;
+    private int clickClip;
+    private int errorClip;
+    private int segmentClip;
+
+    // shared between threads
+
+    private final Thread gameThread;
+    // keys typed on the EDT, in the order they were typed
+    private final InputRing input = new InputRing(INPUT_CAPACITY);
+    // changes to the game asked for by other threads
+    private final Queue<Runnable> commands = new ConcurrentLinkedQueue<>();
+    // what the game looked like after its last update
+    private volatile GameSnapshot snapshot;
+
+    private final ActiveRenderLoop activeLoop;
+    private final PromptLayoutCache layouts;
+
+    // where finished games are kept, or null to keep none
+    private volatile SessionStore sessions;
+    private volatile String playerName = System.getProperty("user.name", "player");
+
+    private volatile GameFrame.TransitionState stateAfterDone; // for exiting to the main menu
+
+    // owned by whichever thread is drawing, under the panel's lock
+
+    // glyphs for each line of text, laid out again only when that line changes
+    private final CachedText promptLine = new CachedText(FONT);
+    private final CachedText inputLine = new CachedText(FONT);
+    private final CachedText lapsLine = new CachedText(FONT);
+    private final CachedText promptsLeftLine = new CachedText(FONT);
+    private final CachedText frameStatsLine = new CachedText(FONT);
+    private final CachedText typingStatsLine = new CachedText(SMALL_FONT);
+    private int shownLives = -1;
+    private int shownPromptsLeft = -1;
+    private int shownTextVersion = -1;
+
+    // the typing stats as last shown, rounded the way they are drawn
+    private long shownWordsPerMinute = -1;
+    private long shownErrorPercent = -1;
+    private long shownIntervalMillis = -1;
+    private char shownSlowestKey = 1;
+
+    // the area of each line on screen, so a change repaints only its own line
+    private Rectangle lapsBounds;
+    private Rectangle promptsLeftBounds;
+    private Rectangle promptBounds;
+    private Rectangle inputBounds;
+    private final Rectangle raceBounds = new Rectangle(0, RACE_Y - LANE_HEIGHT, WIDTH, (MAX_LANES + 1) * LANE_HEIGHT);
 
     public GamePanel() {
 
@@ -50,159 +164,599 @@ public class GamePanel extends JPanel {
         setBackground(Color.BLACK);
         setForeground(Color.WHITE);
 
-        // initialize the StringBuilder with the current text
-        currentText = new StringBuilder();
+        // the active loop draws far more often than the timer repaints, so the engine ticks more often too
+        tickNanos = ACTIVE_RENDERING ? ActiveRenderLoop.UPDATE_NANOS : TICK_MILLIS * 1_000_000L;
+        engine = new GameEngine(tickNanos);
+        engine.setRecording(TRACES_DIR_PATH != null);
         addKeyListener(new KeyboardEar());
 
-        GameLoop timerTask = new GameLoop();
-        gameTimer = new Timer(100, timerTask);
+        activeLoop = new ActiveRenderLoop(this);
+
+        FontMetrics metrics = getFontMetrics(FONT);
+        lapsBounds = lineBounds(metrics, LAPS_Y);
+        promptsLeftBounds = lineBounds(metrics, PROMPTS_LEFT_Y);
+        promptBounds = lineBounds(metrics, PROMPT_Y);
+        inputBounds = lineBounds(metrics, INPUT_Y);
+        layouts = new PromptLayoutCache(FONT, metrics.getFontRenderContext(), LINE_WIDTH);
 
-        frames = FileManager.getDinoFrames();
+        if (AUDIO) {
+            openAudio();
+        }
 
-        // initialize the current queue with the text prompts
-        resetGame();
+        if (ACTIVE_RENDERING) {
+            // the render loop draws every frame itself
+            setIgnoreRepaint(true);
+        }
 
-        setDifficulty(3);
+        // initialize the current queue with the text prompts, the game thread takes over from here
+        reset();
+        engine.setDifficulty(3);
+        snapshot = takeSnapshot(null, System.nanoTime());
+
+        gameThread = new Thread(new GameLoop(), "game");
+        gameThread.setDaemon(true);
+        gameThread.start();
     }
 
     public void setDifficulty(int difficultyIndex) {
+        post(() -> engine.setDifficulty(difficultyIndex));
+    }
 
-        // check preconditions
-        if (difficultyIndex < 0 || difficultyIndex >= LOCAL_DIFFICULTIES.length) {
-            throw new IllegalArgumentException("difficulty index is out of bounds");
-        }
+    // pre: called on the EDT, where keys are typed
+    // post: the game is reset for a new game, keys typed before now are not part of it
+    public void resetGame() {
+        long keysBefore = input.getWritten();
+        post(() -> {
+            reset();
+            input.discardUntil(keysBefore);
+        });
+    }
 
-        stepSize = LOCAL_DIFFICULTIES[difficultyIndex];
+    /**
+     * pre: race != null
+     * post: plays this game as part of the race, which starts at startNanos on
+     *  the System.nanoTime() clock. Keys typed before then are ignored.
+     */
+    public void joinRace(RaceClient race, long startNanos) {
+
+        post(() -> {
+            this.race = race;
+            raceStartNanos = startNanos;
+            race.sendProgress(engine);
+
+            // count down on screen until the race starts
+            countdownTimer = new Timer(250, e -> {
+                repaint(raceBounds);
+                if (System.nanoTime() - startNanos >= 0) {
+                    ((Timer) e.getSource()).stop();
+                }
+            });
+            countdownTimer.start();
+        });
     }
 
-    public void resetGame() {
-        dinoX = 0;
-        lives = 1;
+    // post: the game is no longer part of a race
+    public void leaveRace() {
+        post(this::leave);
+    }
 
-        if (gameTimer.isRunning()) {
-            gameTimer.stop();
+    // post: redraws the other racers, safe to call from any thread
+    public void racersChanged() {
+        if (!ACTIVE_RENDERING) {
+            repaint(raceBounds);
         }
+    }
+
+    /**
+     * pre: prompt != null
+     * post: starts the prompt from its first segment, broken into lines that
+     *  fit the screen. The result of the game is kept under promptName, unless
+     *  it is null.
+     */
+    public void setCurrentPrompt(String promptName, PromptSequence prompt) {
+        post(() -> {
+            this.promptName = promptName;
+            engine.setPrompt(layouts.get(prompt));
+            setSong(promptName);
+        });
+    }
 
-        gameStarted = false;
-        error = false;
+    // post: breaks the prompts into lines that fit the screen in the background, before they are played
+    public void prefetchLayouts(Collection<? extends PromptSequence> prompts) {
+        layouts.prefetch(prompts);
+    }
 
-        Queue<String> sample = new LinkedList<>();
-        sample.add("The current text file is empty.");
+    // post: the result of every game played from now on is appended to sessions
+    public void setSessionStore(SessionStore sessions) {
+        this.sessions = sessions;
+    }
 
-        setCurrentPrompt(sample);
+    public void setPlayerName(String playerName) {
+        this.playerName = playerName;
+    }
 
-        currentText = new StringBuilder();
+    public void setGameEndTransition(GameFrame.TransitionState transition) {
+        stateAfterDone = transition;
+    }
 
+    // returns what the game looked like after its last update, safe to call from any thread
+    public GameSnapshot getSnapshot() {
+        return snapshot;
+    }
+
+    // returns the number of keys dropped because the game thread fell too far behind
+    public long getDroppedKeys() {
+        return input.getDropped();
+    }
+
+    // post: runs the change on the game thread after every change asked for before it
+    private void post(Runnable command) {
+        commands.add(command);
+        LockSupport.unpark(gameThread);
+    }
+
+    // post: a new game is ready to start with the first key
+    private void reset() {
+
+        activeLoop.stop();
+        engine.reset();
+        stats.reset();
+        leave();
+        setSong(null);
+
+        // pick up dino frames that were reloaded since the last game
+        sprites = FileManager.getDinoSprites();
         frameIndex = 0;
+        ticking = false;
+        gameEnded = false;
     }
 
-    public void setCurrentPrompt(Queue<String> prompt) {
-        promptQueue = makeDeepCopy(prompt);
+    private void leave() {
+
+        race = null;
+
+        if (countdownTimer != null) {
+            countdownTimer.stop();
+            countdownTimer = null;
+        }
     }
 
-    private Queue<String> makeDeepCopy(Queue<String> source) {
-        Queue<String> result = new LinkedList<>();
+    // post: opens the sound device and makes the effects, the game plays on without sound if there is no device
+    private void openAudio() {
 
-        for (String s : source) {
-            result.add(s);
+        audio = AudioEngine.open();
+        if (audio == null) {
+            return;
         }
 
-        return result;
+        clickClip = audio.addClip(AudioClip.tone(1200, 15, 0.2));
+        errorClip = audio.addClip(AudioClip.tone(110, 120, 0.35));
+        segmentClip = audio.addClip(AudioClip.tone(880, 200, 0.25));
+        audio.start();
     }
 
-    public void paintComponent(Graphics graphics) {
+    // post: cues the song of the prompt to play as it is typed, or no song if the prompt has none
+    private void setSong(String promptName) {
 
-        clearGraphics(graphics);
+        if (audio == null) {
+            return;
+        }
 
-        graphics.setColor(error ? Color.PINK : Color.WHITE);
-        graphics.setFont(FONT);
+        Path song = null;
+        if (promptName != null) {
+            song = Paths.get(SONGS_DIR_PATH, promptName.replaceFirst("\\.txt$", "") + ".wav");
+        }
+
+        audio.setSong(song != null && Files.isReadable(song) ? song : null);
+    }
+
+    /**
+     * pre: called on the game thread
+     * post: moves the game forward by one engine tick
+     */
+    private void tick() {
+
+        long start = System.nanoTime();
 
-        if (promptQueue.peek() != null)
-            graphics.drawString(promptQueue.peek(), 0, HEIGHT - 6 * 20);
+        engine.tick();
+        frameIndex = sprites.frameAt(engine.getElapsedNanos());
 
-        graphics.drawString(currentText.toString(), 0, HEIGHT - 4 * 20);
-        graphics.drawString("Laps left: " + lives, 0, 2 * 20);
-        graphics.drawString("Prompts left: " + promptQueue.size(), 0, 4 * 20);
+        if (race != null) {
+            race.sendProgress(engine);
+        }
 
-        graphics.drawImage(frames.get(frameIndex), dinoX - 200, 120, null);
+        GameMetrics.get().tickFinished(start, System.nanoTime());
     }
 
-    // clears the current graphics on the panel by filling the canvas with a rectangle
-    private void clearGraphics(Graphics graphics) {
-        graphics.setColor(Color.BLACK);
-        graphics.fillRect(0, 0, WIDTH, HEIGHT);
+    /**
+     * pre: called on the game thread
+     * post: types every key waiting in the input ring, and returns true if
+     *  there were any
+     */
+    private boolean handleKeys() {
+
+        int count = input.drainTo(keyBatch, keyNanosBatch);
+        if (count == 0) {
+            return false;
+        }
+
+        int sound = NO_SOUND;
+        for (int i = 0; i < count; i++) {
+            sound = Math.max(sound, handleKey(keyBatch[i], keyNanosBatch[i]));
+        }
+        lastKeyNanos = keyNanosBatch[count - 1];
+
+        // the whole batch is one update for everyone watching the game
+        if (audio != null && sound != NO_SOUND) {
+            audio.play(sound == SEGMENT_SOUND ? segmentClip : sound == ERROR_SOUND ? errorClip : clickClip);
+            // the song plays on through the segment being typed, and stops at its end until it is finished
+            audio.setProgress(engine.getPromptIndex(), engine.getPrompt().size());
+        }
+
+        if (race != null) {
+            race.sendProgress(engine);
+        }
+
+        return true;
     }
 
-    public void setGameEndTransition(GameFrame.TransitionState transition) {
-        stateAfterDone = transition;
+    // post: types one key, and returns the sound it makes
+    private int handleKey(char keyChar, long nanos) {
+
+        if (keyChar == KeyEvent.VK_SHIFT || engine.isOver()) {
+            return NO_SOUND;
+        }
+
+        // nobody gets a head start in a race
+        if (race != null && nanos - raceStartNanos < 0) {
+            return NO_SOUND;
+        }
+
+        int previousPromptIndex = engine.getPromptIndex();
+        boolean deleting = keyChar == KeyEvent.VK_BACK_SPACE;
+        boolean correct = engine.keyTyped(deleting ? GameEngine.BACKSPACE : keyChar);
+        stats.keyTyped(nanos, keyChar, deleting, correct);
+
+        if (engine.getPromptIndex() != previousPromptIndex) {
+            return SEGMENT_SOUND;
+        }
+
+        return correct || deleting ? CLICK_SOUND : ERROR_SOUND;
     }
 
-    private void checkGameConditions() {
+    // post: stops the game, saves its trace if traces are kept, and goes back to the menu
+    private void endGame() {
 
-        // the following conditionals will be checked if the current prompt is not empty
-        if (!promptQueue.isEmpty()) {
+        gameEnded = true;
+        ticking = false;
+        activeLoop.stop();
 
-            // fairly inefficient solution, will do for now
+        KeystrokeTrace trace = engine.getTrace();
+        if (trace != null && trace.isFinished()) {
+            saveTrace(trace);
+        }
 
-            String currentPrompt = promptQueue.peek();
-            int currentLength = currentText.length();
-            int promptLength = currentPrompt.length();
+        SessionStore sessions = this.sessions;
+        if (sessions != null && promptName != null) {
+            sessions.append(resultOf(engine));
+        }
 
-            if (currentText.toString().equals(currentPrompt)) {
+        if (audio != null) {
+            audio.setSong(null);
+        }
 
-                // player has written the prompt on the screen, move onto the next prompt
-                promptQueue.poll();
-                lives++;
+        // the menus belong to the EDT
+        GameFrame.TransitionState transition = stateAfterDone;
+        if (transition != null) {
+            SwingUtilities.invokeLater(transition::goToPanel);
+        }
+    }
 
-                if (promptQueue.isEmpty()) {
-                    // if the current queue is empty, we won!
-                    gameTimer.stop();
+    private SessionResult resultOf(GameEngine engine) {
 
-                    stateAfterDone.goToPanel();
+        long duration = engine.getElapsedNanos();
 
-                } else {
-                    // otherwise, clear the current text for the player (make a new StringBuilder)
-                    currentText = new StringBuilder();
-                }
-            } else if (currentLength < promptLength) {
+        return new SessionResult(playerName, promptName, engine.getDifficulty(),
+                engine.getState() == GameEngine.State.WON, System.currentTimeMillis(),
+                (int) (duration / 1_000_000L), (float) stats.getGameWordsPerMinute(duration),
+                (float) stats.getGameErrorRate(), stats.getGameKeyCount(),
+                stats.getIntervalNanos(0.5) / 1e6f);
+    }
 
-                // current string is smaller than the prompt, check the substring up to this point
-                error = !currentText.toString().equals(currentPrompt.substring(0, currentLength));
-            } else {
+    private void saveTrace(KeystrokeTrace trace) {
 
-                // the current length is larger than the prompt, guaranteed to be wrong
-                error = true;
-            }
+        Path directory = Paths.get(TRACES_DIR_PATH);
+        Path file = directory.resolve("game-" + System.currentTimeMillis() + TraceReplayer.TRACE_EXTENSION);
+
+        try {
+            Files.createDirectories(directory);
+            trace.save(file);
+        } catch (IOException e) {
+            System.out.println("Error while writing " + file);
         }
     }
 
     /**
-     * The KeyboardEar class handles all of the key typing event
-     * while the game is in play
+     * pre: called on the game thread
+     * post: returns a copy of what the game looks like now, sharing whatever
+     *  has not changed since previous
      */
-    private class KeyboardEar implements KeyListener {
-        public void keyTyped(KeyEvent e) {
+    private GameSnapshot takeSnapshot(GameSnapshot previous, long now) {
+
+        String segment = engine.getCurrentSegment();
+
+        // the typed text only becomes a new String when it changed
+        int textVersion = engine.getTypedTextVersion();
+        String typedText = previous != null && previous.getTypedTextVersion() == textVersion
+                ? previous.getTypedText() : engine.getTypedText().toString();
+
+        long wordsPerMinute = -1;
+        long errorPercent = 0;
+        long intervalMillis = 0;
+        char slowestKey = 0;
+
+        if (engine.getState() != GameEngine.State.WAITING) {
+            wordsPerMinute = Math.round(stats.getWordsPerMinute(now));
+            errorPercent = Math.round(stats.getErrorRate(now) * 100);
+            intervalMillis = Math.round(stats.getIntervalNanos(0.5) / 1e6);
+            slowestKey = stats.getSlowestKey();
+        }
+
+        return new GameSnapshot(engine.getState(), engine.getLives(), engine.getPromptIndex(),
+                engine.getPromptsLeft(), segment == null ? "" : segment, typedText, textVersion, engine.hasError(),
+                engine.getDinoX(0), engine.getDinoX(), lastTickNanos, lastKeyNanos, sprites, frameIndex, race,
+                raceStartNanos,
+                wordsPerMinute, errorPercent, intervalMillis, slowestKey);
+    }
+
+    /**
+     * pre: called on the game thread
+     * post: publishes the game as it is now and repaints the parts of the
+     *  screen that changed, or all of it if everything might have
+     */
+    private void publish(boolean repaintAll) {
+
+        GameSnapshot previous = snapshot;
+        GameSnapshot next = takeSnapshot(previous, System.nanoTime());
+        snapshot = next;
+
+        // the render loop draws every frame itself
+        if (ACTIVE_RENDERING) {
+            return;
+        }
+
+        // the color of every line follows the error, and a new segment changes the HUD
+        if (repaintAll || next.hasError() != previous.hasError() || next.getPromptIndex() != previous.getPromptIndex()
+                || next.getSprites() != previous.getSprites() || next.getRace() != previous.getRace()) {
+            repaint();
+            return;
+        }
+
+        if (next.getTypedTextVersion() != previous.getTypedTextVersion()) {
+            repaint(inputBounds);
+        }
+
+        // only the dino's old and new positions need to be drawn again
+        if (next.getDinoX() != previous.getDinoX() || next.getFrameIndex() != previous.getFrameIndex()) {
+            repaint(dinoBounds(previous, (int) previous.getDinoX()).union(dinoBounds(next, (int) next.getDinoX())));
+        }
+
+        if (next.getLives() != previous.getLives()) {
+            repaint(lapsBounds);
+        }
+
+        // the typing stats change with time as well as with keys
+        if (next.getState() == GameEngine.State.PLAYING || next.getPromptsLeft() != previous.getPromptsLeft()) {
+            repaint(promptsLeftBounds);
+        }
+    }
+
+    public void paintComponent(Graphics graphics) {
+        long start = System.nanoTime();
+        GameSnapshot game = render(graphics, 1.0);
+        GameMetrics.get().framePainted(start, System.nanoTime(), game.getKeyNanos());
+    }
 
-            if (!gameStarted) {
-                gameStarted = true;
-                gameTimer.start();
+    /**
+     * pre: 0 <= alpha <= 1
+     * post: draws the newest snapshot of the game with the dino alpha of the
+     *  way from its last position to its current one, and returns the snapshot
+     */
+    public synchronized GameSnapshot render(Graphics graphics, double alpha) {
+
+        GameSnapshot game = snapshot;
+        Graphics2D graphics2D = (Graphics2D) graphics;
+        // only what intersects the clip needs to be drawn, null means everything
+        Rectangle clip = graphics.getClipBounds();
+
+        clearGraphics(graphics, clip);
+        updateTextLines(game);
+
+        graphics.setColor(game.hasError() ? Color.PINK : Color.WHITE);
+
+        if (isDirty(clip, promptBounds))
+            promptLine.draw(graphics2D, 0, PROMPT_Y);
+
+        if (isDirty(clip, inputBounds))
+            inputLine.draw(graphics2D, 0, INPUT_Y);
+
+        if (isDirty(clip, lapsBounds)) {
+            lapsLine.draw(graphics2D, 0, LAPS_Y);
+
+            if (activeLoop.isRunning()) {
+                frameStatsLine.draw(graphics2D, WIDTH - 240, LAPS_Y);
             }
+        }
 
-            char keyChar = e.getKeyChar();
+        if (isDirty(clip, promptsLeftBounds)) {
+            promptsLeftLine.draw(graphics2D, 0, PROMPTS_LEFT_Y);
+            typingStatsLine.draw(graphics2D, STATS_X, PROMPTS_LEFT_Y);
+        }
 
-            if (keyChar == KeyEvent.VK_BACK_SPACE) {
+        if (game.getRace() != null && isDirty(clip, raceBounds))
+            drawRace(graphics2D, game);
 
-                // if the current char typed is a backspace, delete the last character
-                if (currentText.length() > 0) {
-                    currentText.deleteCharAt(currentText.length() - 1);
-                }
-            } else if (keyChar != KeyEvent.VK_SHIFT) {
+        int x = (int) game.getDinoX(alpha);
+
+        if (clip == null || clip.intersects(dinoBounds(game, x)))
+            game.getSprites().draw(graphics, game.getFrameIndex(), x - 200, DINO_Y);
+
+        return game;
+    }
 
-                currentText.append(keyChar);
+    // post: draws the racers furthest ahead as small dinos placed by how much they have typed
+    private void drawRace(Graphics2D graphics, GameSnapshot game) {
+
+        RaceClient race = game.getRace();
+        graphics.setFont(SMALL_FONT);
+
+        long untilStart = game.getRaceStartNanos() - System.nanoTime();
+        if (untilStart > 0) {
+            graphics.setColor(Color.YELLOW);
+            graphics.drawString("The race starts in " + (untilStart / 1_000_000_000L + 1) + "...", 0, RACE_Y - 6);
+        }
+
+        // pick the leaders without sorting every racer, there can be thousands
+        RaceClient.Racer[] leaders = new RaceClient.Racer[MAX_LANES];
+        int shown = 0;
+
+        for (RaceClient.Racer racer : race.getRacers()) {
+
+            if (racer.getId() == race.getPlayerId()) {
+                continue;
             }
 
-            checkGameConditions();
-            repaint();
+            // a racer behind every leader stays off screen
+            if (shown == MAX_LANES && racer.getProgress() <= leaders[MAX_LANES - 1].getProgress()) {
+                continue;
+            }
+
+            int lane = shown < MAX_LANES ? shown++ : MAX_LANES - 1;
+
+            // insertion into the short list of leaders
+            while (lane > 0 && leaders[lane - 1].getProgress() < racer.getProgress()) {
+                leaders[lane] = leaders[lane - 1];
+                lane--;
+            }
+            leaders[lane] = racer;
+        }
+
+        int size = LANE_HEIGHT - 4;
+        for (int lane = 0; lane < shown; lane++) {
+
+            RaceClient.Racer racer = leaders[lane];
+            int x = (int) (racer.getProgress() * (WIDTH - 160));
+            int y = RACE_Y + lane * LANE_HEIGHT;
+
+            game.getSprites().draw(graphics, game.getFrameIndex(), x, y, size, size);
+
+            graphics.setColor(racer.getState() == GameEngine.State.LOST ? Color.GRAY : Color.WHITE);
+            graphics.drawString(racer.getName(), x + size + 4, y + size - 4);
+        }
+
+        graphics.setFont(FONT);
+    }
+
+    // post: lays out again the lines of text whose contents changed since the last paint
+    private void updateTextLines(GameSnapshot game) {
+
+        promptLine.setText(game.getSegment());
+
+        if (game.getTypedTextVersion() != shownTextVersion) {
+            inputLine.setText(game.getTypedText());
+            shownTextVersion = game.getTypedTextVersion();
+        }
+
+        int lives = game.getLives();
+        if (lives != shownLives) {
+            lapsLine.setText("Laps left: " + lives);
+            shownLives = lives;
+        }
+
+        int promptsLeft = game.getPromptsLeft();
+        if (promptsLeft != shownPromptsLeft) {
+            promptsLeftLine.setText("Prompts left: " + promptsLeft);
+            shownPromptsLeft = promptsLeft;
+        }
+
+        updateTypingStatsLine(game);
+
+        if (activeLoop.isRunning()) {
+            frameStatsLine.setText(String.format("%.0f fps, %.1f ms jitter",
+                    activeLoop.getFramesPerSecond(), activeLoop.getJitterMillis()));
+        }
+    }
+
+    // post: lays out the typing stats again if any of them changed the way they are shown
+    private void updateTypingStatsLine(GameSnapshot game) {
+
+        long wordsPerMinute = game.getWordsPerMinute();
+
+        if (wordsPerMinute < 0) {
+            typingStatsLine.setText("");
+            shownWordsPerMinute = -1;
+            return;
+        }
+
+        long errorPercent = game.getErrorPercent();
+        long intervalMillis = game.getIntervalMillis();
+        char slowestKey = game.getSlowestKey();
+
+        if (wordsPerMinute == shownWordsPerMinute && errorPercent == shownErrorPercent
+                && intervalMillis == shownIntervalMillis && slowestKey == shownSlowestKey) {
+            return;
+        }
+
+        shownWordsPerMinute = wordsPerMinute;
+        shownErrorPercent = errorPercent;
+        shownIntervalMillis = intervalMillis;
+        shownSlowestKey = slowestKey;
+
+        typingStatsLine.setText(wordsPerMinute + " WPM   " + errorPercent + "% errors   " + intervalMillis
+                + " ms/key" + (slowestKey == 0 ? "" : "   slowest: " + slowestKey));
+    }
+
+    // clears the clipped area of the panel by filling it with a rectangle
+    private void clearGraphics(Graphics graphics, Rectangle clip) {
+        graphics.setColor(Color.BLACK);
+
+        if (clip == null) {
+            graphics.fillRect(0, 0, WIDTH, HEIGHT);
+        } else {
+            graphics.fillRect(clip.x, clip.y, clip.width, clip.height);
+        }
+    }
+
+    private boolean isDirty(Rectangle clip, Rectangle bounds) {
+        return clip == null || clip.intersects(bounds);
+    }
+
+    // returns the area covered by a line of text with the given baseline
+    private Rectangle lineBounds(FontMetrics metrics, int baseline) {
+        // a little padding for glyphs that reach past the font's metrics
+        int padding = 2;
+        return new Rectangle(0, baseline - metrics.getMaxAscent() - padding,
+                WIDTH, metrics.getMaxAscent() + metrics.getMaxDescent() + 2 * padding);
+    }
+
+    // returns the area covered by the dino frame drawn at the given position
+    private Rectangle dinoBounds(GameSnapshot game, int x) {
+        return game.getSprites().getBounds(game.getFrameIndex(), x - 200, DINO_Y);
+    }
+
+    /**
+     * The KeyboardEar class hands every typed key to the game thread
+     * while the game is in play
+     */
+    private class KeyboardEar implements KeyListener {
+        public void keyTyped(KeyEvent e) {
+
+            long now = System.nanoTime();
+
+            // the key is typed into the game on the game thread, never here
+            if (input.offer(e.getKeyChar(), now)) {
+                LockSupport.unpark(gameThread);
+            }
         }
 
         /*
@@ -216,27 +770,121 @@ public class GamePanel extends JPanel {
     }
 
     /**
-     * The GameLoop class manages the frame by frame updates
-     * necessary to check player input status in real time
+     * The GameLoop class is the game thread. It sleeps until the next tick
+     * is due or it is handed keys or changes, whichever comes first
      */
-    private class GameLoop implements ActionListener {
-        @Override
-        public synchronized void actionPerformed(ActionEvent e) {
-            dinoX = (dinoX + stepSize) % (200 + WIDTH);
+    private class GameLoop implements Runnable {
+
+        // when the last error was printed, and how many were not printed since
+        private long errorReportedNanos;
+        private boolean errorReported;
+        private int errorsSkipped;
+
+        public void run() {
+            while (true) {
+
+                try {
+                    step();
+                } catch (RuntimeException e) {
+                    // a failing key, tick or listener must not stop the game thread either
+                    reportError(e);
+                }
+
+                if (ticking) {
+                    LockSupport.parkNanos(this, nextTickNanos - System.nanoTime());
+                } else {
+                    LockSupport.park(this);
+                }
+            }
+        }
+
+        // post: runs the waiting changes, keys and due ticks, then shows the result
+        private void step() {
 
-            if (dinoX < stepSize) {
-                lives--;
+            boolean changed = runCommands();
+            boolean repaintAll = changed;
+            changed |= handleKeys();
+
+            if (engine.getState() == GameEngine.State.PLAYING) {
+                changed |= tickIfDue();
             }
 
-            if (lives <= 0) {
+            if (changed) {
+                publish(repaintAll);
+            }
 
-                gameTimer.stop();
-                stateAfterDone.goToPanel();
+            if (engine.isOver() && !gameEnded) {
+                endGame();
             }
+        }
 
-            frameIndex = (frameIndex + 1) % frames.size();
+        // post: prints the error, unless one was printed less than ERROR_REPORT_NANOS ago
+        private void reportError(RuntimeException e) {
 
-            repaint();
+            long now = System.nanoTime();
+            if (errorReported && now - errorReportedNanos < ERROR_REPORT_NANOS) {
+                errorsSkipped++;
+                return;
+            }
+
+            e.printStackTrace();
+            System.out.println("Error while running the game"
+                    + (errorsSkipped > 0 ? " (" + errorsSkipped + " more since the last one)" : ""));
+
+            errorReported = true;
+            errorReportedNanos = now;
+            errorsSkipped = 0;
+        }
+
+        // post: runs every change waiting for the game thread, and returns true if there were any
+        private boolean runCommands() {
+
+            boolean ran = false;
+
+            for (Runnable command = commands.poll(); command != null; command = commands.poll()) {
+                try {
+                    command.run();
+                } catch (RuntimeException e) {
+                    // one bad change must not stop the game thread
+                    e.printStackTrace();
+                    System.out.println("Error while updating the game");
+                }
+                ran = true;
+            }
+
+            return ran;
+        }
+
+        // post: runs every tick that is due in fixed steps, and returns true if there were any
+        private boolean tickIfDue() {
+
+            long now = System.nanoTime();
+
+            if (!ticking) {
+                // the first key starts the game, the first tick is one tick after it
+                ticking = true;
+                nextTickNanos = now + tickNanos;
+
+                if (ACTIVE_RENDERING) {
+                    activeLoop.start();
+                }
+                return false;
+            }
+
+            if (now - nextTickNanos > MAX_LAG_NANOS) {
+                nextTickNanos = now - MAX_LAG_NANOS;
+            }
+
+            boolean ticked = false;
+            while (now - nextTickNanos >= 0 && engine.getState() == GameEngine.State.PLAYING) {
+                // the tick is used up before it runs, so one that throws is not run again right away
+                lastTickNanos = nextTickNanos;
+                nextTickNanos += tickNanos;
+                ticked = true;
+                tick();
+            }
+
+            return ticked;
         }
     }
 }
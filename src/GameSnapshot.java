@@ -0,0 +1,150 @@
+/**
+ * For use in the game DinoType (Version 2)
+ *  Everything the game panel draws, copied out of the game after an update.
+ *  The game thread makes a new snapshot whenever the game changes and the
+ *  panel draws whichever one is newest, so drawing never touches the state
+ *  the game thread is changing and never has to wait for it.
+ * @author Jay Acosta
+ */
+public final class GameSnapshot {
+
+    private final GameEngine.State state;
+    private final int lives;
+    private final int promptIndex;
+    private final int promptsLeft;
+    private final String segment;
+    private final String typedText;
+    private final int typedTextVersion;
+    private final boolean error;
+
+    // the dino at the last two ticks, drawn between them
+    private final double previousDinoX;
+    private final double dinoX;
+    private final long tickNanos;
+    // when the newest key in the game arrived, 0 before the first
+    private final long keyNanos;
+    private final SpriteAtlas sprites;
+    private final int frameIndex;
+
+    // the race the game is part of, or null
+    private final RaceClient race;
+    private final long raceStartNanos;
+
+    // the typing stats as shown, wordsPerMinute is -1 before the first key
+    private final long wordsPerMinute;
+    private final long errorPercent;
+    private final long intervalMillis;
+    private final char slowestKey;
+
+    GameSnapshot(GameEngine.State state, int lives, int promptIndex, int promptsLeft, String segment,
+                 String typedText, int typedTextVersion, boolean error, double previousDinoX, double dinoX,
+                 long tickNanos, long keyNanos, SpriteAtlas sprites, int frameIndex, RaceClient race, long raceStartNanos,
+                 long wordsPerMinute, long errorPercent, long intervalMillis, char slowestKey) {
+        this.state = state;
+        this.lives = lives;
+        this.promptIndex = promptIndex;
+        this.promptsLeft = promptsLeft;
+        this.segment = segment;
+        this.typedText = typedText;
+        this.typedTextVersion = typedTextVersion;
+        this.error = error;
+        this.previousDinoX = previousDinoX;
+        this.dinoX = dinoX;
+        this.tickNanos = tickNanos;
+        this.keyNanos = keyNanos;
+        this.sprites = sprites;
+        this.frameIndex = frameIndex;
+        this.race = race;
+        this.raceStartNanos = raceStartNanos;
+        this.wordsPerMinute = wordsPerMinute;
+        this.errorPercent = errorPercent;
+        this.intervalMillis = intervalMillis;
+        this.slowestKey = slowestKey;
+    }
+
+    public GameEngine.State getState() {
+        return state;
+    }
+
+    public int getLives() {
+        return lives;
+    }
+
+    public int getPromptIndex() {
+        return promptIndex;
+    }
+
+    public int getPromptsLeft() {
+        return promptsLeft;
+    }
+
+    // returns the segment being typed, or "" once the prompt is finished
+    public String getSegment() {
+        return segment;
+    }
+
+    public String getTypedText() {
+        return typedText;
+    }
+
+    public int getTypedTextVersion() {
+        return typedTextVersion;
+    }
+
+    public boolean hasError() {
+        return error;
+    }
+
+    public double getDinoX() {
+        return dinoX;
+    }
+
+    // pre: 0 <= alpha <= 1
+    // post: returns the position alpha of the way from the last tick's position to the current one
+    public double getDinoX(double alpha) {
+        return previousDinoX + (dinoX - previousDinoX) * alpha;
+    }
+
+    // returns the System.nanoTime() the last tick was due, the dino is at dinoX from then on
+    public long getTickNanos() {
+        return tickNanos;
+    }
+
+    // returns the System.nanoTime() the newest key typed into the game arrived, 0 before the first
+    public long getKeyNanos() {
+        return keyNanos;
+    }
+
+    public SpriteAtlas getSprites() {
+        return sprites;
+    }
+
+    public int getFrameIndex() {
+        return frameIndex;
+    }
+
+    public RaceClient getRace() {
+        return race;
+    }
+
+    public long getRaceStartNanos() {
+        return raceStartNanos;
+    }
+
+    public long getWordsPerMinute() {
+        return wordsPerMinute;
+    }
+
+    public long getErrorPercent() {
+        return errorPercent;
+    }
+
+    public long getIntervalMillis() {
+        return intervalMillis;
+    }
+
+    // returns the key typed slowest on average, or 0 if there is none yet
+    public char getSlowestKey() {
+        return slowestKey;
+    }
+}
@@ -0,0 +1,52 @@
+/**
+ * For use in the game DinoType (Version 2)
+ *  The summary of a LatencyHistogram at one point in time, in microseconds.
+ * @author Jay Acosta
+ */
+public class HistogramSnapshot {
+
+    private final long count;
+    private final double p50Micros;
+    private final double p90Micros;
+    private final double p99Micros;
+    private final double p999Micros;
+    private final double maxMicros;
+
+    public HistogramSnapshot(LatencyHistogram histogram) {
+        count = histogram.getCount();
+        p50Micros = histogram.getPercentileNanos(0.50) / 1e3;
+        p90Micros = histogram.getPercentileNanos(0.90) / 1e3;
+        p99Micros = histogram.getPercentileNanos(0.99) / 1e3;
+        p999Micros = histogram.getPercentileNanos(0.999) / 1e3;
+        maxMicros = histogram.getMaxNanos() / 1e3;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public double getP50Micros() {
+        return p50Micros;
+    }
+
+    public double getP90Micros() {
+        return p90Micros;
+    }
+
+    public double getP99Micros() {
+        return p99Micros;
+    }
+
+    public double getP999Micros() {
+        return p999Micros;
+    }
+
+    public double getMaxMicros() {
+        return maxMicros;
+    }
+
+    public String toString() {
+        return String.format("count=%d p50=%.1fus p90=%.1fus p99=%.1fus p99.9=%.1fus max=%.1fus",
+                count, p50Micros, p90Micros, p99Micros, p999Micros, maxMicros);
+    }
+}
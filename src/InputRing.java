@@ -0,0 +1,103 @@
+/**
+ * For use in the game DinoType (Version 2)
+ *  A fixed ring of typed keys and the times they arrived, passed from the
+ *  thread receiving keys to the thread playing the game. Exactly one thread
+ *  may offer and exactly one thread may drain; neither ever waits for the
+ *  other or allocates. A key offered to a full ring is dropped and counted.
+ * @author Jay Acosta
+ */
+public class InputRing {
+
+    private final char[] keys;
+    private final long[] nanos;
+    private final int mask;
+
+    // keys offered and keys drained so far, each written by one thread only
+    private volatile long written;
+    private volatile long read;
+
+    private volatile long dropped;
+
+    /**
+     * pre: capacity is a power of two
+     * post: creates an empty ring holding up to capacity keys
+     */
+    public InputRing(int capacity) {
+
+        // check preconditions
+        if (capacity <= 0 || Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("capacity must be a power of two, not " + capacity);
+        }
+
+        keys = new char[capacity];
+        nanos = new long[capacity];
+        mask = capacity - 1;
+    }
+
+    /**
+     * pre: called by the one producing thread
+     * post: adds the key typed at the given System.nanoTime(), returning false
+     *  and dropping it if the ring is full
+     */
+    public boolean offer(char key, long keyNanos) {
+
+        long position = written;
+        if (position - read == keys.length) {
+            dropped++;
+            return false;
+        }
+
+        keys[(int) (position & mask)] = key;
+        nanos[(int) (position & mask)] = keyNanos;
+
+        // publishes the key and its time together
+        written = position + 1;
+        return true;
+    }
+
+    /**
+     * pre: called by the one consuming thread, keysOut and nanosOut are the same length
+     * post: moves as many waiting keys as fit into keysOut and nanosOut, oldest
+     *  first, and returns how many were moved
+     */
+    public int drainTo(char[] keysOut, long[] nanosOut) {
+
+        long position = read;
+        int count = (int) Math.min(written - position, keysOut.length);
+
+        for (int i = 0; i < count; i++) {
+            keysOut[i] = keys[(int) ((position + i) & mask)];
+            nanosOut[i] = nanos[(int) ((position + i) & mask)];
+        }
+
+        // frees the slots for the producer only once they have been copied
+        read = position + count;
+        return count;
+    }
+
+    /**
+     * pre: called by the one consuming thread, position was returned by getWritten
+     * post: drops every key offered before position that has not been drained
+     */
+    public void discardUntil(long position) {
+        read = Math.max(read, Math.min(position, written));
+    }
+
+    // returns the number of keys offered so far, the position of the next key
+    public long getWritten() {
+        return written;
+    }
+
+    public boolean isEmpty() {
+        return written == read;
+    }
+
+    public int capacity() {
+        return keys.length;
+    }
+
+    // returns the number of keys dropped because the ring was full
+    public long getDropped() {
+        return dropped;
+    }
+}
@@ -0,0 +1,263 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+/**
+ * For use in the game DinoType (Version 2)
+ *  Every key typed in one game and the tick it was typed on, together with
+ *  the prompt, the difficulty and how the game ended, which is everything a
+ *  GameEngine needs to play the game again and check it ends the same way.
+ *  Keys are stored as the number of ticks since the previous key followed by
+ *  the character, both as variable length integers, so a typical key takes
+ *  two bytes.
+ * @author Jay Acosta
+ */
+public class KeystrokeTrace {
+
+    // class constants
+    private static final int MAGIC = 0x44545243; // "DTRC"
+    private static final int VERSION = 1;
+
+    private final long tickNanos;
+    private final int difficulty;
+
+    private byte[] keys = new byte[256];
+    private int keysLength;
+    private int keyCount;
+    private long lastKeyTick;
+
+    // filled in once the game is over
+    private boolean finished;
+    private String[] segments;
+    private long endTick;
+    private GameEngine.State outcome;
+    private int finalLives;
+    private int finalPromptIndex;
+
+    public KeystrokeTrace(long tickNanos, int difficulty) {
+        this.tickNanos = tickNanos;
+        this.difficulty = difficulty;
+    }
+
+    /**
+     * pre: tick is not before the tick of the previous key
+     * post: appends a key typed after the given number of ticks
+     */
+    public void addKey(long tick, char key) {
+
+        // check preconditions
+        if (tick < lastKeyTick) {
+            throw new IllegalArgumentException("keys must be added in the order they were typed");
+        }
+        if (finished) {
+            throw new IllegalStateException("the game is already over");
+        }
+
+        writeVarLong(tick - lastKeyTick);
+        writeVarLong(key);
+        lastKeyTick = tick;
+        keyCount++;
+    }
+
+    /**
+     * pre: engine.isOver()
+     * post: remembers the prompt that was played and how the game ended
+     */
+    public void finish(GameEngine engine) {
+
+        // check preconditions
+        if (!engine.isOver()) {
+            throw new IllegalStateException("the game is not over yet");
+        }
+
+        PromptSequence prompt = engine.getPrompt();
+        segments = new String[prompt.size()];
+        for (int i = 0; i < segments.length; i++) {
+            segments[i] = prompt.getSegment(i);
+        }
+
+        endTick = engine.getTicks();
+        outcome = engine.getState();
+        finalLives = engine.getLives();
+        finalPromptIndex = engine.getPromptIndex();
+        finished = true;
+    }
+
+    public boolean isFinished() {
+        return finished;
+    }
+
+    public long getTickNanos() {
+        return tickNanos;
+    }
+
+    public int getDifficulty() {
+        return difficulty;
+    }
+
+    public int getKeyCount() {
+        return keyCount;
+    }
+
+    public PromptSequence getPrompt() {
+        return PromptSequence.of(segments);
+    }
+
+    public long getEndTick() {
+        return endTick;
+    }
+
+    public GameEngine.State getOutcome() {
+        return outcome;
+    }
+
+    public int getFinalLives() {
+        return finalLives;
+    }
+
+    public int getFinalPromptIndex() {
+        return finalPromptIndex;
+    }
+
+    // returns a cursor over the keys from the first one typed
+    public Cursor keys() {
+        return new Cursor();
+    }
+
+    /**
+     * pre: the trace is finished
+     * post: writes the trace to the given file, replacing it if it exists
+     */
+    public void save(Path path) throws IOException {
+
+        // check preconditions
+        if (!finished) {
+            throw new IllegalStateException("only finished games can be saved");
+        }
+
+        try (DataOutputStream output = new DataOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(path)))) {
+
+            output.writeInt(MAGIC);
+            output.writeInt(VERSION);
+            output.writeLong(tickNanos);
+            output.writeByte(difficulty);
+
+            output.writeInt(segments.length);
+            for (String segment : segments) {
+                output.writeUTF(segment);
+            }
+
+            output.writeInt(keyCount);
+            output.writeInt(keysLength);
+            output.write(keys, 0, keysLength);
+
+            output.writeLong(endTick);
+            output.writeByte(outcome.ordinal());
+            output.writeInt(finalLives);
+            output.writeInt(finalPromptIndex);
+        }
+    }
+
+    /**
+     * pre: path != null
+     * post: reads a trace written by save, throws an IOException if the file is
+     *  not a trace or was written by another version of the game
+     */
+    public static KeystrokeTrace load(Path path) throws IOException {
+
+        try (DataInputStream input = new DataInputStream(
+                new BufferedInputStream(Files.newInputStream(path)))) {
+
+            if (input.readInt() != MAGIC || input.readInt() != VERSION) {
+                throw new IOException(path.getFileName() + " is not a trace of this version of the game");
+            }
+
+            KeystrokeTrace trace = new KeystrokeTrace(input.readLong(), input.readByte());
+
+            trace.segments = new String[input.readInt()];
+            for (int i = 0; i < trace.segments.length; i++) {
+                trace.segments[i] = input.readUTF();
+            }
+
+            trace.keyCount = input.readInt();
+            trace.keysLength = input.readInt();
+            trace.keys = new byte[trace.keysLength];
+            input.readFully(trace.keys);
+
+            trace.endTick = input.readLong();
+            trace.outcome = GameEngine.State.values()[input.readByte()];
+            trace.finalLives = input.readInt();
+            trace.finalPromptIndex = input.readInt();
+            trace.finished = true;
+
+            return trace;
+        }
+    }
+
+    // seven bits at a time, lowest first, with the top bit set on every byte but the last
+    private void writeVarLong(long value) {
+
+        if (keysLength + 10 > keys.length) {
+            keys = Arrays.copyOf(keys, keys.length * 2);
+        }
+
+        while ((value & ~0x7FL) != 0) {
+            keys[keysLength++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        keys[keysLength++] = (byte) value;
+    }
+
+    /**
+     * Walks the keys of the trace in the order they were typed
+     * without decoding them all up front
+     */
+    public class Cursor {
+
+        private int position;
+        private long tick;
+        private char key;
+
+        // post: moves to the next key, returns false if there are no more keys
+        public boolean next() {
+
+            if (position >= keysLength) {
+                return false;
+            }
+
+            tick += readVarLong();
+            key = (char) readVarLong();
+            return true;
+        }
+
+        // returns the tick the current key was typed on
+        public long getTick() {
+            return tick;
+        }
+
+        public char getKey() {
+            return key;
+        }
+
+        private long readVarLong() {
+
+            long value = 0;
+            int shift = 0;
+            byte current;
+
+            do {
+                current = keys[position++];
+                value |= (long) (current & 0x7F) << shift;
+                shift += 7;
+            } while ((current & 0x80) != 0);
+
+            return value;
+        }
+    }
+}
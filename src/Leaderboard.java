@@ -0,0 +1,131 @@
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * For use in the game DinoType (Version 2)
+ *  The best results of every prompt and difficulty. Each prompt and
+ *  difficulty keeps its best results in a sorted array that is never changed
+ *  once published, and a new result replaces the whole array with a
+ *  compare-and-set, so writers never lock and a reader always sees one whole
+ *  leaderboard. Most results are not good enough to place, and those are
+ *  turned away without copying anything.
+ * @author Jay Acosta
+ */
+public class Leaderboard {
+
+    // class constants
+    public static final int DEFAULT_SIZE = SessionStore.KEEP_BEST;
+
+    private static final SessionResult[] EMPTY = new SessionResult[0];
+
+    private final int size;
+    private final ConcurrentHashMap<String, AtomicReference<SessionResult[]>> boards = new ConcurrentHashMap<>();
+
+    public Leaderboard() {
+        this(DEFAULT_SIZE);
+    }
+
+    /**
+     * pre: size > 0
+     * post: creates an empty leaderboard keeping the best size results of
+     *  every prompt and difficulty
+     */
+    public Leaderboard(int size) {
+
+        // check preconditions
+        if (size <= 0) {
+            throw new IllegalArgumentException("a leaderboard needs room for a result");
+        }
+
+        this.size = size;
+    }
+
+    // post: adds every result, for building the leaderboard from a SessionStore
+    public void addAll(Collection<SessionResult> results) {
+        for (SessionResult result : results) {
+            add(result);
+        }
+    }
+
+    /**
+     * pre: result != null
+     * post: places the result on the leaderboard of its prompt and difficulty
+     *  and returns true, or returns false if it is not one of the best.
+     *  Safe to call from any number of threads at once.
+     */
+    public boolean add(SessionResult result) {
+
+        AtomicReference<SessionResult[]> board = boards.computeIfAbsent(
+                keyOf(result.getPromptName(), result.getDifficulty()), key -> new AtomicReference<>(EMPTY));
+
+        while (true) {
+
+            SessionResult[] current = board.get();
+
+            // the usual case, not good enough to place
+            if (current.length == size && SessionResult.BEST_FIRST.compare(result, current[size - 1]) >= 0) {
+                return false;
+            }
+
+            int place = placeOf(current, result);
+            int length = Math.min(size, current.length + 1);
+
+            SessionResult[] updated = new SessionResult[length];
+            System.arraycopy(current, 0, updated, 0, place);
+            updated[place] = result;
+            System.arraycopy(current, place, updated, place + 1, length - place - 1);
+
+            if (board.compareAndSet(current, updated)) {
+                return true;
+            }
+        }
+    }
+
+    // returns the best results of the prompt at the difficulty, best first, as they were at one moment
+    public List<SessionResult> getTop(String promptName, int difficulty) {
+
+        AtomicReference<SessionResult[]> board = boards.get(keyOf(promptName, difficulty));
+
+        // the array is never written once published, so it can be handed out without a copy
+        return board == null ? List.of() : Collections.unmodifiableList(Arrays.asList(board.get()));
+    }
+
+    // returns the best result of the prompt at the difficulty, or null if it has not been played
+    public SessionResult getBest(String promptName, int difficulty) {
+
+        AtomicReference<SessionResult[]> board = boards.get(keyOf(promptName, difficulty));
+        SessionResult[] top = board == null ? EMPTY : board.get();
+
+        return top.length == 0 ? null : top[0];
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    // post: returns where the result goes among the sorted results, after any it ties with
+    private static int placeOf(SessionResult[] results, SessionResult result) {
+
+        int low = 0;
+        int high = results.length;
+
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (SessionResult.BEST_FIRST.compare(results[middle], result) <= 0) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+
+        return low;
+    }
+
+    private static String keyOf(String promptName, int difficulty) {
+        return promptName + '\0' + difficulty;
+    }
+}
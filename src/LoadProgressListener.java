@@ -0,0 +1,11 @@
+/**
+ * For use in the game DinoType (Version 2)
+ *  Receives updates while FileManager loads prompts and dino frames.
+ *  Updates arrive on the loader threads, so implementations must be thread safe.
+ * @author Jay Acosta
+ */
+public interface LoadProgressListener {
+
+    // called once for every file that finished loading, successfully or not
+    void assetLoaded(String fileName, int loaded, int total);
+}
@@ -0,0 +1,181 @@
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * For use in the game DinoType (Version 2)
+ *  The prompts kept in memory, up to a budget of bytes. Each prompt is
+ *  weighed by the heap dropping it could free, its lines counted as if no
+ *  other prompt shared them, and once the prompts weigh more than
+ *  the budget the least recently played are dropped. A dropped prompt is read
+ *  from disk again by the loader the next time it is asked for, so songs that
+ *  are played often stay in memory however large the catalog is.
+ *  All methods are safe to call from any thread; prompts are read from disk
+ *  outside the lock.
+ * @author Jay Acosta
+ */
+public class PromptCache implements PromptCacheMXBean {
+
+    /**
+     * The Loader interface reads a prompt
+     * that is not in memory from disk
+     */
+    public interface Loader {
+
+        // pre: name is a prompt file name
+        // post: returns the prompt read from disk
+        CorpusPrompt load(String name) throws IOException;
+    }
+
+    // class constants
+    private static final String OBJECT_NAME = "dinotype:type=PromptCache";
+
+    private final long budgetBytes;
+    private final Loader loader;
+
+    // ordered from the least to the most recently asked for
+    private final Map<String, CorpusPrompt> prompts = new LinkedHashMap<>(16, 0.75f, true);
+    private long retainedBytes;
+
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    /**
+     * pre: budgetBytes > 0, loader != null
+     * post: creates an empty cache holding prompts of up to budgetBytes in all
+     */
+    public PromptCache(long budgetBytes, Loader loader) {
+
+        // check preconditions
+        if (budgetBytes <= 0) {
+            throw new IllegalArgumentException("the budget must be positive, not " + budgetBytes);
+        } else if (loader == null) {
+            throw new IllegalArgumentException("the cache needs a loader");
+        }
+
+        this.budgetBytes = budgetBytes;
+        this.loader = loader;
+    }
+
+    /**
+     * pre: name != null
+     * post: returns the prompt, reading it from disk if it is not in memory
+     *  and keeping it as the most recently played
+     */
+    public CorpusPrompt get(String name) throws IOException {
+
+        synchronized (this) {
+            CorpusPrompt prompt = prompts.get(name);
+            if (prompt != null) {
+                hits++;
+                return prompt;
+            }
+            misses++;
+        }
+
+        CorpusPrompt loaded = loader.load(name);
+
+        synchronized (this) {
+            // a newer version may have been put while this one was read
+            CorpusPrompt current = prompts.get(name);
+            if (current != null) {
+                return current;
+            }
+            keep(name, loaded);
+        }
+
+        return loaded;
+    }
+
+    /**
+     * pre: name != null, prompt != null
+     * post: keeps the prompt as the most recently played in place of any
+     *  older version, dropping others to stay within the budget. A prompt
+     *  larger than the whole budget is not kept.
+     */
+    public synchronized void put(String name, CorpusPrompt prompt) {
+        remove(name);
+        keep(name, prompt);
+    }
+
+    // post: forgets the prompt if it is in memory, without counting an eviction
+    public synchronized void remove(String name) {
+
+        CorpusPrompt removed = prompts.remove(name);
+        if (removed != null) {
+            retainedBytes -= removed.getRetainedBytes();
+        }
+    }
+
+    // returns the prompts in memory right now
+    public synchronized List<CorpusPrompt> getCachedPrompts() {
+        return new ArrayList<>(prompts.values());
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    public synchronized int getPromptCount() {
+        return prompts.size();
+    }
+
+    public synchronized long getRetainedBytes() {
+        return retainedBytes;
+    }
+
+    public long getBudgetBytes() {
+        return budgetBytes;
+    }
+
+    /**
+     * pre: none
+     * post: publishes the counters to the platform MBean server, printing an
+     *  error if another cache is already published
+     */
+    public void register() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            server.registerMBean(this, new ObjectName(OBJECT_NAME));
+        } catch (JMException e) {
+            System.out.println("Error while registering the prompt cache: " + e.getMessage());
+        }
+    }
+
+    // pre: holds the lock, name is not in the cache
+    private void keep(String name, CorpusPrompt prompt) {
+
+        long bytes = prompt.getRetainedBytes();
+        if (bytes > budgetBytes) {
+            return;
+        }
+
+        prompts.put(name, prompt);
+        retainedBytes += bytes;
+
+        // drop the least recently played until the rest fits, never the one just kept
+        Iterator<CorpusPrompt> oldest = prompts.values().iterator();
+        while (retainedBytes > budgetBytes) {
+            CorpusPrompt evicted = oldest.next();
+            oldest.remove();
+            retainedBytes -= evicted.getRetainedBytes();
+            evictions++;
+        }
+    }
+}
@@ -0,0 +1,26 @@
+/**
+ * For use in the game DinoType (Version 2)
+ *  Management interface of PromptCache, shown under "dinotype:type=PromptCache"
+ *  in JConsole, VisualVM or any other JMX client.
+ * @author Jay Acosta
+ */
+public interface PromptCacheMXBean {
+
+    // prompts asked for that were already in memory
+    long getHits();
+
+    // prompts asked for that had to be read from disk again
+    long getMisses();
+
+    // prompts dropped to stay within the budget
+    long getEvictions();
+
+    // prompts in memory right now
+    int getPromptCount();
+
+    // rough bytes of heap the prompts in memory take
+    long getRetainedBytes();
+
+    // the most bytes the prompts may take before the least recently played are dropped
+    long getBudgetBytes();
+}
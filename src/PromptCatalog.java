@@ -0,0 +1,303 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * For use in the game DinoType (Version 2)
+ *  Index of all prompt names that supports picking a prompt in constant time.
+ *  Names are kept in an array list so a uniform pick is a single lookup, a
+ *  shuffle bag hands out every prompt once before repeating any of them, and
+ *  an alias table picks prompts in proportion to their weights. A second list
+ *  keeps the names in alphabetical order for the selection screen to page through.
+ *  All methods are synchronized since prompts are added by the loader and
+ *  watcher threads while the game picks them on the EDT.
+ * @author Jay Acosta
+ */
+public class PromptCatalog {
+
+    // ways to pick a random prompt
+    public enum Selection {
+        UNIFORM,
+        SHUFFLE,
+        WEIGHTED
+    }
+
+    // class constants
+    private static final double DEFAULT_WEIGHT = 1.0;
+
+    // every name is stored once in names, positions maps each name to its index
+    private final List<String> names = new ArrayList<>();
+    private final Map<String, Integer> positions = new HashMap<>();
+    private final Map<String, Double> weights = new HashMap<>();
+
+    // the first bagSize names of the bag have not been played this round,
+    // bagPositions maps each name to its index in the bag
+    private final List<String> bag = new ArrayList<>();
+    private final Map<String, Integer> bagPositions = new HashMap<>();
+    private int bagSize;
+    // names played this round and removed since, a file deleted and created
+    // again rejoins the round as played
+    private final Set<String> removedPlayed = new HashSet<>();
+    private String lastShuffled;
+
+    // alias table for weighted picks, rebuilt the first time it is needed after a change
+    private double[] aliasProbability;
+    private int[] alias;
+
+    // the same names in alphabetical order, kept up to date on every change.
+    // Files are loaded in name order, so a new name almost always goes at the end.
+    private final List<String> sortedNames = new ArrayList<>();
+
+    // told about every change, in the order the changes are made
+    private final List<CatalogListener> listeners = new ArrayList<>();
+
+    /**
+     * pre: name != null
+     * post: adds the name to the catalog if it is not already in it
+     */
+    public synchronized void add(String name) {
+
+        if (positions.containsKey(name)) {
+            return;
+        }
+
+        positions.put(name, names.size());
+        names.add(name);
+
+        // a new prompt joins the current round of the shuffle bag
+        bagPositions.put(name, bag.size());
+        bag.add(name);
+        if (!removedPlayed.remove(name)) {
+            swapInBag(bagSize, bag.size() - 1);
+            bagSize++;
+        }
+
+        int sortedIndex = -Collections.binarySearch(sortedNames, name) - 1;
+        sortedNames.add(sortedIndex, name);
+
+        aliasProbability = null;
+        for (CatalogListener listener : listeners) {
+            listener.nameAdded(name, sortedIndex);
+        }
+    }
+
+    // post: removes the name from the catalog if it is in it
+    public synchronized void remove(String name) {
+
+        Integer position = positions.remove(name);
+        if (position == null) {
+            return;
+        }
+
+        // move the last name into the hole so the list stays dense
+        String last = names.remove(names.size() - 1);
+        if (position < names.size()) {
+            names.set(position, last);
+            positions.put(last, position);
+        }
+
+        weights.remove(name);
+        removeFromBag(name);
+
+        int sortedIndex = Collections.binarySearch(sortedNames, name);
+        sortedNames.remove(sortedIndex);
+
+        aliasProbability = null;
+        for (CatalogListener listener : listeners) {
+            listener.nameRemoved(name, sortedIndex);
+        }
+    }
+
+    /**
+     * pre: listener != null, listener must not call back into the catalog
+     * post: the listener is told about every name added or removed from now on,
+     *  while the catalog is still locked
+     */
+    public synchronized void addListener(CatalogListener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * pre: name is in the catalog, weight > 0
+     * post: weighted picks choose the name in proportion to weight
+     */
+    public synchronized void setWeight(String name, double weight) {
+
+        // check preconditions
+        if (!positions.containsKey(name)) {
+            throw new IllegalArgumentException(name + " is not in the catalog");
+        } else if (weight <= 0) {
+            throw new IllegalArgumentException("weight must be positive");
+        }
+
+        weights.put(name, weight);
+        aliasProbability = null;
+    }
+
+    public synchronized boolean contains(String name) {
+        return positions.containsKey(name);
+    }
+
+    public synchronized int size() {
+        return names.size();
+    }
+
+    // returns a random name picked in the given way, or null if the catalog is empty
+    public synchronized String pick(Selection selection, Random random) {
+
+        if (names.isEmpty()) {
+            return null;
+        }
+
+        switch (selection) {
+            case SHUFFLE:
+                return nextShuffled(random);
+            case WEIGHTED:
+                return nextWeighted(random);
+            default:
+                return names.get(random.nextInt(names.size()));
+        }
+    }
+
+    // returns a copy of all names in alphabetical order
+    public synchronized List<String> getSortedNames() {
+        return List.copyOf(sortedNames);
+    }
+
+    // returns up to count names in alphabetical order starting at position from
+    public synchronized List<String> getSortedNames(int from, int count) {
+
+        int start = Math.max(0, Math.min(from, sortedNames.size()));
+        int end = Math.min(sortedNames.size(), start + Math.max(0, count));
+
+        return List.copyOf(sortedNames.subList(start, end));
+    }
+
+    // returns the name at the given position in alphabetical order, or null if there is none
+    public synchronized String getSortedName(int index) {
+        return index >= 0 && index < sortedNames.size() ? sortedNames.get(index) : null;
+    }
+
+    // returns the position of the name in alphabetical order, or -1 if it is not in the catalog
+    public synchronized int getSortedIndex(String name) {
+        return positions.containsKey(name) ? Collections.binarySearch(sortedNames, name) : -1;
+    }
+
+    private String nextShuffled(Random random) {
+
+        // every name has been played this round, start the next one
+        if (bagSize == 0) {
+            bagSize = bag.size();
+            removedPlayed.clear();
+        }
+
+        // draw from the unplayed part of the bag and move the name behind it
+        int index = random.nextInt(bagSize);
+
+        // don't let a new round start with the prompt that ended the last one
+        if (bagSize == bag.size() && bagSize > 1 && bag.get(index).equals(lastShuffled)) {
+            index = (index + 1) % bagSize;
+        }
+
+        swapInBag(index, bagSize - 1);
+        bagSize--;
+
+        lastShuffled = bag.get(bagSize);
+        return lastShuffled;
+    }
+
+    // post: takes the name out of the bag, keeping the unplayed names before the played ones
+    private void removeFromBag(String name) {
+
+        int index = bagPositions.get(name);
+
+        // first move it to the end of its part of the bag, then to the end of the bag
+        if (index < bagSize) {
+            swapInBag(index, bagSize - 1);
+            index = bagSize - 1;
+            bagSize--;
+        } else {
+            removedPlayed.add(name);
+        }
+        swapInBag(index, bag.size() - 1);
+
+        bag.remove(bag.size() - 1);
+        bagPositions.remove(name);
+    }
+
+    private void swapInBag(int first, int second) {
+        Collections.swap(bag, first, second);
+        bagPositions.put(bag.get(first), first);
+        bagPositions.put(bag.get(second), second);
+    }
+
+    private String nextWeighted(Random random) {
+
+        if (aliasProbability == null) {
+            buildAliasTable();
+        }
+
+        // pick a column uniformly, then either keep it or take its alias
+        int column = random.nextInt(names.size());
+        return names.get(random.nextDouble() < aliasProbability[column] ? column : alias[column]);
+    }
+
+    // builds Vose's alias table over the current names and weights in O(n)
+    private void buildAliasTable() {
+
+        int count = names.size();
+        double[] scaled = new double[count];
+        double total = 0;
+
+        for (int i = 0; i < count; i++) {
+            scaled[i] = weights.getOrDefault(names.get(i), DEFAULT_WEIGHT);
+            total += scaled[i];
+        }
+
+        aliasProbability = new double[count];
+        alias = new int[count];
+
+        int[] small = new int[count];
+        int[] large = new int[count];
+        int smallCount = 0;
+        int largeCount = 0;
+
+        for (int i = 0; i < count; i++) {
+            scaled[i] = scaled[i] * count / total;
+            if (scaled[i] < 1.0) {
+                small[smallCount++] = i;
+            } else {
+                large[largeCount++] = i;
+            }
+        }
+
+        while (smallCount > 0 && largeCount > 0) {
+
+            int less = small[--smallCount];
+            int more = large[--largeCount];
+
+            aliasProbability[less] = scaled[less];
+            alias[less] = more;
+
+            scaled[more] = scaled[more] + scaled[less] - 1.0;
+            if (scaled[more] < 1.0) {
+                small[smallCount++] = more;
+            } else {
+                large[largeCount++] = more;
+            }
+        }
+
+        // whatever is left is full up to rounding error
+        while (largeCount > 0) {
+            aliasProbability[large[--largeCount]] = 1.0;
+        }
+        while (smallCount > 0) {
+            aliasProbability[small[--smallCount]] = 1.0;
+        }
+    }
+}
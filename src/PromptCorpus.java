@@ -0,0 +1,366 @@
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * For use in the game DinoType (Version 2)
+ *  One dictionary of the distinct lines of every prompt. Song lyrics repeat
+ *  themselves, so each line is kept once, as UTF-8 bytes in one shared array,
+ *  and a prompt is only the ids of its lines (see CorpusPrompt). A chorus sung
+ *  ten times costs ten ints, not ten Strings.
+ *
+ *  Lines are added by the loader threads under a lock and read by any thread
+ *  without one. Every line counts the prompts holding it, and a prompt gives
+ *  its lines back once nothing uses it any more, so a prompt dropped from
+ *  memory or edited on disk frees the lines no other prompt shares. The
+ *  lowest free id is always handed out next, so the lines in use gather at
+ *  the bottom, and once most of the text is freed it is compacted and the
+ *  free ids above the last line in use are dropped.
+ * @author Jay Acosta
+ */
+public class PromptCorpus {
+
+    // class constants
+    private static final int INITIAL_LINES = 256;
+    private static final int INITIAL_BYTES = 16 * 1024;
+    // rough sizes of an object and an array header, for getRetainedBytes
+    static final int OBJECT_BYTES = 48;
+    static final int ARRAY_BYTES = 16;
+    // the ints a distinct line costs besides its text: start, end, hash, count and two slots
+    static final int LINE_BYTES = 4 * 6;
+
+    // what readers see, replaced as a whole when the text grows or is compacted
+    private volatile Storage storage = new Storage(new byte[INITIAL_BYTES], new int[INITIAL_LINES],
+            new int[INITIAL_LINES]);
+
+    // owned by the writers, under the lock
+    private int[] hashes = new int[INITIAL_LINES];
+    // how many times the prompts alive hold each line, 0 for a free id
+    private int[] references = new int[INITIAL_LINES];
+    // open addressing table of line id + 1 for every line in use, 0 for an empty slot
+    private int[] slots = new int[INITIAL_LINES * 2];
+    // the free ids below idCount, none of them below lowestFree
+    private BitSet freeIds = new BitSet();
+    private int freeCount;
+    private int lowestFree;
+    // ids handed out so far, free or not
+    private int idCount;
+    private int textLength;
+    // bytes of text that belong to freed lines until the next compaction
+    private int freedBytes;
+
+    // every line added, repeated or not, to show how much was shared
+    private long linesInterned;
+
+    /**
+     * pre: bytes != null, from <= to within bytes
+     * post: returns the id of the line with the UTF-8 bytes [from, to) of
+     *  bytes, adding it if no prompt has it, and counts one more use of it
+     *  that release gives back
+     */
+    public synchronized int intern(ByteBuffer bytes, int from, int to) {
+
+        // check preconditions
+        if (from < 0 || from > to || to > bytes.limit()) {
+            throw new IllegalArgumentException("line [" + from + ", " + to + ") is outside the buffer");
+        }
+
+        linesInterned++;
+
+        int hash = hash(bytes, from, to);
+        int mask = slots.length - 1;
+
+        for (int slot = hash & mask; slots[slot] != 0; slot = (slot + 1) & mask) {
+            int id = slots[slot] - 1;
+            if (hashes[id] == hash && sameLine(id, bytes, from, to)) {
+                references[id]++;
+                return id;
+            }
+        }
+
+        return add(bytes, from, to, hash);
+    }
+
+    /**
+     * pre: line is the UTF-8 text of one line
+     * post: returns the id of the line, adding it if no prompt has it
+     */
+    public int intern(String line) {
+        byte[] bytes = line.getBytes(StandardCharsets.UTF_8);
+        return intern(ByteBuffer.wrap(bytes), 0, bytes.length);
+    }
+
+    /**
+     * pre: every id was returned by intern once for each time it is listed,
+     *  and is not read again by whoever interned it
+     * post: gives back one use of each line, freeing the lines nothing holds
+     */
+    public synchronized void release(int[] ids) {
+
+        for (int id : ids) {
+            if (id >= 0 && id < idCount && references[id] > 0 && --references[id] == 0) {
+                free(id);
+            }
+        }
+
+        // give the space back once most of the text is freed lines, which leaves
+        // at least as much to free again before the next time
+        if (freedBytes > INITIAL_BYTES && freedBytes * 2 > textLength) {
+            compact(0);
+        }
+    }
+
+    /**
+     * pre: id was returned by intern and not released
+     * post: returns the text of the line
+     */
+    public String getLine(int id) {
+
+        Storage current = storage;
+
+        // check preconditions
+        if (id < 0 || id >= current.starts.length) {
+            throw new IndexOutOfBoundsException("line id " + id + " is not in the corpus");
+        }
+
+        int start = current.starts[id];
+        return new String(current.text, start, current.ends[id] - start, StandardCharsets.UTF_8);
+    }
+
+    // pre: id was returned by intern and not released
+    // post: returns the number of UTF-8 bytes of the line
+    int getLineBytes(int id) {
+        Storage current = storage;
+        return current.ends[id] - current.starts[id];
+    }
+
+    // returns the number of distinct lines in use
+    public synchronized int getLineCount() {
+        return idCount - freeCount;
+    }
+
+    // returns the number of lines interned, counting every repeat
+    public synchronized long getLinesInterned() {
+        return linesInterned;
+    }
+
+    // returns the bytes of text held for the distinct lines in use
+    public synchronized int getTextBytes() {
+        return textLength - freedBytes;
+    }
+
+    // returns roughly how many bytes of heap the corpus takes, spare room included
+    public synchronized long getRetainedBytes() {
+        Storage current = storage;
+        return 3 * OBJECT_BYTES + 7 * ARRAY_BYTES + current.text.length
+                + 4L * (current.starts.length + current.ends.length + hashes.length + references.length
+                + slots.length) + freeIds.size() / 8;
+    }
+
+    private int add(ByteBuffer bytes, int from, int to, int hash) {
+
+        int length = to - from;
+
+        if (textLength + length > storage.text.length) {
+            // the freed lines are left behind whenever the text has to be copied anyway
+            int live = textLength - freedBytes;
+            compact(Math.max(live + live / 2, live + length));
+        }
+
+        int id;
+        if (freeCount > 0) {
+            id = freeIds.nextSetBit(lowestFree);
+            freeIds.clear(id);
+            freeCount--;
+            lowestFree = id + 1;
+        } else {
+            if (idCount == hashes.length) {
+                growIds(hashes.length + hashes.length / 2 + 1);
+            }
+            id = idCount++;
+        }
+
+        // the bytes and their bounds go in before the id is handed to anyone
+        Storage current = storage;
+        bytes.get(from, current.text, textLength, length);
+        current.starts[id] = textLength;
+        current.ends[id] = textLength + length;
+        textLength += length;
+
+        hashes[id] = hash;
+        references[id] = 1;
+
+        // keep the table at most half full
+        if (getLineCount() * 2 > slots.length) {
+            rehash(slots.length * 2);
+        } else {
+            place(id);
+        }
+
+        return id;
+    }
+
+    // post: every id up to capacity has room, readers see the new bounds with the old text
+    private void growIds(int capacity) {
+        hashes = Arrays.copyOf(hashes, capacity);
+        references = Arrays.copyOf(references, capacity);
+        Storage current = storage;
+        storage = new Storage(current.text, Arrays.copyOf(current.starts, capacity),
+                Arrays.copyOf(current.ends, capacity));
+    }
+
+    /**
+     * pre: the line has no uses left
+     * post: the line can no longer be found, its id is free and its text is
+     *  left for the next compaction
+     */
+    private void free(int id) {
+
+        unplace(id);
+        freedBytes += getLineBytes(id);
+
+        freeIds.set(id);
+        freeCount++;
+        lowestFree = Math.min(lowestFree, id);
+    }
+
+    /**
+     * pre: capacity >= the bytes of the lines in use
+     * post: the lines in use are copied into new text of the given size, or of
+     *  half again their size if that is more. Free ids past the last line in
+     *  use are dropped and the tables shrink to fit; every other id stays
+     *  where its prompts expect it. Readers keep reading the old copy until
+     *  they next look, and it is never written again.
+     */
+    private void compact(int capacity) {
+
+        Storage old = storage;
+        int live = textLength - freedBytes;
+        byte[] text = new byte[Math.max(INITIAL_BYTES, Math.max(capacity, live + live / 2))];
+
+        while (idCount > 0 && references[idCount - 1] == 0) {
+            idCount--;
+        }
+        int idCapacity = Math.min(hashes.length, Math.max(INITIAL_LINES, idCount + idCount / 2));
+        int[] starts = new int[idCapacity];
+        int[] ends = new int[idCapacity];
+
+        int length = 0;
+        for (int id = 0; id < idCount; id++) {
+            if (references[id] > 0) {
+                int lineBytes = old.ends[id] - old.starts[id];
+                System.arraycopy(old.text, old.starts[id], text, length, lineBytes);
+                starts[id] = length;
+                length += lineBytes;
+                ends[id] = length;
+            }
+        }
+
+        textLength = length;
+        freedBytes = 0;
+        hashes = Arrays.copyOf(hashes, idCapacity);
+        references = Arrays.copyOf(references, idCapacity);
+        freeIds = freeIds.get(0, idCount);
+        freeCount = freeIds.cardinality();
+        lowestFree = Math.min(lowestFree, idCount);
+        storage = new Storage(text, starts, ends);
+
+        // a table a quarter full, so it takes a while to need growing again
+        int slotCount = INITIAL_LINES * 2;
+        while (slotCount < getLineCount() * 4) {
+            slotCount *= 2;
+        }
+        if (slotCount < slots.length) {
+            rehash(slotCount);
+        }
+    }
+
+    private void rehash(int size) {
+        slots = new int[size];
+        for (int id = 0; id < idCount; id++) {
+            if (references[id] > 0) {
+                place(id);
+            }
+        }
+    }
+
+    private void place(int id) {
+
+        int mask = slots.length - 1;
+        int slot = hashes[id] & mask;
+
+        while (slots[slot] != 0) {
+            slot = (slot + 1) & mask;
+        }
+
+        slots[slot] = id + 1;
+    }
+
+    // post: the line is out of the table, and every line after it in its run can still be found
+    private void unplace(int id) {
+
+        int mask = slots.length - 1;
+        int hole = hashes[id] & mask;
+
+        while (slots[hole] != id + 1) {
+            hole = (hole + 1) & mask;
+        }
+
+        // move back each later line of the run that would be cut off from its slot by the hole
+        for (int slot = (hole + 1) & mask; slots[slot] != 0; slot = (slot + 1) & mask) {
+            int home = hashes[slots[slot] - 1] & mask;
+            if (((slot - home) & mask) >= ((slot - hole) & mask)) {
+                slots[hole] = slots[slot];
+                hole = slot;
+            }
+        }
+
+        slots[hole] = 0;
+    }
+
+    private boolean sameLine(int id, ByteBuffer bytes, int from, int to) {
+
+        Storage current = storage;
+        int start = current.starts[id];
+        if (current.ends[id] - start != to - from) {
+            return false;
+        }
+
+        for (int i = from; i < to; i++) {
+            if (current.text[start + i - from] != bytes.get(i)) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private static int hash(ByteBuffer bytes, int from, int to) {
+
+        int hash = 1;
+        for (int i = from; i < to; i++) {
+            hash = 31 * hash + bytes.get(i);
+        }
+
+        // spread the bits, the low ones pick the slot
+        return hash ^ (hash >>> 16);
+    }
+
+    /**
+     * The Storage class is the text of the lines and where each line starts
+     *  and ends in it. Line i is the bytes [starts[i], ends[i]) of text.
+     */
+    private static class Storage {
+
+        private final byte[] text;
+        private final int[] starts;
+        private final int[] ends;
+
+        private Storage(byte[] text, int[] starts, int[] ends) {
+            this.text = text;
+            this.starts = starts;
+            this.ends = ends;
+        }
+    }
+}
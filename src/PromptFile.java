@@ -0,0 +1,284 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+
+/**
+ * For use in the game DinoType (Version 2)
+ *  A text prompt on disk split into lines, one segment per line. Lines are
+ *  broken into pieces that fit the screen by PromptLayout, not here, since
+ *  that depends on the font they are drawn in.
+ *  Only the byte offsets of each segment are kept in memory; the text of a
+ *  segment is read and decoded from the file when it is asked for, so a
+ *  book-length prompt costs a few bytes per segment instead of a String each,
+ *  and any number of games can share the same immutable table. The game
+ *  itself plays the lines interned into a PromptCorpus, see intern.
+ * @author Jay Acosta
+ */
+public class PromptFile implements PromptSequence {
+
+    private final Path path;
+
+    // fingerprint of the file contents the segment table was built from
+    private final long fileSize;
+    private final long lastModified;
+    private final long checksum;
+
+    // segment i is the UTF-8 bytes [segmentStarts[i], segmentEnds[i]) of the file
+    private final int[] segmentStarts;
+    private final int[] segmentEnds;
+
+    PromptFile(Path path, long fileSize, long lastModified, long checksum,
+               int[] segmentStarts, int[] segmentEnds) {
+        this.path = path;
+        this.fileSize = fileSize;
+        this.lastModified = lastModified;
+        this.checksum = checksum;
+        this.segmentStarts = segmentStarts;
+        this.segmentEnds = segmentEnds;
+    }
+
+    /**
+     * pre: path != null, the file is smaller than 2 GB
+     * post: scans the file once and returns its segment table of lines
+     */
+    public static PromptFile parse(Path path) throws IOException {
+
+        long lastModified = Files.getLastModifiedTime(path).toMillis();
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+
+            long size = channel.size();
+
+            // check preconditions
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException(path + " is too large to be used as a prompt");
+            }
+
+            MappedByteBuffer bytes = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            SegmentTable table = new SegmentTable();
+
+            int lineStart = 0;
+            int position = 0;
+            int limit = (int) size;
+
+            while (position < limit) {
+
+                byte current = bytes.get(position);
+
+                if (current == '\n' || current == '\r') {
+
+                    table.add(lineStart, position);
+
+                    // treat "\r\n" as a single line break
+                    if (current == '\r' && position + 1 < limit && bytes.get(position + 1) == '\n') {
+                        position++;
+                    }
+
+                    position++;
+                    lineStart = position;
+                } else {
+                    position++;
+                }
+            }
+
+            // the last line may not end with a line break
+            if (lineStart < limit) {
+                table.add(lineStart, limit);
+            }
+
+            bytes.rewind();
+            CRC32 checksum = new CRC32();
+            checksum.update(bytes);
+
+            return table.toPromptFile(path, size, lastModified, checksum.getValue());
+        }
+    }
+
+    /**
+     * pre: path != null
+     * post: returns the CRC32 of the file's contents
+     */
+    public static long checksum(Path path) throws IOException {
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+
+            CRC32 checksum = new CRC32();
+            checksum.update(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+            return checksum.getValue();
+        }
+    }
+
+    /**
+     * pre: corpus != null
+     * post: reads the file once and returns its lines as ids in the corpus,
+     *  adding the lines the corpus does not have yet. The prompt holds its
+     *  lines in the corpus until it is no longer used.
+     */
+    public CorpusPrompt intern(PromptCorpus corpus) throws IOException {
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+
+            // the segment table only fits the contents it was built from
+            if (channel.size() != fileSize) {
+                throw new IOException(path.getFileName() + " changed while it was being loaded");
+            }
+
+            MappedByteBuffer bytes = channel.map(FileChannel.MapMode.READ_ONLY, 0, fileSize);
+            int[] lineIds = new int[segmentStarts.length];
+            int interned = 0;
+
+            try {
+                for (; interned < lineIds.length; interned++) {
+                    lineIds[interned] = corpus.intern(bytes, segmentStarts[interned], segmentEnds[interned]);
+                }
+            } finally {
+                // a file cut short under the mapping must not keep the lines read before it failed
+                if (interned < lineIds.length) {
+                    corpus.release(Arrays.copyOf(lineIds, interned));
+                }
+            }
+
+            return new CorpusPrompt(corpus, lineIds);
+        }
+    }
+
+    /**
+     * pre: none
+     * post: reads the file once and returns its lines as Strings, for a single
+     *  pass over the text that does not keep it
+     */
+    public PromptSequence read() throws IOException {
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+
+            // the segment table only fits the contents it was built from
+            if (channel.size() != fileSize) {
+                throw new IOException(path.getFileName() + " changed while it was being read");
+            }
+
+            MappedByteBuffer bytes = channel.map(FileChannel.MapMode.READ_ONLY, 0, fileSize);
+            String[] lines = new String[segmentStarts.length];
+
+            for (int i = 0; i < lines.length; i++) {
+                lines[i] = decode(bytes.slice(segmentStarts[i], segmentEnds[i] - segmentStarts[i]));
+            }
+
+            return PromptSequence.of(lines);
+        }
+    }
+
+    // returns a copy of this prompt stamped with a new modification time
+    PromptFile withLastModified(long lastModified) {
+        return new PromptFile(path, fileSize, lastModified, checksum, segmentStarts, segmentEnds);
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    public long getFileSize() {
+        return fileSize;
+    }
+
+    public long getLastModified() {
+        return lastModified;
+    }
+
+    public long getChecksum() {
+        return checksum;
+    }
+
+    // the raw segment table, for use by PromptIndex only
+    int[] getSegmentStarts() {
+        return segmentStarts;
+    }
+
+    int[] getSegmentEnds() {
+        return segmentEnds;
+    }
+
+    // returns the number of segments in the prompt
+    public int size() {
+        return segmentStarts.length;
+    }
+
+    /**
+     * pre: 0 <= index < size()
+     * post: reads the given segment from disk and returns it
+     */
+    public String getSegment(int index) {
+
+        // check preconditions
+        if (index < 0 || index >= segmentStarts.length) {
+            throw new IndexOutOfBoundsException("segment index " + index + " is out of bounds");
+        }
+
+        ByteBuffer bytes = ByteBuffer.allocate(segmentEnds[index] - segmentStarts[index]);
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+
+            long position = segmentStarts[index];
+            while (bytes.hasRemaining() && channel.read(bytes, position + bytes.position()) >= 0) {
+                // keep reading until the whole segment is in the buffer
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            System.out.println(" error while trying to read " + path.getFileName());
+            return "";
+        }
+
+        bytes.flip();
+        return decode(bytes);
+    }
+
+    private static String decode(ByteBuffer bytes) {
+
+        CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+
+        try {
+            CharBuffer chars = decoder.decode(bytes);
+            return chars.toString();
+        } catch (CharacterCodingException e) {
+            // cannot happen while errors are replaced
+            throw new IllegalStateException(e);
+        }
+    }
+
+    // growable segment table filled in while scanning a file
+    private static class SegmentTable {
+
+        private int[] starts = new int[64];
+        private int[] ends = new int[64];
+        private int count;
+
+        private void add(int start, int end) {
+
+            if (count == starts.length) {
+                starts = Arrays.copyOf(starts, count * 2);
+                ends = Arrays.copyOf(ends, count * 2);
+            }
+
+            starts[count] = start;
+            ends[count] = end;
+            count++;
+        }
+
+        private PromptFile toPromptFile(Path path, long fileSize, long lastModified, long checksum) {
+            return new PromptFile(path, fileSize, lastModified, checksum, Arrays.copyOf(starts, count),
+                    Arrays.copyOf(ends, count));
+        }
+    }
+}
@@ -0,0 +1,212 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * For use in the game DinoType (Version 2)
+ *  Binary cache of the segment tables of every prompt file, stored next to
+ *  the prompts directory. A prompt whose size and modification time (or,
+ *  failing that, checksum) still match its entry is loaded from the cache
+ *  instead of being scanned again.
+ * @author Jay Acosta
+ */
+public class PromptIndex {
+
+    // class constants
+    private static final int MAGIC = 0x44494E4F; // "DINO"
+    private static final int VERSION = 2;
+    // the fewest bytes an entry can take: an empty name, the three longs and the segment count
+    private static final int MIN_ENTRY_BYTES = 2 + 8 + 8 + 8 + 4;
+    private static final int SEGMENT_BYTES = 4 + 4;
+
+    private final Path indexPath;
+    // entries are looked up and replaced concurrently by the loader threads
+    private final Map<String, PromptFile> entries;
+    private volatile boolean changed;
+
+    private PromptIndex(Path indexPath, Map<String, PromptFile> entries) {
+        this.indexPath = indexPath;
+        this.entries = entries;
+    }
+
+    /**
+     * pre: indexPath != null
+     * post: returns the index stored at indexPath, or an empty index if there is
+     *  none or it cannot be read. Counts and segments that no real prompt file
+     *  could have, as in a corrupt or foreign index, count as unreadable.
+     */
+    public static PromptIndex load(Path indexPath, Path promptsDirectory) {
+
+        Map<String, PromptFile> entries = new ConcurrentHashMap<>();
+
+        try (DataInputStream input = new DataInputStream(
+                new BufferedInputStream(Files.newInputStream(indexPath)))) {
+
+            if (input.readInt() != MAGIC || input.readInt() != VERSION) {
+                System.out.println("Prompt index is out of date, rebuilding...");
+                return new PromptIndex(indexPath, entries);
+            }
+
+            // nothing in the file can be longer than the file
+            long indexSize = Files.size(indexPath);
+
+            int count = input.readInt();
+            if (count < 0 || count > indexSize / MIN_ENTRY_BYTES) {
+                throw new IOException("bad prompt count " + count);
+            }
+
+            for (int i = 0; i < count; i++) {
+
+                String name = input.readUTF();
+                long fileSize = input.readLong();
+                long lastModified = input.readLong();
+                long checksum = input.readLong();
+
+                if (name.isEmpty() || name.indexOf('/') >= 0 || name.indexOf('\\') >= 0
+                        || fileSize < 0 || fileSize > Integer.MAX_VALUE) {
+                    throw new IOException("bad entry for " + name);
+                }
+
+                int segments = input.readInt();
+                if (segments < 0 || segments > indexSize / SEGMENT_BYTES) {
+                    throw new IOException("bad segment count " + segments + " for " + name);
+                }
+
+                int[] starts = new int[segments];
+                int[] ends = new int[segments];
+
+                for (int j = 0; j < segments; j++) {
+                    starts[j] = input.readInt();
+                    ends[j] = input.readInt();
+
+                    // a segment is a range of the file's bytes
+                    if (starts[j] < 0 || starts[j] > ends[j] || ends[j] > fileSize) {
+                        throw new IOException("segment " + j + " of " + name + " is outside the file");
+                    }
+                }
+
+                entries.put(name, new PromptFile(promptsDirectory.resolve(name), fileSize, lastModified,
+                        checksum, starts, ends));
+            }
+        } catch (NoSuchFileException e) {
+            // first launch, nothing cached yet
+        } catch (IOException | RuntimeException e) {
+            // whatever is wrong with the index, the prompts themselves can always be scanned again
+            System.out.println("Error while reading " + indexPath.getFileName() + ", rebuilding...");
+            entries.clear();
+        }
+
+        return new PromptIndex(indexPath, entries);
+    }
+
+    /**
+     * pre: file != null
+     * post: returns the prompt for the file, reusing the cached segment table
+     *  when the file has not changed since it was indexed
+     */
+    public PromptFile getOrParse(File file) throws IOException {
+
+        String name = file.getName();
+        PromptFile cached = entries.get(name);
+
+        if (cached != null && cached.getFileSize() == file.length()) {
+
+            if (cached.getLastModified() == file.lastModified()) {
+                return cached;
+            }
+
+            // the file was touched, only rescan it if its contents are different
+            if (cached.getChecksum() == PromptFile.checksum(file.toPath())) {
+                PromptFile restamped = cached.withLastModified(file.lastModified());
+                entries.put(name, restamped);
+                changed = true;
+                return restamped;
+            }
+        }
+
+        PromptFile parsed = PromptFile.parse(file.toPath());
+        entries.put(name, parsed);
+        changed = true;
+
+        return parsed;
+    }
+
+    // returns the segment table of the file as it was last indexed, or null if it has not been
+    public PromptFile get(String name) {
+        return entries.get(name);
+    }
+
+    // post: drops the entry of a deleted file
+    public void remove(String name) {
+        if (entries.remove(name) != null) {
+            changed = true;
+        }
+    }
+
+    // post: drops the entries of all files not in the given set of names
+    public void retainAll(Set<String> names) {
+        if (entries.keySet().retainAll(names)) {
+            changed = true;
+        }
+    }
+
+    /**
+     * pre: none
+     * post: writes the index back to disk if any entry changed. The file is
+     *  replaced atomically so a crash never leaves a half written index.
+     */
+    public synchronized void save() {
+
+        if (!changed) {
+            return;
+        }
+
+        Path temp = indexPath.resolveSibling(indexPath.getFileName() + ".tmp");
+
+        try (DataOutputStream output = new DataOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(temp)))) {
+
+            output.writeInt(MAGIC);
+            output.writeInt(VERSION);
+            output.writeInt(entries.size());
+
+            for (Map.Entry<String, PromptFile> entry : entries.entrySet()) {
+
+                PromptFile prompt = entry.getValue();
+                output.writeUTF(entry.getKey());
+                output.writeLong(prompt.getFileSize());
+                output.writeLong(prompt.getLastModified());
+                output.writeLong(prompt.getChecksum());
+
+                int[] starts = prompt.getSegmentStarts();
+                int[] ends = prompt.getSegmentEnds();
+
+                output.writeInt(starts.length);
+                for (int j = 0; j < starts.length; j++) {
+                    output.writeInt(starts[j]);
+                    output.writeInt(ends[j]);
+                }
+            }
+        } catch (IOException e) {
+            System.out.println("Error while writing " + indexPath.getFileName());
+            return;
+        }
+
+        try {
+            Files.move(temp, indexPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            changed = false;
+        } catch (IOException e) {
+            System.out.println("Error while writing " + indexPath.getFileName());
+        }
+    }
+}
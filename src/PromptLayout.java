@@ -0,0 +1,215 @@
+import java.awt.Font;
+import java.awt.font.FontRenderContext;
+import java.text.BreakIterator;
+import java.util.Arrays;
+
+/**
+ * For use in the game DinoType (Version 2)
+ *  The lines of a prompt broken into segments that fit a width when drawn in
+ *  a font. Lines are broken between words, by the line break rules of a
+ *  BreakIterator, and only a word wider than the whole width is cut. Blank
+ *  lines are left out, there is nothing in them to type.
+ *
+ *  The layout is worked out once and only the offsets of each segment are
+ *  kept, so the game never measures text while it plays.
+ * @author Jay Acosta
+ */
+public final class PromptLayout implements PromptSequence {
+
+    private final PromptSequence source;
+    private final Font font;
+    private final FontRenderContext context;
+    private final float width;
+
+    // segment i is the characters [starts[i], ends[i]) of line lines[i] of the source
+    private final int[] lines;
+    private final int[] starts;
+    private final int[] ends;
+
+    // the line the last segment was cut from, the segments of a line are typed one after another
+    private volatile CachedLine lastLine;
+
+    private PromptLayout(PromptSequence source, Font font, FontRenderContext context, float width,
+                         int[] lines, int[] starts, int[] ends) {
+        this.source = source;
+        this.font = font;
+        this.context = context;
+        this.width = width;
+        this.lines = lines;
+        this.starts = starts;
+        this.ends = ends;
+    }
+
+    /**
+     * pre: source != null, font != null, context != null, width > 0
+     * post: breaks every line of the source into segments no wider than width
+     */
+    public static PromptLayout of(PromptSequence source, Font font, FontRenderContext context, float width) {
+
+        // check preconditions
+        if (source == null || font == null || context == null) {
+            throw new IllegalArgumentException("a layout needs a prompt, a font and a render context");
+        }
+        if (width <= 0) {
+            throw new IllegalArgumentException("a layout needs some width to fill");
+        }
+
+        Builder builder = new Builder();
+
+        for (int line = 0; line < source.size(); line++) {
+            builder.addLine(line, source.getSegment(line), font, context, width);
+        }
+
+        return builder.toLayout(source, font, context, width);
+    }
+
+    public PromptSequence getSource() {
+        return source;
+    }
+
+    public Font getFont() {
+        return font;
+    }
+
+    public FontRenderContext getContext() {
+        return context;
+    }
+
+    public float getWidth() {
+        return width;
+    }
+
+    // returns the number of segments in the prompt
+    public int size() {
+        return lines.length;
+    }
+
+    /**
+     * pre: 0 <= index < size()
+     * post: returns the given segment, reading its line from the source only
+     *  if it is not the line of the last segment
+     */
+    public String getSegment(int index) {
+
+        // check preconditions
+        if (index < 0 || index >= lines.length) {
+            throw new IndexOutOfBoundsException("segment index " + index + " is out of bounds");
+        }
+
+        CachedLine cached = lastLine;
+        if (cached == null || cached.index != lines[index]) {
+            cached = new CachedLine(lines[index], source.getSegment(lines[index]));
+            lastLine = cached;
+        }
+
+        return cached.text.substring(starts[index], ends[index]);
+    }
+
+    // the text of one line of the source
+    private static class CachedLine {
+
+        private final int index;
+        private final String text;
+
+        private CachedLine(int index, String text) {
+            this.index = index;
+            this.text = text;
+        }
+    }
+
+    // growable segment table filled in while laying out a prompt
+    private static class Builder {
+
+        private int[] lines = new int[64];
+        private int[] starts = new int[64];
+        private int[] ends = new int[64];
+        private int count;
+
+        private final BreakIterator breaks = BreakIterator.getLineInstance();
+
+        /**
+         * pre: none
+         * post: breaks the line into segments no wider than width. Widths come from
+         *  the same glyph vector CachedText draws, and breaks from the same line
+         *  break rules LineBreakMeasurer follows, without laying out a TextLayout
+         *  for every line.
+         */
+        private void addLine(int line, String text, Font font, FontRenderContext context, float width) {
+
+            int length = trailingEnd(text, text.length());
+
+            if (length == 0) {
+                return;
+            }
+
+            // x of the left edge of every character, and of the end of the line last
+            String visible = text.substring(0, length);
+            float[] positions = font.createGlyphVector(context, visible).getGlyphPositions(0, length + 1, null);
+
+            if (positions[2 * length] <= width) {
+                add(line, 0, length);
+                return;
+            }
+
+            breaks.setText(visible);
+            int start = 0;
+
+            while (start < length) {
+
+                // the last break after start that leaves the segment, less its spaces, narrow enough
+                int end = start;
+                for (int next = breaks.following(start); next != BreakIterator.DONE; next = breaks.next()) {
+                    if (positions[2 * trailingEnd(visible, next)] - positions[2 * start] > width) {
+                        break;
+                    }
+                    end = next;
+                }
+
+                if (end == start) {
+                    // a word wider than the line, cut it where it stops fitting
+                    end = start + 1;
+                    while (end < length && positions[2 * (end + 1)] - positions[2 * start] <= width) {
+                        end++;
+                    }
+                    // never between the two halves of a surrogate pair
+                    if (end < length && Character.isLowSurrogate(visible.charAt(end))) {
+                        end += end - 1 > start ? -1 : 1;
+                    }
+                }
+
+                int trimmed = trailingEnd(visible, end);
+                if (trimmed > start) {
+                    add(line, start, trimmed);
+                }
+                start = end;
+            }
+        }
+
+        private void add(int line, int start, int end) {
+
+            if (count == lines.length) {
+                lines = Arrays.copyOf(lines, count * 2);
+                starts = Arrays.copyOf(starts, count * 2);
+                ends = Arrays.copyOf(ends, count * 2);
+            }
+
+            lines[count] = line;
+            starts[count] = start;
+            ends[count] = end;
+            count++;
+        }
+
+        private PromptLayout toLayout(PromptSequence source, Font font, FontRenderContext context, float width) {
+            return new PromptLayout(source, font, context, width, Arrays.copyOf(lines, count),
+                    Arrays.copyOf(starts, count), Arrays.copyOf(ends, count));
+        }
+
+        // returns the end of the text before end with any whitespace at the end removed
+        private static int trailingEnd(String text, int end) {
+            while (end > 0 && Character.isWhitespace(text.charAt(end - 1))) {
+                end--;
+            }
+            return end;
+        }
+    }
+}
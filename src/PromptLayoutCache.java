@@ -0,0 +1,122 @@
+import java.awt.Font;
+import java.awt.font.FontRenderContext;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * For use in the game DinoType (Version 2)
+ *  The PromptLayout of every prompt in one font and width, each worked out
+ *  once. Prompts can be laid out ahead of time on a background thread, and a
+ *  prompt asked for before its turn comes is laid out by the thread asking.
+ *  Prompts are told apart by identity, so a file that is reloaded is laid out
+ *  again. Only the prompts last prefetched and the one last asked for are
+ *  kept, so a prompt dropped from memory does not live on here.
+ * @author Jay Acosta
+ */
+public class PromptLayoutCache {
+
+    private final Font font;
+    private final FontRenderContext context;
+    private final float width;
+
+    private final Map<PromptSequence, CompletableFuture<PromptLayout>> layouts = new ConcurrentHashMap<>();
+    // the prompts of the last prefetch, never changed once set
+    private volatile Set<PromptSequence> prefetched = Collections.emptySet();
+    private final ExecutorService background;
+
+    /**
+     * pre: font != null, context != null, width > 0
+     * post: creates an empty cache of layouts of the given width in the font
+     */
+    public PromptLayoutCache(Font font, FontRenderContext context, float width) {
+
+        // check preconditions
+        if (font == null || context == null) {
+            throw new IllegalArgumentException("layouts need a font and a render context");
+        }
+        if (width <= 0) {
+            throw new IllegalArgumentException("layouts need some width to fill");
+        }
+
+        this.font = font;
+        this.context = context;
+        this.width = width;
+
+        this.background = Executors.newSingleThreadExecutor(task -> {
+            Thread thread = new Thread(task, "prompt-layout");
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        });
+    }
+
+    /**
+     * pre: source != null
+     * post: returns the layout of the prompt, laying it out on this thread if
+     *  it has not been already, and forgets the layouts of every other prompt
+     *  not among the ones last prefetched
+     */
+    public PromptLayout get(PromptSequence source) {
+
+        CompletableFuture<PromptLayout> layout = layouts.computeIfAbsent(source, key -> new CompletableFuture<>());
+
+        Set<PromptSequence> kept = prefetched;
+        layouts.keySet().removeIf(key -> key != source && !kept.contains(key));
+
+        // rather than wait behind the other prompts queued in the background, lay it out here
+        complete(layout, source);
+
+        return layout.join();
+    }
+
+    /**
+     * pre: sources != null
+     * post: lays out every prompt that is not laid out yet on the background
+     *  thread, and forgets the layouts of every prompt not among sources
+     */
+    public void prefetch(Collection<? extends PromptSequence> sources) {
+
+        Set<PromptSequence> current = Collections.newSetFromMap(new IdentityHashMap<>());
+        current.addAll(sources);
+        prefetched = current;
+        layouts.keySet().removeIf(source -> !current.contains(source));
+
+        for (PromptSequence source : sources) {
+
+            CompletableFuture<PromptLayout> layout = new CompletableFuture<>();
+
+            if (layouts.putIfAbsent(source, layout) == null) {
+                background.execute(() -> complete(layout, source));
+            }
+        }
+    }
+
+    public Font getFont() {
+        return font;
+    }
+
+    public float getWidth() {
+        return width;
+    }
+
+    // post: lays out the source into layout, unless someone already has
+    private void complete(CompletableFuture<PromptLayout> layout, PromptSequence source) {
+
+        if (layout.isDone()) {
+            return;
+        }
+
+        try {
+            layout.complete(PromptLayout.of(source, font, context, width));
+        } catch (RuntimeException e) {
+            layout.completeExceptionally(e);
+        }
+    }
+}
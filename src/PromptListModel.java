@@ -0,0 +1,198 @@
+import javax.swing.AbstractListModel;
+import javax.swing.SwingUtilities;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * For use in the game DinoType (Version 2)
+ *  The prompts of a PromptCatalog in alphabetical order, as a list model that
+ *  copies nothing up front. A list with fixed cell sizes asks only for the rows
+ *  on screen; their names are read from the catalog as they are drawn, and the
+ *  text shown for them is worked out a page at a time and only the most
+ *  recently drawn pages are kept. Names added to or removed from the catalog
+ *  are passed on as single row events, so the list never has to be rebuilt.
+ *
+ *  The list learns of a change only when the EDT reaches its event, but the
+ *  catalog has already made it. Until then the changes are kept in order and
+ *  undone when a row is read, so every row matches the size the list was
+ *  told, and a removed name still shows in its row until its event arrives.
+ *  Used on the EDT only, apart from the catalog calling it when it changes.
+ * @author Jay Acosta
+ */
+public class PromptListModel extends AbstractListModel<String> implements CatalogListener {
+
+    // class constants
+    private static final int PAGE_SIZE = 64;
+    private static final int MAX_PAGES = 8;
+
+    private final PromptCatalog catalog;
+    private final Function<String, String> describer;
+
+    // the number of rows the list has been told about, which catches up with
+    // the catalog as its changes arrive on the EDT
+    private int size;
+
+    // changes the catalog made that the EDT has not reached yet, oldest first,
+    // guarded by the catalog's lock
+    private final Deque<Change> pending = new ArrayDeque<>();
+
+    // the text of each row, by page, least recently drawn first
+    private final Map<Integer, String[]> pages = new LinkedHashMap<>(MAX_PAGES, 0.75f, true) {
+        protected boolean removeEldestEntry(Map.Entry<Integer, String[]> eldest) {
+            return size() > MAX_PAGES;
+        }
+    };
+
+    /**
+     * pre: catalog != null, describer != null, called on the EDT
+     * post: creates a model of the names in the catalog, each shown as the
+     *  describer's text for it
+     */
+    public PromptListModel(PromptCatalog catalog, Function<String, String> describer) {
+
+        this.catalog = catalog;
+        this.describer = describer;
+
+        // no change can slip in between counting the names and listening for changes
+        synchronized (catalog) {
+            size = catalog.size();
+            catalog.addListener(this);
+        }
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    // returns the name in the given row as the list was last told, or null if there is no such row
+    public String getElementAt(int index) {
+        synchronized (catalog) {
+            return nameAt(index);
+        }
+    }
+
+    /**
+     * pre: the catalog is locked
+     * post: returns the name in the given row as of the changes the EDT has
+     *  reached, by following the row through the changes it has not
+     */
+    private String nameAt(int index) {
+
+        if (index < 0 || index >= size) {
+            return null;
+        }
+
+        for (Change change : pending) {
+            if (change.added) {
+                if (index >= change.sortedIndex) {
+                    index++;
+                }
+            } else if (index == change.sortedIndex) {
+                // the row is gone from the catalog but not yet from the list
+                return change.name;
+            } else if (index > change.sortedIndex) {
+                index--;
+            }
+        }
+
+        return catalog.getSortedName(index);
+    }
+
+    /**
+     * pre: called on the EDT
+     * post: returns the text shown in the given row, working out the text of
+     *  its whole page if that page is not kept
+     */
+    public String getDescription(int index) {
+
+        // check preconditions
+        if (index < 0 || index >= size) {
+            throw new IllegalArgumentException("no row " + index + " in a list of " + size);
+        }
+
+        int page = index / PAGE_SIZE;
+        String[] descriptions = pages.get(page);
+
+        if (descriptions == null) {
+
+            int from = page * PAGE_SIZE;
+            String[] names = new String[Math.min(PAGE_SIZE, size - from)];
+            synchronized (catalog) {
+                for (int i = 0; i < names.length; i++) {
+                    names[i] = nameAt(from + i);
+                }
+            }
+
+            // described outside the lock, the describer may read files
+            descriptions = new String[names.length];
+            for (int i = 0; i < descriptions.length; i++) {
+                descriptions[i] = describer.apply(names[i]);
+            }
+            pages.put(page, descriptions);
+        }
+
+        int offset = index % PAGE_SIZE;
+        return offset < descriptions.length ? descriptions[offset] : "";
+    }
+
+    /**
+     * pre: called on the EDT
+     * post: the rows on screen are drawn again with fresh text, used when
+     *  prompts change without being added or removed
+     */
+    public void refresh() {
+        pages.clear();
+        if (size > 0) {
+            fireContentsChanged(this, 0, size - 1);
+        }
+    }
+
+    // post: the list gets a new row once the EDT reaches it
+    public void nameAdded(String name, int sortedIndex) {
+        pending.add(new Change(name, sortedIndex, true));
+        SwingUtilities.invokeLater(() -> {
+            reached();
+            size++;
+            pages.clear();
+            fireIntervalAdded(this, sortedIndex, sortedIndex);
+        });
+    }
+
+    // post: the list loses the row once the EDT reaches it
+    public void nameRemoved(String name, int sortedIndex) {
+        pending.add(new Change(name, sortedIndex, false));
+        SwingUtilities.invokeLater(() -> {
+            reached();
+            size--;
+            pages.clear();
+            fireIntervalRemoved(this, sortedIndex, sortedIndex);
+        });
+    }
+
+    // post: the oldest pending change is one the list knows about
+    private void reached() {
+        synchronized (catalog) {
+            pending.remove();
+        }
+    }
+
+    /**
+     * The Change class is a name the catalog added or removed at a position,
+     *  kept until the EDT reaches it
+     */
+    private static class Change {
+
+        private final String name;
+        private final int sortedIndex;
+        private final boolean added;
+
+        private Change(String name, int sortedIndex, boolean added) {
+            this.name = name;
+            this.sortedIndex = sortedIndex;
+            this.added = added;
+        }
+    }
+}
@@ -0,0 +1,496 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * For use in the game DinoType (Version 2)
+ *  Type-ahead search over the prompts. Every prompt's title, made from its
+ *  file name, and its first line go into a prefix trie whose nodes list
+ *  every prompt with a word starting there, so a prefix is found by walking
+ *  its letters. The words of the lyrics go into a second trie that lists
+ *  prompts only where a word ends, with how often the prompt uses it.
+ *
+ *  Every word of a query has to match a prompt. Words are matched as
+ *  prefixes of title words, and as whole lyric words, except the word still
+ *  being typed, which also matches lyric words it starts once it is long
+ *  enough to narrow them down. Title matches rank far above lyric matches.
+ *
+ *  Prompts are added and removed one at a time as files are loaded, so the
+ *  index is always up to date and never rebuilt. A removed prompt's number
+ *  goes to the next prompt added, so there are never more numbers than the
+ *  most prompts indexed at once, and lists of prompts are kept sorted by
+ *  number as they change.
+ * @author Jay Acosta
+ */
+public class PromptSearch {
+
+    // class constants
+    // a word still being typed matches lyric words it starts only once it has this many letters
+    private static final int MIN_LYRIC_PREFIX = 3;
+    private static final float TITLE_SCORE = 10;
+    // the score of a lyric word grows with the log of how often a prompt uses it
+    private static final float[] LYRIC_SCORES = new float[64];
+
+    static {
+        for (int count = 1; count < LYRIC_SCORES.length; count++) {
+            LYRIC_SCORES[count] = 1 + (float) Math.log(count);
+        }
+    }
+
+    // words of the titles and first lines, every node lists the prompts with a word below it
+    private final Trie titles = new Trie();
+    // words of the lyrics, a node lists the prompts using the word that ends there
+    private final Trie lyrics = new Trie();
+
+    // prompts by number, null once removed until the number is given out again
+    private final List<Entry> entries = new ArrayList<>();
+    private final Map<String, Integer> numbers = new HashMap<>();
+    private int[] freeNumbers = new int[8];
+    private int freeCount;
+
+    // scratch space of the query being searched, by prompt number. A prompt's
+    // entries only count if its query stamp is the current query's.
+    private int[] queryStamps = new int[0];
+    private int[] wordsMatched = new int[0];
+    private float[] scores = new float[0];
+    private int query;
+
+    /**
+     * pre: name != null, prompt != null
+     * post: indexes the prompt under name, replacing whatever was indexed
+     *  under it before
+     */
+    public void add(String name, PromptSequence prompt) {
+
+        // the words are found before taking the lock, loader threads add prompts in parallel
+        String firstLine = prompt.size() == 0 ? "" : prompt.getSegment(0);
+        Map<String, Integer> titleWords = new HashMap<>();
+        addWords(titleOf(name) + " " + firstLine, titleWords);
+
+        Map<String, Integer> lyricWords = new HashMap<>();
+        for (int i = 0; i < prompt.size(); i++) {
+            addWords(prompt.getSegment(i), lyricWords);
+        }
+
+        synchronized (this) {
+
+            remove(name);
+
+            Entry entry = new Entry(name, titleWords.keySet().toArray(new String[0]),
+                    lyricWords.keySet().toArray(new String[0]));
+
+            int number;
+            if (freeCount > 0) {
+                number = freeNumbers[--freeCount];
+                entries.set(number, entry);
+            } else {
+                number = entries.size();
+                entries.add(entry);
+            }
+            numbers.put(name, number);
+
+            for (String word : titleWords.keySet()) {
+                titles.addPrefixes(word, number);
+            }
+            for (Map.Entry<String, Integer> word : lyricWords.entrySet()) {
+                lyrics.addWord(word.getKey(), number, word.getValue());
+            }
+        }
+    }
+
+    // post: the prompt indexed under name, if any, no longer matches anything
+    public synchronized void remove(String name) {
+
+        Integer number = numbers.remove(name);
+        if (number == null) {
+            return;
+        }
+
+        Entry entry = entries.get(number);
+        entries.set(number, null);
+
+        if (freeCount == freeNumbers.length) {
+            freeNumbers = Arrays.copyOf(freeNumbers, freeCount * 2);
+        }
+        freeNumbers[freeCount++] = number;
+
+        for (String word : entry.titleWords) {
+            titles.removePrefixes(word, number);
+        }
+        for (String word : entry.lyricWords) {
+            lyrics.removeWord(word, number);
+        }
+    }
+
+    public synchronized int size() {
+        return numbers.size();
+    }
+
+    /**
+     * pre: query != null, limit > 0
+     * post: returns the names of at most limit prompts that match every word
+     *  of the query, best first. A query without words matches nothing.
+     */
+    public synchronized List<String> search(String query, int limit) {
+
+        // check preconditions
+        if (limit <= 0) {
+            throw new IllegalArgumentException("limit must be positive");
+        }
+
+        List<String> words = new ArrayList<>();
+        addWords(query, words);
+
+        if (words.isEmpty()) {
+            return List.of();
+        }
+
+        // the last word is still being typed unless the query ends between words
+        boolean typing = Character.isLetterOrDigit(query.charAt(query.length() - 1));
+
+        startQuery();
+
+        for (int i = 0; i < words.size(); i++) {
+            if (!matchWord(words.get(i), i, typing && i == words.size() - 1)) {
+                return List.of();
+            }
+        }
+
+        return best(words.size(), limit);
+    }
+
+    // post: the scratch space fits every prompt and holds nothing from earlier queries
+    private void startQuery() {
+
+        if (queryStamps.length < entries.size()) {
+            int size = Math.max(entries.size(), queryStamps.length * 2);
+            queryStamps = new int[size];
+            wordsMatched = new int[size];
+            scores = new float[size];
+            query = 0;
+        }
+
+        query++;
+    }
+
+    /**
+     * pre: every earlier word of the query has been matched
+     * post: adds the score of the word to every prompt that matched every
+     *  word before it and matches this one, and returns false if none did
+     */
+    private boolean matchWord(String word, int index, boolean typing) {
+
+        int matched = 0;
+
+        Trie.Node titleNode = titles.find(word);
+        if (titleNode != null) {
+            matched += score(titleNode.postings, index, false);
+        }
+
+        Trie.Node lyricNode = lyrics.find(word);
+        if (lyricNode != null) {
+            if (typing && word.length() >= MIN_LYRIC_PREFIX) {
+                // every lyric word the typed letters start
+                for (Postings postings : lyricNode.allPostings(new ArrayList<>())) {
+                    matched += score(postings, index, true);
+                }
+            } else {
+                matched += score(lyricNode.postings, index, true);
+            }
+        }
+
+        return matched > 0;
+    }
+
+    // post: scores the listed prompts that are still in the running for the word at index,
+    //  and returns how many of them matched it for the first time
+    private int score(Postings postings, int index, boolean lyric) {
+
+        if (postings == null) {
+            return 0;
+        }
+
+        int matched = 0;
+
+        for (int i = 0; i < postings.size; i++) {
+
+            int number = postings.numbers[i];
+
+            if (queryStamps[number] != query) {
+                // the first word lets any prompt in, later words only keep prompts already in
+                if (index > 0) {
+                    continue;
+                }
+                queryStamps[number] = query;
+                wordsMatched[number] = 0;
+                scores[number] = 0;
+            }
+
+            if (wordsMatched[number] == index) {
+                wordsMatched[number] = index + 1;
+                matched++;
+            } else if (wordsMatched[number] != index + 1) {
+                // missed an earlier word
+                continue;
+            }
+
+            int count = postings.counts[i];
+            scores[number] += !lyric ? TITLE_SCORE
+                    : count < LYRIC_SCORES.length ? LYRIC_SCORES[count] : 1 + (float) Math.log(count);
+        }
+
+        return matched;
+    }
+
+    // returns the names of the limit best scored prompts that matched every word, the same score in name order
+    private List<String> best(int wordCount, int limit) {
+
+        // the few best are kept in order while the rest are passed over
+        int[] top = new int[limit];
+        int size = 0;
+
+        for (int number = 0; number < entries.size(); number++) {
+
+            if (queryStamps[number] != query || wordsMatched[number] != wordCount) {
+                continue;
+            }
+            if (size == top.length && !better(number, top[size - 1])) {
+                continue;
+            }
+
+            int place = size < top.length ? size++ : size - 1;
+            while (place > 0 && better(number, top[place - 1])) {
+                top[place] = top[place - 1];
+                place--;
+            }
+            top[place] = number;
+        }
+
+        List<String> names = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            names.add(entries.get(top[i]).name);
+        }
+        return names;
+    }
+
+    private boolean better(int a, int b) {
+        if (scores[a] != scores[b]) {
+            return scores[a] > scores[b];
+        }
+        return entries.get(a).name.compareTo(entries.get(b).name) < 0;
+    }
+
+    // returns the title made from a file name, "TakeOnMe.txt" is "Take On Me"
+    static String titleOf(String fileName) {
+
+        String name = fileName.endsWith(".txt") ? fileName.substring(0, fileName.length() - 4) : fileName;
+        StringBuilder title = new StringBuilder();
+
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            if (i > 0 && Character.isUpperCase(c) && Character.isLowerCase(name.charAt(i - 1))) {
+                title.append(' ');
+            }
+            title.append(c);
+        }
+
+        return title.toString();
+    }
+
+    // post: adds every word of the text, in lower case and without apostrophes, to words
+    private static void addWords(String text, Map<String, Integer> words) {
+        List<String> found = new ArrayList<>();
+        addWords(text, found);
+        for (String word : found) {
+            words.merge(word, 1, Integer::sum);
+        }
+    }
+
+    private static void addWords(String text, List<String> words) {
+
+        StringBuilder word = new StringBuilder();
+
+        for (int i = 0; i <= text.length(); i++) {
+
+            char c = i < text.length() ? text.charAt(i) : ' ';
+
+            if (Character.isLetterOrDigit(c)) {
+                word.append(c);
+            } else if ((c == '\'' || c == '\u2019') && word.length() > 0) {
+                // "I've" is "ive", typed with or without the apostrophe
+            } else if (word.length() > 0) {
+                words.add(word.toString().toLowerCase(Locale.ROOT));
+                word.setLength(0);
+            }
+        }
+    }
+
+    // a prompt in the index and the words it was indexed under, to remove it by
+    private static class Entry {
+
+        private final String name;
+        private final String[] titleWords;
+        private final String[] lyricWords;
+
+        private Entry(String name, String[] titleWords, String[] lyricWords) {
+            this.name = name;
+            this.titleWords = titleWords;
+            this.lyricWords = lyricWords;
+        }
+    }
+
+    // prompt numbers in ascending order, each with how many times it was added
+    private static class Postings {
+
+        private int[] numbers = new int[2];
+        private int[] counts = new int[2];
+        private int size;
+
+        private void add(int number, int count) {
+
+            // a new prompt mostly has the highest number so far, a reused number goes in its place
+            int index = size > 0 && numbers[size - 1] < number ? -size - 1
+                    : Arrays.binarySearch(numbers, 0, size, number);
+
+            // a prompt adding again adds to its count
+            if (index >= 0) {
+                counts[index] += count;
+                return;
+            }
+
+            if (size == numbers.length) {
+                numbers = Arrays.copyOf(numbers, size * 2);
+                counts = Arrays.copyOf(counts, size * 2);
+            }
+
+            index = -index - 1;
+            System.arraycopy(numbers, index, numbers, index + 1, size - index);
+            System.arraycopy(counts, index, counts, index + 1, size - index);
+            numbers[index] = number;
+            counts[index] = count;
+            size++;
+        }
+
+        // post: takes count away from the prompt, and drops it once it reaches 0
+        private void remove(int number, int count) {
+
+            int index = Arrays.binarySearch(numbers, 0, size, number);
+            if (index < 0) {
+                return;
+            }
+
+            counts[index] -= count;
+            if (counts[index] <= 0) {
+                size--;
+                System.arraycopy(numbers, index + 1, numbers, index, size - index);
+                System.arraycopy(counts, index + 1, counts, index, size - index);
+            }
+        }
+    }
+
+    // a trie of words over their letters
+    private static class Trie {
+
+        private final Node root = new Node();
+
+        // post: the prompt is listed at every node of the word, so at every prefix of it
+        private void addPrefixes(String word, int number) {
+            Node node = root;
+            for (int i = 0; i < word.length(); i++) {
+                node = node.child(word.charAt(i), true);
+                node.postings().add(number, 1);
+            }
+        }
+
+        private void removePrefixes(String word, int number) {
+            Node node = root;
+            for (int i = 0; i < word.length() && node != null; i++) {
+                node = node.child(word.charAt(i), false);
+                if (node != null && node.postings != null) {
+                    node.postings.remove(number, 1);
+                }
+            }
+        }
+
+        // post: the prompt is listed, count times, at the node where the word ends
+        private void addWord(String word, int number, int count) {
+            Node node = root;
+            for (int i = 0; i < word.length(); i++) {
+                node = node.child(word.charAt(i), true);
+            }
+            node.postings().add(number, count);
+        }
+
+        private void removeWord(String word, int number) {
+            Node node = find(word);
+            if (node != null && node.postings != null) {
+                node.postings.remove(number, Integer.MAX_VALUE);
+            }
+        }
+
+        // returns the node the letters of word lead to, or null if no word starts with it
+        private Node find(String word) {
+            Node node = root;
+            for (int i = 0; i < word.length() && node != null; i++) {
+                node = node.child(word.charAt(i), false);
+            }
+            return node;
+        }
+
+        // a letter of the trie, its children are kept sorted by letter
+        private static class Node {
+
+            private char[] letters = new char[0];
+            private Node[] children = new Node[0];
+            private Postings postings;
+
+            private Node child(char letter, boolean create) {
+
+                int index = Arrays.binarySearch(letters, letter);
+                if (index >= 0) {
+                    return children[index];
+                }
+                if (!create) {
+                    return null;
+                }
+
+                index = -index - 1;
+                letters = insert(letters, index, letter);
+                children = Arrays.copyOf(children, children.length + 1);
+                System.arraycopy(children, index, children, index + 1, children.length - index - 1);
+                children[index] = new Node();
+
+                return children[index];
+            }
+
+            private Postings postings() {
+                if (postings == null) {
+                    postings = new Postings();
+                }
+                return postings;
+            }
+
+            // returns the postings of this node and every node below it
+            private List<Postings> allPostings(List<Postings> found) {
+                if (postings != null && postings.size > 0) {
+                    found.add(postings);
+                }
+                for (Node child : children) {
+                    child.allPostings(found);
+                }
+                return found;
+            }
+
+            private static char[] insert(char[] letters, int index, char letter) {
+                char[] grown = new char[letters.length + 1];
+                System.arraycopy(letters, 0, grown, 0, index);
+                grown[index] = letter;
+                System.arraycopy(letters, index, grown, index + 1, letters.length - index);
+                return grown;
+            }
+        }
+    }
+}
@@ -0,0 +1,21 @@
+/**
+ * For use in the game DinoType (Version 2)
+ *  An immutable sequence of prompt segments. Sequences are shared between
+ *  games, so a game keeps its own index into the sequence instead of
+ *  consuming or copying it.
+ * @author Jay Acosta
+ */
+public interface PromptSequence {
+
+    // returns the number of segments in the prompt
+    int size();
+
+    // pre: 0 <= index < size()
+    // post: returns the segment at the given index
+    String getSegment(int index);
+
+    // returns a sequence of the given segments
+    static PromptSequence of(String... segments) {
+        return new TextPrompt(segments);
+    }
+}
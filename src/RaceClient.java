@@ -0,0 +1,341 @@
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * For use in the game DinoType (Version 2)
+ *  A player's connection to a RaceServer. It reports the progress of the
+ *  local game and keeps the latest progress of every other player, which
+ *  the server sends in batches once a tick. Progress is handed to a writer
+ *  thread of the client's own through a slot holding only the newest value,
+ *  so reporting it never waits on the network.
+ * @author Jay Acosta
+ */
+public class RaceClient implements Runnable {
+
+    // class constants
+    // packed progress never sets the top bits, so this is never a real value
+    private static final long NO_PROGRESS = -1L;
+
+    private final SocketChannel channel;
+    // holds the JOIN frame, progress is written by the writer thread from its own buffer
+    private final ByteBuffer writeBuffer = ByteBuffer.allocate(RaceProtocol.HEADER_BYTES + 2
+            + RaceProtocol.MAX_NAME_BYTES);
+    private final Map<Integer, Racer> racers = new ConcurrentHashMap<>();
+
+    private RaceListener listener;
+    private volatile int playerId;
+    private volatile boolean closed;
+
+    // the newest progress the writer has not taken yet, and the last progress
+    // handed to it, so unchanged progress is not sent again. Both are packed by pack.
+    private final AtomicLong pendingProgress = new AtomicLong(NO_PROGRESS);
+    private volatile long offeredProgress = NO_PROGRESS;
+    private volatile Thread writer;
+
+    private RaceClient(SocketChannel channel) {
+        this.channel = channel;
+    }
+
+    /**
+     * pre: name != null
+     * post: connects to the server and joins as a player with the given name.
+     *  Nothing is read from the server until start is called.
+     */
+    public static RaceClient connect(InetSocketAddress server, String name) throws IOException {
+
+        SocketChannel channel = SocketChannel.open(server);
+        channel.socket().setTcpNoDelay(true);
+
+        RaceClient client = new RaceClient(channel);
+        client.join(name);
+
+        return client;
+    }
+
+    // post: reads from the server on a new thread, passing every event to the listener,
+    //  and sends progress on another
+    public void start(RaceListener listener) {
+
+        this.listener = listener;
+
+        Thread reader = new Thread(this, "race-client");
+        reader.setDaemon(true);
+        reader.start();
+
+        writer = new Thread(this::writeProgress, "race-client-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    // returns this player's id, or 0 until the server has welcomed it
+    public int getPlayerId() {
+        return playerId;
+    }
+
+    // returns every player in the race, this one included, as of the last batch from the server
+    public Collection<Racer> getRacers() {
+        return racers.values();
+    }
+
+    public Racer getRacer(int id) {
+        return racers.get(id);
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    private synchronized void join(String name) throws IOException {
+        writeBuffer.clear();
+        int start = RaceProtocol.beginFrame(writeBuffer, RaceProtocol.JOIN);
+        RaceProtocol.putString(writeBuffer, name, RaceProtocol.MAX_NAME_BYTES);
+        RaceProtocol.endFrame(writeBuffer, start);
+        write();
+    }
+
+    /**
+     * pre: engine != null
+     * post: has the writer tell the server how far the player is, if that
+     *  changed since the last call. Never blocks, so calling it on every key
+     *  and tick is cheap; progress the writer has not sent yet is replaced.
+     */
+    public void sendProgress(GameEngine engine) {
+
+        long progress = pack(RaceProtocol.progressOf(engine), engine.getPromptIndex(), engine.getLives(),
+                engine.getState().ordinal());
+
+        if (closed || progress == offeredProgress) {
+            return;
+        }
+
+        offeredProgress = progress;
+        pendingProgress.set(progress);
+        LockSupport.unpark(writer);
+    }
+
+    // post: forgets the progress last sent, so the next race starts by reporting it
+    public void resetProgress() {
+        offeredProgress = NO_PROGRESS;
+    }
+
+    public void close() {
+
+        closed = true;
+        LockSupport.unpark(writer);
+
+        try {
+            channel.close();
+        } catch (IOException e) {
+            // already closed
+        }
+    }
+
+    // post: sends the newest progress whenever there is some, until the client is closed
+    private void writeProgress() {
+
+        ByteBuffer frame = ByteBuffer.allocate(RaceProtocol.HEADER_BYTES + RaceProtocol.PROGRESS_BYTES);
+
+        while (!closed) {
+
+            long progress = pendingProgress.getAndSet(NO_PROGRESS);
+            if (progress == NO_PROGRESS) {
+                LockSupport.park(this);
+                continue;
+            }
+
+            frame.clear();
+            int start = RaceProtocol.beginFrame(frame, RaceProtocol.PROGRESS);
+            RaceProtocol.putProgress(frame, (int) (progress >>> 40), (int) (progress >>> 24) & 0xFFFF,
+                    (short) (progress >>> 8), (int) progress & 0xFF);
+            RaceProtocol.endFrame(frame, start);
+            frame.flip();
+
+            try {
+                while (frame.hasRemaining()) {
+                    channel.write(frame);
+                }
+            } catch (IOException e) {
+                if (!closed) {
+                    System.out.println("Error while sending progress to the race server");
+                }
+                close();
+            }
+        }
+    }
+
+    // returns the progress as one value, each field cut down to the size it is sent in
+    private static long pack(int progress, int promptIndex, int lives, int state) {
+        return (long) (progress & 0xFFFF) << 40
+                | (long) Math.min(promptIndex, 0xFFFF) << 24
+                | (long) (Math.max(Short.MIN_VALUE, Math.min(lives, Short.MAX_VALUE)) & 0xFFFF) << 8
+                | (state & 0xFF);
+    }
+
+    private void write() throws IOException {
+        writeBuffer.flip();
+        while (writeBuffer.hasRemaining()) {
+            channel.write(writeBuffer);
+        }
+    }
+
+    public void run() {
+
+        ByteBuffer buffer = ByteBuffer.allocate(RaceProtocol.MAX_FRAME_BYTES);
+
+        try {
+            while (channel.read(buffer) >= 0) {
+
+                buffer.flip();
+
+                int length;
+                while ((length = RaceProtocol.completeFrameLength(buffer)) >= 0) {
+
+                    if (length == 0) {
+                        throw new IOException("frame without a type");
+                    }
+
+                    int end = buffer.position() + 2 + length;
+                    buffer.getShort();
+                    byte type = buffer.get();
+
+                    receive(type, buffer.slice(buffer.position(), length - 1));
+                    buffer.position(end);
+                }
+
+                buffer.compact();
+            }
+        } catch (IOException | BufferUnderflowException e) {
+            // the server went away, or sent something that is not the protocol
+            if (!closed) {
+                System.out.println("Error while reading from the race server: " + e);
+            }
+        } finally {
+            close();
+        }
+    }
+
+    private void receive(byte type, ByteBuffer payload) {
+
+        if (type == RaceProtocol.WELCOME) {
+
+            playerId = payload.getInt();
+
+        } else if (type == RaceProtocol.PLAYERS_JOINED) {
+
+            int count = payload.getShort() & 0xFFFF;
+            for (int i = 0; i < count; i++) {
+                int id = payload.getInt();
+                racers.put(id, new Racer(id, RaceProtocol.getString(payload)));
+            }
+            listener.racersChanged();
+
+        } else if (type == RaceProtocol.PLAYERS_LEFT) {
+
+            int count = payload.getShort() & 0xFFFF;
+            for (int i = 0; i < count; i++) {
+                racers.remove(payload.getInt());
+            }
+            listener.racersChanged();
+
+        } else if (type == RaceProtocol.RACE_START) {
+
+            String promptName = RaceProtocol.getString(payload);
+            int difficulty = payload.get();
+            long startNanos = System.nanoTime() + payload.getInt() * 1_000_000L;
+
+            for (Racer racer : racers.values()) {
+                racer.progress = 0;
+                racer.promptIndex = 0;
+                racer.state = GameEngine.State.WAITING.ordinal();
+            }
+            resetProgress();
+
+            listener.raceStarted(promptName, difficulty, startNanos);
+
+        } else if (type == RaceProtocol.PROGRESS_BATCH) {
+
+            int count = payload.getShort() & 0xFFFF;
+            for (int i = 0; i < count; i++) {
+
+                Racer racer = racers.get(payload.getInt());
+                int progress = payload.getShort() & 0xFFFF;
+                int promptIndex = payload.getShort() & 0xFFFF;
+                int lives = payload.getShort();
+                int state = payload.get() & 0xFF;
+
+                // this player's own progress comes back too, a player may have just left,
+                // and progress no game could report is not drawn
+                if (racer != null && RaceProtocol.isValidProgress(progress, state)) {
+                    racer.progress = progress;
+                    racer.promptIndex = promptIndex;
+                    racer.lives = lives;
+                    racer.state = state;
+                }
+            }
+            listener.racersChanged();
+
+        } else if (type == RaceProtocol.RACE_OVER) {
+
+            int count = payload.getShort() & 0xFFFF;
+            List<Integer> ranking = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                ranking.add(payload.getInt());
+            }
+            listener.raceOver(ranking);
+        }
+    }
+
+    /**
+     * A player in the race, as last reported by the server
+     */
+    public static class Racer {
+
+        private final int id;
+        private final String name;
+
+        private volatile int progress;
+        private volatile int promptIndex;
+        private volatile int lives;
+        private volatile int state;
+
+        private Racer(int id, String name) {
+            this.id = id;
+            this.name = name;
+        }
+
+        public int getId() {
+            return id;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        // returns how much of the prompt the racer has typed, from 0 to 1
+        public double getProgress() {
+            return (double) progress / RaceProtocol.PROGRESS_SCALE;
+        }
+
+        public int getPromptIndex() {
+            return promptIndex;
+        }
+
+        public int getLives() {
+            return lives;
+        }
+
+        public GameEngine.State getState() {
+            return GameEngine.State.values()[state];
+        }
+    }
+}
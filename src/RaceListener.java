@@ -0,0 +1,20 @@
+import java.util.List;
+
+/**
+ * For use in the game DinoType (Version 2)
+ *  Receives the events of the races a RaceClient takes part in.
+ *  Events arrive on the client's reader thread, so implementations must be
+ *  thread safe.
+ * @author Jay Acosta
+ */
+public interface RaceListener {
+
+    // called when a race is announced, it starts at startNanos on the System.nanoTime() clock
+    void raceStarted(String promptName, int difficulty, long startNanos);
+
+    // called after players joined or left, or any player's progress changed
+    void racersChanged();
+
+    // called when every racer is done, with the ids of the racers from first to last
+    void raceOver(List<Integer> ranking);
+}
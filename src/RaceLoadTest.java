@@ -0,0 +1,344 @@
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * For use in the game DinoType (Version 2)
+ *  Connects any number of synthetic players to a RaceServer from one thread
+ *  and has them type at a steady speed, to see how the server holds up.
+ *  Every second it prints how many players are connected, the traffic both
+ *  ways, and how long a probe player's progress takes to come back in a
+ *  batch from the server:
+ *
+ *      java RaceLoadTest localhost:4915 2000 [wordsPerMinute] [seconds]
+ * @author Jay Acosta
+ */
+public class RaceLoadTest implements Runnable {
+
+    // class constants
+    private static final int DEFAULT_WORDS_PER_MINUTE = 60;
+    private static final int DEFAULT_SECONDS = 60;
+    // a synthetic prompt of this many characters, each key types one of them
+    private static final int PROMPT_CHARS = 600;
+    // only every PROBE_EVERY-th player reads the batches it receives, the rest skip them unread
+    private static final int PROBE_EVERY = 16;
+    private static final int CONNECTS_PER_ROUND = 64;
+
+    private final InetSocketAddress server;
+    private final int clients;
+    private final long keyNanos;
+    private final long durationNanos;
+
+    private final Random random = new Random(42);
+    private final LatencyHistogram echoLatency = new LatencyHistogram("progressEcho");
+
+    private int connected;
+    private long keysSent;
+    private long bytesReceived;
+    private long framesReceived;
+
+    public RaceLoadTest(InetSocketAddress server, int clients, int wordsPerMinute, long durationNanos) {
+
+        // check preconditions
+        if (clients <= 0 || wordsPerMinute <= 0) {
+            throw new IllegalArgumentException("the load test needs players that type");
+        }
+
+        this.server = server;
+        this.clients = clients;
+        // a word is five characters
+        this.keyNanos = 60_000_000_000L / (wordsPerMinute * 5L);
+        this.durationNanos = durationNanos;
+    }
+
+    public static void main(String[] args) throws IOException {
+
+        if (args.length < 2) {
+            System.out.println("usage: RaceLoadTest host[:port] players [wordsPerMinute] [seconds]");
+            return;
+        }
+
+        InetSocketAddress server = Driver.parseAddress(args[0]);
+        int clients = Integer.parseInt(args[1]);
+        int wordsPerMinute = args.length > 2 ? Integer.parseInt(args[2]) : DEFAULT_WORDS_PER_MINUTE;
+        int seconds = args.length > 3 ? Integer.parseInt(args[3]) : DEFAULT_SECONDS;
+
+        new RaceLoadTest(server, clients, wordsPerMinute, seconds * 1_000_000_000L).run();
+    }
+
+    public void run() {
+
+        List<Bot> bots = new ArrayList<>();
+
+        try (Selector selector = Selector.open()) {
+
+            long start = System.nanoTime();
+            long nextReport = start + 1_000_000_000L;
+
+            while (System.nanoTime() - start < durationNanos) {
+
+                // open connections a few at a time so the server's backlog never overflows
+                for (int i = 0; i < CONNECTS_PER_ROUND && bots.size() < clients; i++) {
+                    bots.add(connect(selector, bots.size()));
+                }
+
+                selector.select(1);
+
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    handle(key);
+                }
+
+                long now = System.nanoTime();
+                for (Bot bot : bots) {
+                    try {
+                        bot.type(now);
+                    } catch (IOException e) {
+                        drop(bot);
+                    }
+                }
+
+                if (now - nextReport >= 0) {
+                    report(now - start);
+                    nextReport += 1_000_000_000L;
+                }
+            }
+
+            for (Bot bot : bots) {
+                bot.channel.close();
+            }
+        } catch (IOException e) {
+            System.out.println("Error while running the load test: " + e.getMessage());
+        }
+    }
+
+    private Bot connect(Selector selector, int index) throws IOException {
+
+        SocketChannel channel = SocketChannel.open();
+        channel.configureBlocking(false);
+        channel.socket().setTcpNoDelay(true);
+
+        Bot bot = new Bot(channel, index % PROBE_EVERY == 0);
+        channel.connect(server);
+        bot.key = channel.register(selector, SelectionKey.OP_CONNECT, bot);
+        bot.join("bot-" + index);
+
+        return bot;
+    }
+
+    private void handle(SelectionKey key) {
+
+        Bot bot = (Bot) key.attachment();
+
+        try {
+            if (key.isConnectable() && bot.channel.finishConnect()) {
+                connected++;
+                bot.key.interestOps(SelectionKey.OP_READ | (bot.out.position() > 0 ? SelectionKey.OP_WRITE : 0));
+            } else if (key.isReadable()) {
+                bot.read();
+            }
+            if (key.isValid() && key.isWritable()) {
+                bot.flush();
+            }
+        } catch (IOException | BufferUnderflowException e) {
+            drop(bot);
+        }
+    }
+
+    // post: closes the connection of a player the server dropped or that sent too fast
+    private void drop(Bot bot) {
+
+        if (!bot.channel.isOpen()) {
+            return;
+        }
+        if (bot.channel.isConnected()) {
+            connected--;
+        }
+
+        bot.key.cancel();
+        try {
+            bot.channel.close();
+        } catch (IOException e) {
+            // already closed
+        }
+    }
+
+    private void report(long elapsedNanos) {
+
+        System.out.printf("%3ds: %d players, %d keys sent, %d frames and %.1f MB received, "
+                        + "progress echo p50 %.1f ms p99 %.1f ms max %.1f ms%n",
+                elapsedNanos / 1_000_000_000L, connected, keysSent, framesReceived, bytesReceived / 1e6,
+                echoLatency.getPercentileNanos(0.5) / 1e6, echoLatency.getPercentileNanos(0.99) / 1e6,
+                echoLatency.getMaxNanos() / 1e6);
+
+        keysSent = 0;
+        framesReceived = 0;
+        bytesReceived = 0;
+        echoLatency.reset();
+    }
+
+    /**
+     * One synthetic player and its connection
+     */
+    private class Bot {
+
+        private final SocketChannel channel;
+        private final boolean probe;
+        private SelectionKey key;
+
+        private final ByteBuffer in = ByteBuffer.allocate(RaceProtocol.MAX_FRAME_BYTES);
+        private final ByteBuffer out = ByteBuffer.allocate(1024);
+
+        private int id;
+        private boolean racing;
+        private long nextKeyNanos;
+        private int typed;
+
+        // the keys of a probe that have not come back from the server yet, oldest first
+        private final int[] echoProgress = new int[64];
+        private final long[] echoSentNanos = new long[64];
+        private int echoCount;
+
+        private Bot(SocketChannel channel, boolean probe) {
+            this.channel = channel;
+            this.probe = probe;
+        }
+
+        private void join(String name) {
+            int start = RaceProtocol.beginFrame(out, RaceProtocol.JOIN);
+            RaceProtocol.putString(out, name, RaceProtocol.MAX_NAME_BYTES);
+            RaceProtocol.endFrame(out, start);
+        }
+
+        // post: types the next character if it is time to
+        private void type(long now) throws IOException {
+
+            if (!racing || now - nextKeyNanos < 0 || !channel.isConnected() || !key.isValid()) {
+                return;
+            }
+
+            // a little jitter, so the players do not all type on the same beat
+            nextKeyNanos += keyNanos / 2 + (long) (random.nextDouble() * keyNanos);
+            typed++;
+
+            boolean won = typed >= PROMPT_CHARS;
+            int progress = Math.min(RaceProtocol.PROGRESS_SCALE, typed * RaceProtocol.PROGRESS_SCALE / PROMPT_CHARS);
+            GameEngine.State state = won ? GameEngine.State.WON : GameEngine.State.PLAYING;
+
+            if (out.remaining() < RaceProtocol.HEADER_BYTES + RaceProtocol.PROGRESS_BYTES) {
+                // the server is not reading, drop the key rather than queue it
+                return;
+            }
+
+            int start = RaceProtocol.beginFrame(out, RaceProtocol.PROGRESS);
+            RaceProtocol.putProgress(out, progress, typed / 50, 1, state.ordinal());
+            RaceProtocol.endFrame(out, start);
+            keysSent++;
+
+            // every key is timed, timing only some would favour the ones typed just after a batch
+            if (probe && echoCount < echoProgress.length) {
+                echoProgress[echoCount] = progress;
+                echoSentNanos[echoCount] = now;
+                echoCount++;
+            }
+
+            racing = !won;
+            flush();
+        }
+
+        private void flush() throws IOException {
+
+            out.flip();
+            channel.write(out);
+            out.compact();
+
+            if (key.isValid()) {
+                key.interestOps(SelectionKey.OP_READ | (out.position() > 0 ? SelectionKey.OP_WRITE : 0));
+            }
+        }
+
+        private void read() throws IOException {
+
+            int read = channel.read(in);
+            if (read < 0) {
+                throw new IOException("the server closed the connection");
+            }
+            bytesReceived += read;
+
+            in.flip();
+
+            int length;
+            while ((length = RaceProtocol.completeFrameLength(in)) >= 0) {
+
+                if (length == 0) {
+                    throw new IOException("frame without a type");
+                }
+
+                int end = in.position() + 2 + length;
+                in.getShort();
+                byte type = in.get();
+
+                receive(type, in.slice(in.position(), length - 1));
+                framesReceived++;
+                in.position(end);
+            }
+
+            in.compact();
+        }
+
+        private void receive(byte type, ByteBuffer payload) {
+
+            if (type == RaceProtocol.WELCOME) {
+
+                id = payload.getInt();
+
+            } else if (type == RaceProtocol.RACE_START) {
+
+                RaceProtocol.getString(payload);
+                payload.get();
+                racing = true;
+                typed = 0;
+                echoCount = 0;
+                nextKeyNanos = System.nanoTime() + payload.getInt() * 1_000_000L;
+
+            } else if (type == RaceProtocol.PROGRESS_BATCH && probe && echoCount > 0) {
+
+                int count = payload.getShort() & 0xFFFF;
+                for (int i = 0; i < count; i++) {
+                    int entryId = payload.getInt();
+                    int progress = payload.getShort() & 0xFFFF;
+                    payload.position(payload.position() + RaceProtocol.PROGRESS_BYTES - 2);
+
+                    if (entryId == id) {
+                        echoed(progress, System.nanoTime());
+                        break;
+                    }
+                }
+            }
+        }
+
+        // post: records the latency of every key up to the given progress
+        private void echoed(int progress, long now) {
+
+            int done = 0;
+            while (done < echoCount && echoProgress[done] <= progress) {
+                echoLatency.record(now - echoSentNanos[done]);
+                done++;
+            }
+
+            System.arraycopy(echoProgress, done, echoProgress, 0, echoCount - done);
+            System.arraycopy(echoSentNanos, done, echoSentNanos, 0, echoCount - done);
+            echoCount -= done;
+        }
+    }
+}
@@ -0,0 +1,124 @@
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * For use in the game DinoType (Version 2)
+ *  The binary messages of a race between a RaceServer and its clients.
+ *  Every message is a frame of a two byte length, a one byte type and the
+ *  payload, all big endian:
+ *
+ *  client to server
+ *      JOIN            name
+ *      PROGRESS        progress u16, promptIndex u16, lives i16, state u8
+ *  server to client
+ *      WELCOME         playerId i32
+ *      PLAYERS_JOINED  count u16, count x (playerId i32, name)
+ *      PLAYERS_LEFT    count u16, count x playerId i32
+ *      RACE_START      promptName, difficulty u8, countdownMillis i32
+ *      PROGRESS_BATCH  count u16, count x (playerId i32, progress u16, promptIndex u16, lives i16, state u8)
+ *      RACE_OVER       count u16, count x playerId i32, best placed first
+ *
+ *  Names are a u16 byte count and UTF-8. Progress is how much of the prompt
+ *  is typed in units of 1 / PROGRESS_SCALE, and state is the ordinal of a
+ *  GameEngine.State.
+ * @author Jay Acosta
+ */
+public final class RaceProtocol {
+
+    // class constants
+    public static final int DEFAULT_PORT = 4915;
+
+    public static final byte JOIN = 1;
+    public static final byte PROGRESS = 2;
+    public static final byte WELCOME = 3;
+    public static final byte PLAYERS_JOINED = 4;
+    public static final byte PLAYERS_LEFT = 5;
+    public static final byte RACE_START = 6;
+    public static final byte PROGRESS_BATCH = 7;
+    public static final byte RACE_OVER = 8;
+
+    public static final int PROGRESS_SCALE = 10_000;
+    public static final int MAX_NAME_BYTES = 32;
+    public static final int MAX_PROMPT_NAME_BYTES = 1024;
+    public static final int HEADER_BYTES = 3;
+    public static final int MAX_FRAME_BYTES = HEADER_BYTES + 0xFFFF;
+
+    public static final int PROGRESS_BYTES = 2 + 2 + 2 + 1;
+    public static final int PROGRESS_ENTRY_BYTES = 4 + PROGRESS_BYTES;
+    public static final int MAX_JOINED_ENTRY_BYTES = 4 + 2 + MAX_NAME_BYTES;
+    // entries per batch frame, so even a frame of the largest entries fits its u16 length
+    public static final int MAX_BATCH_ENTRIES = (0xFFFF - 3) / MAX_JOINED_ENTRY_BYTES;
+
+    private RaceProtocol() {
+    }
+
+    /**
+     * pre: buffer has room for the header
+     * post: starts a frame of the given type and returns the position of its
+     *  length, to be passed to endFrame once the payload is written
+     */
+    public static int beginFrame(ByteBuffer buffer, byte type) {
+        int start = buffer.position();
+        buffer.putShort((short) 0);
+        buffer.put(type);
+        return start;
+    }
+
+    // post: fills in the length of the frame started at start
+    public static void endFrame(ByteBuffer buffer, int start) {
+        buffer.putShort(start, (short) (buffer.position() - start - 2));
+    }
+
+    /**
+     * pre: buffer holds bytes read from the channel, flipped for reading
+     * post: returns the length of the payload plus type of the first frame if it
+     *  has arrived completely, or -1 if more bytes are needed. A length of 0 is
+     *  a frame without a type, which is not the protocol.
+     */
+    public static int completeFrameLength(ByteBuffer buffer) {
+
+        if (buffer.remaining() < 2) {
+            return -1;
+        }
+
+        int length = buffer.getShort(buffer.position()) & 0xFFFF;
+        return buffer.remaining() >= 2 + length ? length : -1;
+    }
+
+    // post: writes the text as UTF-8, cut down to maxBytes
+    public static void putString(ByteBuffer buffer, String text, int maxBytes) {
+
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        int length = Math.min(bytes.length, maxBytes);
+
+        buffer.putShort((short) length);
+        buffer.put(bytes, 0, length);
+    }
+
+    public static String getString(ByteBuffer buffer) {
+
+        int length = buffer.getShort() & 0xFFFF;
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    public static void putProgress(ByteBuffer buffer, int progress, int promptIndex, int lives, int state) {
+        buffer.putShort((short) progress);
+        buffer.putShort((short) Math.min(promptIndex, 0xFFFF));
+        buffer.putShort((short) Math.max(Short.MIN_VALUE, Math.min(lives, Short.MAX_VALUE)));
+        buffer.put((byte) state);
+    }
+
+    // returns whether a reported progress and state could have come from a real game
+    public static boolean isValidProgress(int progress, int state) {
+        return progress >= 0 && progress <= PROGRESS_SCALE
+                && state >= 0 && state < GameEngine.State.values().length;
+    }
+
+    // returns how far through the engine's prompt the player is, in units of 1 / PROGRESS_SCALE
+    public static int progressOf(GameEngine engine) {
+        return (int) Math.round(engine.getProgress() * PROGRESS_SCALE);
+    }
+}
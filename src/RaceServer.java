@@ -0,0 +1,683 @@
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+
+/**
+ * For use in the game DinoType (Version 2)
+ *  Runs typing races between any number of players on one thread with a
+ *  non-blocking selector. Players send their progress whenever it changes,
+ *  and once every tick the server sends everyone a single batch of what
+ *  changed since the last one, encoded once and shared by every connection.
+ *  A race starts once enough players have joined, and the next one starts a
+ *  little while after every racer has finished or left.
+ * @author Jay Acosta
+ */
+public class RaceServer implements Runnable {
+
+    private enum Phase {
+        LOBBY,
+        RACING
+    }
+
+    // class constants
+    private static final long TICK_NANOS = 100_000_000L;
+    private static final int COUNTDOWN_MILLIS = 5_000;
+    private static final long LOBBY_NANOS = 5_000_000_000L;
+    private static final long MAX_RACE_NANOS = 15 * 60 * 1_000_000_000L;
+    private static final int READ_BUFFER_BYTES = 1024;
+    // a player this far behind on reading is disconnected instead of buffered forever
+    private static final int MAX_PENDING_BYTES = 4 * 1024 * 1024;
+
+    private final int port;
+    private final int minPlayers;
+    private final int difficulty;
+    private final Supplier<String> promptNames;
+
+    private Selector selector;
+    private volatile boolean running;
+    private volatile int boundPort;
+
+    private final List<Player> players = new ArrayList<>();
+    private int nextPlayerId = 1;
+
+    // what changed since the last tick, sent to everyone at the next one
+    private final List<Player> joinedSinceTick = new ArrayList<>();
+    private final List<Integer> leftSinceTick = new ArrayList<>();
+    private final List<Player> progressSinceTick = new ArrayList<>();
+
+    private Phase phase = Phase.LOBBY;
+    private long lobbyEndNanos;
+    private long raceStartNanos;
+    private final List<Player> finishOrder = new ArrayList<>();
+
+    // where the result of every racer is kept, or null to keep none
+    private volatile SessionStore sessions;
+    private String racePromptName;
+    // counted off the selector thread, reading the prompt may mean reading it from disk
+    private CompletableFuture<Integer> racePromptChars = CompletableFuture.completedFuture(0);
+
+    private long ticks;
+    private long framesReceived;
+    private long bytesSent;
+
+    /**
+     * pre: 0 <= port <= 65535, minPlayers > 0, 0 <= difficulty < GameEngine.DIFFICULTY_COUNT
+     * post: creates a server that races a prompt from promptNames whenever at
+     *  least minPlayers have joined. Port 0 picks any free port.
+     */
+    public RaceServer(int port, int minPlayers, int difficulty, Supplier<String> promptNames) {
+
+        // check preconditions
+        if (minPlayers <= 0) {
+            throw new IllegalArgumentException("a race needs at least one player");
+        }
+        if (difficulty < 0 || difficulty >= GameEngine.DIFFICULTY_COUNT) {
+            throw new IllegalArgumentException("difficulty index is out of bounds");
+        }
+
+        this.port = port;
+        this.minPlayers = minPlayers;
+        this.difficulty = difficulty;
+        this.promptNames = promptNames;
+    }
+
+    /**
+     * pre: the server is not running
+     * post: binds the port and serves races on a new thread
+     */
+    public synchronized void start() throws IOException {
+
+        // check preconditions
+        if (running) {
+            throw new IllegalStateException("the server is already running");
+        }
+
+        selector = Selector.open();
+
+        ServerSocketChannel server = ServerSocketChannel.open();
+        server.bind(new InetSocketAddress(port), 1024);
+        server.configureBlocking(false);
+        server.register(selector, SelectionKey.OP_ACCEPT);
+        boundPort = server.socket().getLocalPort();
+
+        running = true;
+        new Thread(this, "race-server").start();
+    }
+
+    // post: the server closes every connection and stops after the current tick
+    public void stop() {
+        running = false;
+        if (selector != null) {
+            selector.wakeup();
+        }
+    }
+
+    // post: the result of every racer in every race from now on is appended to sessions
+    public void setSessionStore(SessionStore sessions) {
+        this.sessions = sessions;
+    }
+
+    // returns the port the server is listening on
+    public int getPort() {
+        return boundPort;
+    }
+
+    public void run() {
+
+        long nextTick = System.nanoTime() + TICK_NANOS;
+        lobbyEndNanos = System.nanoTime() + LOBBY_NANOS;
+
+        try {
+            while (running) {
+
+                long timeoutMillis = Math.max(1, (nextTick - System.nanoTime()) / 1_000_000);
+                selector.select(timeoutMillis);
+
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    handle(key);
+                }
+
+                long now = System.nanoTime();
+                if (now - nextTick >= 0) {
+                    tick(now);
+                    // skip ticks missed during a stall instead of running them back to back
+                    nextTick = Math.max(nextTick + TICK_NANOS, now);
+                }
+            }
+        } catch (IOException e) {
+            System.out.println("Error while serving races: " + e.getMessage());
+        } finally {
+            closeAll();
+        }
+    }
+
+    private void handle(SelectionKey key) {
+
+        if (!key.isValid()) {
+            return;
+        }
+
+        try {
+            if (key.isAcceptable()) {
+                accept((ServerSocketChannel) key.channel());
+                return;
+            }
+
+            Player player = (Player) key.attachment();
+
+            if (key.isReadable()) {
+                read(player);
+            }
+            if (key.isValid() && key.isWritable()) {
+                flush(player);
+            }
+        } catch (IOException | BufferUnderflowException e) {
+            // the player went away, or sent something that is not the protocol
+            disconnect((Player) key.attachment());
+        }
+    }
+
+    private void accept(ServerSocketChannel server) throws IOException {
+
+        SocketChannel channel;
+        while ((channel = server.accept()) != null) {
+            channel.configureBlocking(false);
+            channel.socket().setTcpNoDelay(true);
+
+            Player player = new Player(channel);
+            player.key = channel.register(selector, SelectionKey.OP_READ, player);
+            players.add(player);
+        }
+    }
+
+    private void read(Player player) throws IOException {
+
+        if (player.channel.read(player.readBuffer) < 0) {
+            disconnect(player);
+            return;
+        }
+
+        ByteBuffer buffer = player.readBuffer;
+        buffer.flip();
+
+        int length;
+        while ((length = RaceProtocol.completeFrameLength(buffer)) >= 0) {
+
+            if (length == 0) {
+                throw new IOException("frame without a type");
+            }
+
+            int end = buffer.position() + 2 + length;
+            buffer.getShort();
+            byte type = buffer.get();
+
+            // a message can never read past its own frame, and anything a newer client
+            // added to the end of it is skipped
+            receive(player, type, buffer.slice(buffer.position(), length - 1));
+            framesReceived++;
+            buffer.position(end);
+        }
+
+        buffer.compact();
+
+        if (!buffer.hasRemaining()) {
+            // a frame longer than the buffer is not the protocol
+            throw new IOException("frame too long");
+        }
+    }
+
+    private void receive(Player player, byte type, ByteBuffer payload) throws IOException {
+
+        if (type == RaceProtocol.JOIN && player.id == 0) {
+
+            player.id = nextPlayerId++;
+            player.name = RaceProtocol.getString(payload);
+            joinedSinceTick.add(player);
+
+            ByteBuffer welcome = ByteBuffer.allocate(RaceProtocol.HEADER_BYTES + 4);
+            int start = RaceProtocol.beginFrame(welcome, RaceProtocol.WELCOME);
+            welcome.putInt(player.id);
+            RaceProtocol.endFrame(welcome, start);
+            welcome.flip();
+            send(player, welcome);
+
+            // everyone announced before, the others hear about this player at the next tick
+            List<Player> roster = new ArrayList<>();
+            for (Player other : players) {
+                if (other.announced) {
+                    roster.add(other);
+                }
+            }
+            for (ByteBuffer frame : encodeJoined(roster)) {
+                send(player, frame);
+            }
+
+        } else if (type == RaceProtocol.PROGRESS && player.id != 0) {
+
+            int progress = payload.getShort() & 0xFFFF;
+            int promptIndex = payload.getShort() & 0xFFFF;
+            int lives = payload.getShort();
+            int state = payload.get() & 0xFF;
+
+            // every player draws the state and the results are saved from the progress, so a bad one is not passed on
+            if (!RaceProtocol.isValidProgress(progress, state)) {
+                throw new IOException("progress " + progress + " in state " + state + " is not a game");
+            }
+
+            player.progress = progress;
+            player.promptIndex = promptIndex;
+            player.lives = lives;
+            player.state = (byte) state;
+
+            if (!player.changed) {
+                player.changed = true;
+                progressSinceTick.add(player);
+            }
+
+            if (player.racing && player.finishNanos == 0 && isOver(player.state)) {
+                player.finishNanos = System.nanoTime();
+                finishOrder.add(player);
+            }
+
+        } else if (type != RaceProtocol.JOIN && type != RaceProtocol.PROGRESS) {
+            throw new IOException("unknown message " + type);
+        }
+    }
+
+    // post: sends this tick's changes to every player and moves the race along
+    private void tick(long now) {
+
+        ticks++;
+        List<ByteBuffer> frames = new ArrayList<>();
+
+        if (!joinedSinceTick.isEmpty()) {
+            frames.addAll(encodeJoined(joinedSinceTick));
+            for (Player player : joinedSinceTick) {
+                player.announced = true;
+            }
+            joinedSinceTick.clear();
+        }
+
+        if (!leftSinceTick.isEmpty()) {
+            frames.addAll(encodeLeft(leftSinceTick));
+            leftSinceTick.clear();
+        }
+
+        if (!progressSinceTick.isEmpty()) {
+            frames.addAll(encodeProgress(progressSinceTick));
+            for (Player player : progressSinceTick) {
+                player.changed = false;
+            }
+            progressSinceTick.clear();
+        }
+
+        ByteBuffer raceFrame = updateRace(now);
+        if (raceFrame != null) {
+            frames.add(raceFrame);
+        }
+
+        if (frames.isEmpty()) {
+            return;
+        }
+
+        // every player shares the same frames, each with its own position
+        for (Player player : new ArrayList<>(players)) {
+            if (player.id == 0) {
+                continue;
+            }
+            for (ByteBuffer frame : frames) {
+                send(player, frame.duplicate());
+            }
+        }
+    }
+
+    // returns the frame that starts or ends a race at this tick, or null if neither happens
+    private ByteBuffer updateRace(long now) {
+
+        if (phase == Phase.LOBBY) {
+
+            if (now - lobbyEndNanos < 0 || joinedCount() < minPlayers) {
+                return null;
+            }
+
+            String promptName = promptNames.get();
+
+            phase = Phase.RACING;
+            raceStartNanos = now + COUNTDOWN_MILLIS * 1_000_000L;
+            finishOrder.clear();
+            racePromptName = promptName;
+            racePromptChars = sessions == null ? CompletableFuture.completedFuture(0)
+                    : CompletableFuture.supplyAsync(() -> charCount(FileManager.getPrompt(promptName)))
+                            .exceptionally(e -> 0);
+
+            for (Player player : players) {
+                player.racing = player.id != 0;
+                player.finishNanos = 0;
+                player.progress = 0;
+                player.promptIndex = 0;
+                player.state = (byte) GameEngine.State.WAITING.ordinal();
+            }
+
+            ByteBuffer frame = ByteBuffer.allocate(RaceProtocol.HEADER_BYTES + 2 + RaceProtocol.MAX_PROMPT_NAME_BYTES + 5);
+            int start = RaceProtocol.beginFrame(frame, RaceProtocol.RACE_START);
+            RaceProtocol.putString(frame, promptName, RaceProtocol.MAX_PROMPT_NAME_BYTES);
+            frame.put((byte) difficulty);
+            frame.putInt(COUNTDOWN_MILLIS);
+            RaceProtocol.endFrame(frame, start);
+            frame.flip();
+
+            System.out.println("Race started on " + promptName + " with " + joinedCount() + " players");
+            return frame;
+        }
+
+        boolean everyoneDone = true;
+        for (Player player : players) {
+            if (player.racing && player.finishNanos == 0) {
+                everyoneDone = false;
+                break;
+            }
+        }
+
+        if (!everyoneDone && now - raceStartNanos < MAX_RACE_NANOS) {
+            return null;
+        }
+
+        // winners in the order they finished, then everyone else by how far they got
+        List<Player> ranking = new ArrayList<>();
+        for (Player player : finishOrder) {
+            if (player.state == GameEngine.State.WON.ordinal()) {
+                ranking.add(player);
+            }
+        }
+
+        List<Player> others = new ArrayList<>();
+        for (Player player : players) {
+            if (player.racing && (player.finishNanos == 0 || player.state != GameEngine.State.WON.ordinal())) {
+                others.add(player);
+            }
+        }
+        others.sort(Comparator.comparingInt((Player player) -> player.progress).reversed());
+        ranking.addAll(others);
+
+        int count = Math.min(ranking.size(), RaceProtocol.MAX_BATCH_ENTRIES);
+        ByteBuffer frame = ByteBuffer.allocate(RaceProtocol.HEADER_BYTES + 2 + 4 * count);
+        int start = RaceProtocol.beginFrame(frame, RaceProtocol.RACE_OVER);
+        frame.putShort((short) count);
+        for (int i = 0; i < count; i++) {
+            frame.putInt(ranking.get(i).id);
+        }
+        RaceProtocol.endFrame(frame, start);
+        frame.flip();
+
+        saveResults(ranking, now);
+
+        for (Player player : players) {
+            player.racing = false;
+        }
+
+        phase = Phase.LOBBY;
+        lobbyEndNanos = now + LOBBY_NANOS;
+
+        System.out.println("Race over after " + (now - raceStartNanos) / 1_000_000 + " ms, "
+                + finishOrder.size() + " players finished");
+        return frame;
+    }
+
+    private List<ByteBuffer> encodeJoined(List<Player> joined) {
+
+        List<ByteBuffer> frames = new ArrayList<>();
+
+        for (int from = 0; from < joined.size(); from += RaceProtocol.MAX_BATCH_ENTRIES) {
+
+            int to = Math.min(joined.size(), from + RaceProtocol.MAX_BATCH_ENTRIES);
+            ByteBuffer frame = ByteBuffer.allocate(
+                    RaceProtocol.HEADER_BYTES + 2 + RaceProtocol.MAX_JOINED_ENTRY_BYTES * (to - from));
+            int start = RaceProtocol.beginFrame(frame, RaceProtocol.PLAYERS_JOINED);
+
+            frame.putShort((short) (to - from));
+            for (int i = from; i < to; i++) {
+                frame.putInt(joined.get(i).id);
+                RaceProtocol.putString(frame, joined.get(i).name, RaceProtocol.MAX_NAME_BYTES);
+            }
+
+            RaceProtocol.endFrame(frame, start);
+            frame.flip();
+            frames.add(frame);
+        }
+
+        return frames;
+    }
+
+    private List<ByteBuffer> encodeLeft(List<Integer> left) {
+
+        List<ByteBuffer> frames = new ArrayList<>();
+
+        for (int from = 0; from < left.size(); from += RaceProtocol.MAX_BATCH_ENTRIES) {
+
+            int to = Math.min(left.size(), from + RaceProtocol.MAX_BATCH_ENTRIES);
+            ByteBuffer frame = ByteBuffer.allocate(RaceProtocol.HEADER_BYTES + 2 + 4 * (to - from));
+            int start = RaceProtocol.beginFrame(frame, RaceProtocol.PLAYERS_LEFT);
+
+            frame.putShort((short) (to - from));
+            for (int i = from; i < to; i++) {
+                frame.putInt(left.get(i));
+            }
+
+            RaceProtocol.endFrame(frame, start);
+            frame.flip();
+            frames.add(frame);
+        }
+
+        return frames;
+    }
+
+    private List<ByteBuffer> encodeProgress(List<Player> changed) {
+
+        List<ByteBuffer> frames = new ArrayList<>();
+
+        for (int from = 0; from < changed.size(); from += RaceProtocol.MAX_BATCH_ENTRIES) {
+
+            int to = Math.min(changed.size(), from + RaceProtocol.MAX_BATCH_ENTRIES);
+            ByteBuffer frame = ByteBuffer.allocate(
+                    RaceProtocol.HEADER_BYTES + 2 + RaceProtocol.PROGRESS_ENTRY_BYTES * (to - from));
+            int start = RaceProtocol.beginFrame(frame, RaceProtocol.PROGRESS_BATCH);
+
+            frame.putShort((short) (to - from));
+            for (int i = from; i < to; i++) {
+                Player player = changed.get(i);
+                frame.putInt(player.id);
+                RaceProtocol.putProgress(frame, player.progress, player.promptIndex, player.lives, player.state);
+            }
+
+            RaceProtocol.endFrame(frame, start);
+            frame.flip();
+            frames.add(frame);
+        }
+
+        return frames;
+    }
+
+    /**
+     * pre: the race is over at now
+     * post: appends the result of every racer to the session store, if there is
+     *  one. The server only sees progress, so words per minute is worked out
+     *  from how much of the prompt each racer typed and the error rate is unknown.
+     */
+    private void saveResults(List<Player> ranking, long now) {
+
+        SessionStore store = sessions;
+        if (store == null) {
+            return;
+        }
+
+        long timeMillis = System.currentTimeMillis();
+        // counting takes far less than a race, a prompt still being counted scores no words
+        int promptChars = racePromptChars.getNow(0);
+
+        for (Player player : ranking) {
+
+            long duration = Math.max(1, (player.finishNanos != 0 ? player.finishNanos : now) - raceStartNanos);
+            double typedChars = (double) player.progress / RaceProtocol.PROGRESS_SCALE * promptChars;
+            double wordsPerMinute = typedChars / 5 * 60e9 / duration;
+
+            store.append(new SessionResult(player.name, racePromptName, difficulty,
+                    player.state == GameEngine.State.WON.ordinal(), timeMillis, (int) (duration / 1_000_000L),
+                    (float) wordsPerMinute, Float.NaN, 0, Float.NaN));
+        }
+    }
+
+    // returns the number of characters in every segment of the prompt
+    private static int charCount(PromptSequence prompt) {
+
+        int count = 0;
+        for (int i = 0; i < prompt.size(); i++) {
+            count += prompt.getSegment(i).length();
+        }
+
+        return count;
+    }
+
+    // post: queues the frame behind anything the player has not been sent yet and writes what it can
+    private void send(Player player, ByteBuffer frame) {
+
+        if (!player.key.isValid()) {
+            return;
+        }
+
+        player.pending.add(frame);
+        player.pendingBytes += frame.remaining();
+
+        if (player.pendingBytes > MAX_PENDING_BYTES) {
+            System.out.println("Disconnecting player " + player.id + ", it is not keeping up");
+            disconnect(player);
+            return;
+        }
+
+        try {
+            flush(player);
+        } catch (IOException e) {
+            disconnect(player);
+        }
+    }
+
+    private void flush(Player player) throws IOException {
+
+        while (!player.pending.isEmpty()) {
+
+            ByteBuffer frame = player.pending.peek();
+            int written = player.channel.write(frame);
+            player.pendingBytes -= written;
+            bytesSent += written;
+
+            if (frame.hasRemaining()) {
+                // the socket is full, carry on once it drains
+                player.key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+                return;
+            }
+
+            player.pending.poll();
+        }
+
+        player.key.interestOps(SelectionKey.OP_READ);
+    }
+
+    private void disconnect(Player player) {
+
+        if (player == null || !players.remove(player)) {
+            return;
+        }
+
+        player.key.cancel();
+        try {
+            player.channel.close();
+        } catch (IOException e) {
+            // already closed
+        }
+
+        if (player.id != 0) {
+            if (!joinedSinceTick.remove(player)) {
+                leftSinceTick.add(player.id);
+            }
+            progressSinceTick.remove(player);
+        }
+    }
+
+    private void closeAll() {
+
+        for (Player player : new ArrayList<>(players)) {
+            disconnect(player);
+        }
+
+        try {
+            for (SelectionKey key : selector.keys()) {
+                key.channel().close();
+            }
+            selector.close();
+        } catch (IOException e) {
+            System.out.println("Error while closing the race server");
+        }
+
+        System.out.println("Race server stopped after " + ticks + " ticks, " + framesReceived
+                + " messages received and " + bytesSent + " bytes sent");
+    }
+
+    private int joinedCount() {
+
+        int count = 0;
+        for (Player player : players) {
+            if (player.id != 0) {
+                count++;
+            }
+        }
+
+        return count;
+    }
+
+    private static boolean isOver(int state) {
+        return state == GameEngine.State.WON.ordinal() || state == GameEngine.State.LOST.ordinal();
+    }
+
+    /**
+     * A connection to the server, which becomes a player
+     * once it has sent JOIN
+     */
+    private static class Player {
+
+        private final SocketChannel channel;
+        private SelectionKey key;
+        private final ByteBuffer readBuffer = ByteBuffer.allocate(READ_BUFFER_BYTES);
+        private final ArrayDeque<ByteBuffer> pending = new ArrayDeque<>();
+        private int pendingBytes;
+
+        private int id; // 0 until the player joins
+        private String name;
+        private boolean announced; // everyone has been told about this player
+
+        private boolean racing;
+        private boolean changed;
+        private int progress;
+        private int promptIndex;
+        private int lives;
+        private byte state;
+        private long finishNanos;
+
+        private Player(SocketChannel channel) {
+            this.channel = channel;
+        }
+    }
+}
@@ -0,0 +1,99 @@
+import java.util.Comparator;
+
+/**
+ * For use in the game DinoType (Version 2)
+ *  The result of one finished game, as kept by a SessionStore.
+ *  Stats the game could not measure, such as the error rate of a racer seen
+ *  only through the race server, are NaN.
+ * @author Jay Acosta
+ */
+public final class SessionResult {
+
+    // games that were won before games that were lost, then the fastest first, then the earliest first
+    public static final Comparator<SessionResult> BEST_FIRST = Comparator
+            .comparing(SessionResult::isWon).reversed()
+            .thenComparing(Comparator.comparingDouble(SessionResult::getWordsPerMinute).reversed())
+            .thenComparingLong(SessionResult::getTimeMillis);
+
+    private final String playerName;
+    private final String promptName;
+    private final int difficulty;
+    private final boolean won;
+    private final long timeMillis;
+    private final int durationMillis;
+    private final float wordsPerMinute;
+    private final float errorRate;
+    private final int keyCount;
+    private final float medianKeyMillis;
+
+    /**
+     * pre: playerName != null, promptName != null
+     * post: creates a result of a game that ended at timeMillis since the epoch
+     */
+    public SessionResult(String playerName, String promptName, int difficulty, boolean won, long timeMillis,
+                         int durationMillis, float wordsPerMinute, float errorRate, int keyCount,
+                         float medianKeyMillis) {
+
+        // check preconditions
+        if (playerName == null || promptName == null) {
+            throw new IllegalArgumentException("results need a player and a prompt");
+        }
+
+        this.playerName = playerName;
+        this.promptName = promptName;
+        this.difficulty = difficulty;
+        this.won = won;
+        this.timeMillis = timeMillis;
+        this.durationMillis = durationMillis;
+        this.wordsPerMinute = wordsPerMinute;
+        this.errorRate = errorRate;
+        this.keyCount = keyCount;
+        this.medianKeyMillis = medianKeyMillis;
+    }
+
+    public String getPlayerName() {
+        return playerName;
+    }
+
+    public String getPromptName() {
+        return promptName;
+    }
+
+    public int getDifficulty() {
+        return difficulty;
+    }
+
+    // returns true if the player typed the whole prompt before running out of laps
+    public boolean isWon() {
+        return won;
+    }
+
+    public long getTimeMillis() {
+        return timeMillis;
+    }
+
+    public int getDurationMillis() {
+        return durationMillis;
+    }
+
+    public float getWordsPerMinute() {
+        return wordsPerMinute;
+    }
+
+    public float getErrorRate() {
+        return errorRate;
+    }
+
+    public int getKeyCount() {
+        return keyCount;
+    }
+
+    public float getMedianKeyMillis() {
+        return medianKeyMillis;
+    }
+
+    public String toString() {
+        return String.format("%s on %s (difficulty %d): %s, %.1f WPM in %.1f s",
+                playerName, promptName, difficulty, won ? "won" : "lost", wordsPerMinute, durationMillis / 1000.0);
+    }
+}
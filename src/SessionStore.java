@@ -0,0 +1,471 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+/**
+ * For use in the game DinoType (Version 2)
+ *  Keeps the results of finished games in a memory mapped log that is only
+ *  ever appended to. Each record is its length, the CRC32 of its body and the
+ *  body, so after a crash the log is read up to the last whole record and
+ *  anything torn after it is written over.
+ *
+ *  Results are queued by append, which never blocks, and written in batches by
+ *  one background thread. Once the log grows past a limit the same thread
+ *  compacts it down to the best KEEP_BEST results of every prompt and
+ *  difficulty plus the KEEP_RECENT most recent results.
+ * @author Jay Acosta
+ */
+public class SessionStore implements Runnable {
+
+    // class constants
+    private static final int MAGIC = 0x44534553; // "DSES"
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 8;
+    private static final int RECORD_HEADER_BYTES = 8;
+    private static final int MAX_BODY_BYTES = 1024;
+    private static final int MAX_NAME_BYTES = 256;
+
+    private static final long INITIAL_MAPPED_BYTES = 1 << 20;
+    private static final long COMPACT_BYTES = 8 << 20;
+    public static final int KEEP_BEST = 10;
+    public static final int KEEP_RECENT = 1000;
+
+    private static final int QUEUE_CAPACITY = 1 << 16;
+    private static final int MAX_BATCH = 4096;
+
+    private final Path path;
+    private final BlockingQueue<SessionResult> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+    private final Thread writer;
+    private final List<Consumer<SessionResult>> listeners = new CopyOnWriteArrayList<>();
+    private volatile boolean closed;
+
+    // guarded by this
+    private FileChannel channel;
+    private MappedByteBuffer log;
+    private int end; // where the next record goes
+    private long compactAt = COMPACT_BYTES;
+    private int recordCount;
+
+    private volatile long written;
+    private final AtomicLong dropped = new AtomicLong();
+
+    private SessionStore(Path path) {
+        this.path = path;
+        this.writer = new Thread(this, "session-store");
+        this.writer.setDaemon(true);
+    }
+
+    /**
+     * pre: path != null
+     * post: opens the log at path, creating it if needed, recovers every whole
+     *  record in it and starts the writer thread. Results still queued when the
+     *  game exits are written before it does.
+     */
+    public static SessionStore open(Path path) throws IOException {
+
+        SessionStore store = new SessionStore(path);
+
+        synchronized (store) {
+            store.map(Math.max(INITIAL_MAPPED_BYTES, Files.exists(path) ? Files.size(path) : 0));
+            store.recover();
+        }
+
+        store.writer.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(store::close, "session-store-shutdown"));
+
+        return store;
+    }
+
+    /**
+     * pre: result != null
+     * post: queues the result to be written and returns true, or returns false
+     *  and drops it if the writer is too far behind. Never blocks.
+     */
+    public boolean append(SessionResult result) {
+
+        if (closed || !queue.offer(result)) {
+            dropped.incrementAndGet();
+            return false;
+        }
+
+        for (Consumer<SessionResult> listener : listeners) {
+            listener.accept(result);
+        }
+
+        return true;
+    }
+
+    // post: the listener is given every result appended from now on, on the thread that appended it
+    public void addListener(Consumer<SessionResult> listener) {
+        listeners.add(listener);
+    }
+
+    // returns every result in the log, oldest first, not counting results still queued
+    public synchronized List<SessionResult> readAll() {
+
+        List<SessionResult> results = new ArrayList<>(recordCount);
+        ByteBuffer view = log.duplicate();
+        int position = HEADER_BYTES;
+
+        while (position < end) {
+            int length = view.getInt(position);
+            view.position(position + RECORD_HEADER_BYTES);
+            results.add(readBody(view));
+            position += RECORD_HEADER_BYTES + length;
+        }
+
+        return results;
+    }
+
+    public long getWrittenCount() {
+        return written;
+    }
+
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+
+    // returns the number of bytes of records in the log
+    public synchronized int getLogBytes() {
+        return end - HEADER_BYTES;
+    }
+
+    /**
+     * pre: none
+     * post: writes everything queued so far, flushes the log to disk and stops
+     *  the writer thread. Results appended later are dropped.
+     */
+    public void close() {
+
+        if (closed) {
+            return;
+        }
+        closed = true;
+
+        try {
+            writer.join(5_000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        synchronized (this) {
+            try {
+                log.force();
+                channel.close();
+            } catch (IOException e) {
+                System.out.println("Error while closing " + path.getFileName());
+            }
+        }
+    }
+
+    public void run() {
+
+        List<SessionResult> batch = new ArrayList<>(MAX_BATCH);
+
+        while (!closed || !queue.isEmpty()) {
+
+            try {
+                SessionResult first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+            } catch (InterruptedException e) {
+                continue;
+            }
+
+            queue.drainTo(batch, MAX_BATCH - 1);
+
+            synchronized (this) {
+                try {
+                    for (SessionResult result : batch) {
+                        write(result);
+                    }
+                    log.force();
+
+                    if (end >= compactAt) {
+                        compact();
+                    }
+                } catch (IOException e) {
+                    System.out.println("Error while writing to " + path.getFileName() + ": " + e.getMessage());
+                }
+            }
+
+            written += batch.size();
+            batch.clear();
+        }
+    }
+
+    // post: appends one record, growing the mapping if the log is full
+    private void write(SessionResult result) throws IOException {
+
+        byte[] player = nameBytes(result.getPlayerName());
+        byte[] prompt = nameBytes(result.getPromptName());
+        int length = bodyLength(player.length, prompt.length);
+
+        if (end + RECORD_HEADER_BYTES + length > log.capacity()) {
+            map(log.capacity() * 2L);
+        }
+
+        end = putRecord(log, end, result, player, prompt);
+        recordCount++;
+    }
+
+    /**
+     * pre: target has room for the record at position
+     * post: writes the record at position and returns where the next one goes
+     */
+    private static int putRecord(ByteBuffer target, int position, SessionResult result, byte[] player,
+            byte[] prompt) {
+
+        int length = bodyLength(player.length, prompt.length);
+        int bodyStart = position + RECORD_HEADER_BYTES;
+
+        target.position(bodyStart);
+        target.putLong(result.getTimeMillis());
+        target.putInt(result.getDurationMillis());
+        target.put((byte) result.getDifficulty());
+        target.put((byte) (result.isWon() ? 1 : 0));
+        target.putFloat(result.getWordsPerMinute());
+        target.putFloat(result.getErrorRate());
+        target.putInt(result.getKeyCount());
+        target.putFloat(result.getMedianKeyMillis());
+        target.putShort((short) player.length);
+        target.put(player);
+        target.putShort((short) prompt.length);
+        target.put(prompt);
+
+        // the length goes in last, a record is not part of the log until it is whole
+        target.putInt(position + 4, checksum(target, bodyStart, length));
+        target.putInt(position, length);
+
+        return bodyStart + length;
+    }
+
+    // post: finds the end of the last whole record and clears anything torn after it
+    private void recover() throws IOException {
+
+        if (log.getInt(0) != MAGIC || log.getInt(4) != VERSION) {
+
+            if (log.getInt(0) != 0) {
+                System.out.println(path.getFileName() + " is not a session log of this version, starting over");
+            }
+
+            clear(0);
+            log.putInt(0, MAGIC);
+            log.putInt(4, VERSION);
+            end = HEADER_BYTES;
+            return;
+        }
+
+        int position = HEADER_BYTES;
+        recordCount = 0;
+
+        while (position + RECORD_HEADER_BYTES <= log.capacity()) {
+
+            int length = log.getInt(position);
+            if (length <= 0 || length > MAX_BODY_BYTES || position + RECORD_HEADER_BYTES + length > log.capacity()
+                    || log.getInt(position + 4) != checksum(log, position + RECORD_HEADER_BYTES, length)) {
+                break;
+            }
+
+            position += RECORD_HEADER_BYTES + length;
+            recordCount++;
+        }
+
+        end = position;
+
+        if (end + 4 <= log.capacity() && log.getInt(end) != 0) {
+            System.out.println("Recovered " + recordCount + " results from " + path.getFileName()
+                    + ", dropping a record torn by a crash");
+            clear(end);
+        }
+    }
+
+    /**
+     * pre: holding this
+     * post: rewrites the log with only the best results of every prompt and
+     *  difficulty and the most recent results, in their original order
+     */
+    private void compact() throws IOException {
+
+        List<SessionResult> results = readAll();
+        boolean[] keep = new boolean[results.size()];
+
+        for (int i = Math.max(0, results.size() - KEEP_RECENT); i < results.size(); i++) {
+            keep[i] = true;
+        }
+
+        // the KEEP_BEST best results of every prompt and difficulty, worst of them on top
+        Map<String, PriorityQueue<Integer>> best = new HashMap<>();
+        for (int i = 0; i < results.size(); i++) {
+
+            SessionResult result = results.get(i);
+            PriorityQueue<Integer> top = best.computeIfAbsent(result.getPromptName() + '\0' + result.getDifficulty(),
+                    key -> new PriorityQueue<>((a, b) -> SessionResult.BEST_FIRST.compare(
+                            results.get(b), results.get(a))));
+
+            top.add(i);
+            if (top.size() > KEEP_BEST) {
+                top.poll();
+            }
+        }
+
+        for (PriorityQueue<Integer> top : best.values()) {
+            for (int index : top) {
+                keep[index] = true;
+            }
+        }
+
+        List<SessionResult> kept = new ArrayList<>();
+        long keptBytes = HEADER_BYTES;
+        for (int i = 0; i < results.size(); i++) {
+            if (keep[i]) {
+                kept.add(results.get(i));
+                keptBytes += RECORD_HEADER_BYTES + bodyLength(results.get(i));
+            }
+        }
+
+        // write the compacted log next to the old one and swap it in whole, so a
+        // crash part way through leaves the old log as it was. The new log is
+        // written without mapping it, a mapped file cannot be moved everywhere.
+        ByteBuffer compacted = ByteBuffer.allocate((int) keptBytes);
+        compacted.putInt(0, MAGIC);
+        compacted.putInt(4, VERSION);
+
+        int keptEnd = HEADER_BYTES;
+        for (SessionResult result : kept) {
+            keptEnd = putRecord(compacted, keptEnd, result, nameBytes(result.getPlayerName()),
+                    nameBytes(result.getPromptName()));
+        }
+
+        // a compaction that fails is not tried again until the log has doubled
+        compactAt = 2L * end;
+
+        Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+        Files.deleteIfExists(temp);
+
+        try (FileChannel tempChannel = FileChannel.open(temp, StandardOpenOption.CREATE_NEW,
+                StandardOpenOption.WRITE)) {
+            compacted.clear();
+            while (compacted.hasRemaining()) {
+                tempChannel.write(compacted);
+            }
+            tempChannel.force(true);
+        } catch (IOException e) {
+            Files.deleteIfExists(temp);
+            throw e;
+        }
+
+        // until the move has happened, results keep going into the old log
+        log.force();
+        channel.close();
+
+        try {
+            Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            // the old mapping is still whole, only its channel is needed back to grow it
+            channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            Files.deleteIfExists(temp);
+            throw e;
+        }
+
+        channel = null;
+        map(Math.max(INITIAL_MAPPED_BYTES, Long.highestOneBit(keptBytes) * 2));
+        end = keptEnd;
+        recordCount = kept.size();
+
+        compactAt = Math.max(COMPACT_BYTES, 2L * end);
+        System.out.println("Compacted " + path.getFileName() + " from " + results.size() + " to "
+                + kept.size() + " results");
+    }
+
+    // post: maps the first size bytes of the log, growing the file if it is smaller
+    private void map(long size) throws IOException {
+
+        if (channel == null || !channel.isOpen()) {
+            channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE);
+        }
+
+        // check preconditions
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException("the session log is full");
+        }
+
+        MappedByteBuffer grown = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        if (log != null) {
+            log.force();
+        }
+        log = grown;
+    }
+
+    private static int bodyLength(SessionResult result) {
+        return bodyLength(nameBytes(result.getPlayerName()).length, nameBytes(result.getPromptName()).length);
+    }
+
+    private static int bodyLength(int playerBytes, int promptBytes) {
+        return 8 + 4 + 1 + 1 + 4 + 4 + 4 + 4 + 2 + playerBytes + 2 + promptBytes;
+    }
+
+    private SessionResult readBody(ByteBuffer view) {
+
+        long timeMillis = view.getLong();
+        int durationMillis = view.getInt();
+        int difficulty = view.get();
+        boolean won = view.get() != 0;
+        float wordsPerMinute = view.getFloat();
+        float errorRate = view.getFloat();
+        int keyCount = view.getInt();
+        float medianKeyMillis = view.getFloat();
+        String player = readName(view);
+        String prompt = readName(view);
+
+        return new SessionResult(player, prompt, difficulty, won, timeMillis, durationMillis, wordsPerMinute,
+                errorRate, keyCount, medianKeyMillis);
+    }
+
+    private static String readName(ByteBuffer view) {
+        byte[] bytes = new byte[view.getShort()];
+        view.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static byte[] nameBytes(String name) {
+        byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+        return bytes.length <= MAX_NAME_BYTES ? bytes : Arrays.copyOf(bytes, MAX_NAME_BYTES);
+    }
+
+    private static int checksum(ByteBuffer buffer, int start, int length) {
+        CRC32 crc = new CRC32();
+        crc.update(buffer.slice(start, length));
+        return (int) crc.getValue();
+    }
+
+    // post: zeroes the log from position to the end of the mapping
+    private void clear(int position) {
+        ByteBuffer zeros = ByteBuffer.allocate(8192);
+        for (int i = position; i < log.capacity(); i += zeros.capacity()) {
+            log.put(i, zeros, 0, Math.min(zeros.capacity(), log.capacity() - i));
+        }
+    }
+}
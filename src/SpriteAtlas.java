@@ -0,0 +1,231 @@
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.GraphicsEnvironment;
+import java.awt.Rectangle;
+import java.awt.Transparency;
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * For use in the game DinoType (Version 2)
+ *  The frames of an animation packed into one image in the display's own
+ *  pixel format, so drawing a frame is a plain copy out of a single surface
+ *  instead of a format conversion per frame. Frames are looked up by index
+ *  and each frame can stay on screen for its own amount of time.
+ * @author Jay Acosta
+ */
+public class SpriteAtlas {
+
+    // class constants
+    public static final long DEFAULT_FRAME_NANOS = 100_000_000L;
+    // keep the atlas inside the texture size every graphics card supports
+    private static final int MAX_ATLAS_WIDTH = 4096;
+
+    private final BufferedImage atlas;
+
+    // frame i is the area (frameX[i], frameY[i], frameWidth[i], frameHeight[i]) of the atlas
+    private final int[] frameX;
+    private final int[] frameY;
+    private final int[] frameWidth;
+    private final int[] frameHeight;
+
+    // frame i is shown until frameEndNanos[i] into each cycle of the animation
+    private final long[] frameEndNanos;
+
+    private SpriteAtlas(BufferedImage atlas, int[] frameX, int[] frameY, int[] frameWidth, int[] frameHeight,
+                        long[] frameEndNanos) {
+        this.atlas = atlas;
+        this.frameX = frameX;
+        this.frameY = frameY;
+        this.frameWidth = frameWidth;
+        this.frameHeight = frameHeight;
+        this.frameEndNanos = frameEndNanos;
+    }
+
+    // returns an atlas without frames, which draws nothing
+    public static SpriteAtlas empty() {
+        return new SpriteAtlas(null, new int[0], new int[0], new int[0], new int[0], new long[0]);
+    }
+
+    /**
+     * pre: frames and durations have the same length, every duration > 0
+     * post: packs the frames into rows of one compatible image
+     */
+    public static SpriteAtlas pack(List<BufferedImage> frames, long[] durationNanos) {
+
+        // check preconditions
+        if (frames.size() != durationNanos.length) {
+            throw new IllegalArgumentException("every frame needs a duration");
+        }
+
+        int count = frames.size();
+        if (count == 0) {
+            return empty();
+        }
+
+        int[] frameX = new int[count];
+        int[] frameY = new int[count];
+        int[] frameWidth = new int[count];
+        int[] frameHeight = new int[count];
+
+        // place frames left to right, starting a new row when one is full
+        int x = 0;
+        int y = 0;
+        int rowHeight = 0;
+        int atlasWidth = 0;
+        boolean opaque = true;
+
+        for (int i = 0; i < count; i++) {
+
+            BufferedImage frame = frames.get(i);
+
+            if (x > 0 && x + frame.getWidth() > MAX_ATLAS_WIDTH) {
+                x = 0;
+                y += rowHeight;
+                rowHeight = 0;
+            }
+
+            frameX[i] = x;
+            frameY[i] = y;
+            frameWidth[i] = frame.getWidth();
+            frameHeight[i] = frame.getHeight();
+
+            x += frame.getWidth();
+            rowHeight = Math.max(rowHeight, frame.getHeight());
+            atlasWidth = Math.max(atlasWidth, x);
+            opaque &= frame.getTransparency() == Transparency.OPAQUE;
+        }
+
+        BufferedImage atlas = createCompatibleImage(atlasWidth, y + rowHeight,
+                opaque ? Transparency.OPAQUE : Transparency.TRANSLUCENT);
+
+        Graphics2D graphics = atlas.createGraphics();
+        try {
+            for (int i = 0; i < count; i++) {
+                graphics.drawImage(frames.get(i), frameX[i], frameY[i], null);
+            }
+        } finally {
+            graphics.dispose();
+        }
+
+        return new SpriteAtlas(atlas, frameX, frameY, frameWidth, frameHeight, cumulative(durationNanos));
+    }
+
+    /**
+     * pre: sheet != null, frameWidth > 0, frameHeight > 0, durationNanos > 0
+     * post: cuts the sheet into frames of the given size, left to right and top to
+     *  bottom, each shown for durationNanos
+     */
+    public static SpriteAtlas fromSheet(BufferedImage sheet, int frameWidth, int frameHeight, long durationNanos) {
+
+        // check preconditions
+        if (frameWidth <= 0 || frameHeight <= 0) {
+            throw new IllegalArgumentException("sprite sheet frames must have a size");
+        }
+
+        int columns = sheet.getWidth() / frameWidth;
+        int rows = sheet.getHeight() / frameHeight;
+        BufferedImage[] frames = new BufferedImage[columns * rows];
+
+        for (int row = 0; row < rows; row++) {
+            for (int column = 0; column < columns; column++) {
+                frames[row * columns + column] = sheet.getSubimage(column * frameWidth, row * frameHeight,
+                        frameWidth, frameHeight);
+            }
+        }
+
+        long[] durations = new long[frames.length];
+        Arrays.fill(durations, durationNanos);
+
+        return pack(Arrays.asList(frames), durations);
+    }
+
+    public int size() {
+        return frameX.length;
+    }
+
+    /**
+     * pre: elapsedNanos >= 0
+     * post: returns the index of the frame shown after the animation has run
+     *  for elapsedNanos, looping forever
+     */
+    public int frameAt(long elapsedNanos) {
+
+        if (frameEndNanos.length == 0) {
+            return 0;
+        }
+
+        long time = elapsedNanos % frameEndNanos[frameEndNanos.length - 1];
+        int index = Arrays.binarySearch(frameEndNanos, time);
+
+        // a time equal to a frame's end already belongs to the next frame
+        return index >= 0 ? index + 1 : -index - 1;
+    }
+
+    // returns the area the frame covers when drawn at (x, y)
+    public Rectangle getBounds(int frame, int x, int y) {
+
+        if (frame >= size()) {
+            return new Rectangle(x, y, 0, 0);
+        }
+
+        return new Rectangle(x, y, frameWidth[frame], frameHeight[frame]);
+    }
+
+    // post: draws the frame with its top left corner at (x, y)
+    public void draw(Graphics graphics, int frame, int x, int y) {
+
+        if (frame >= size()) {
+            return;
+        }
+
+        int left = frameX[frame];
+        int top = frameY[frame];
+        graphics.drawImage(atlas, x, y, x + frameWidth[frame], y + frameHeight[frame],
+                left, top, left + frameWidth[frame], top + frameHeight[frame], null);
+    }
+
+    // post: draws the frame scaled to width by height with its top left corner at (x, y)
+    public void draw(Graphics graphics, int frame, int x, int y, int width, int height) {
+
+        if (frame >= size()) {
+            return;
+        }
+
+        int left = frameX[frame];
+        int top = frameY[frame];
+        graphics.drawImage(atlas, x, y, x + width, y + height,
+                left, top, left + frameWidth[frame], top + frameHeight[frame], null);
+    }
+
+    private static long[] cumulative(long[] durationNanos) {
+
+        long[] ends = new long[durationNanos.length];
+        long total = 0;
+
+        for (int i = 0; i < durationNanos.length; i++) {
+
+            if (durationNanos[i] <= 0) {
+                throw new IllegalArgumentException("frame durations must be positive");
+            }
+
+            total += durationNanos[i];
+            ends[i] = total;
+        }
+
+        return ends;
+    }
+
+    // returns an image in the screen's pixel format, or a plain one when there is no screen
+    private static BufferedImage createCompatibleImage(int width, int height, int transparency) {
+
+        if (GraphicsEnvironment.isHeadless()) {
+            return new BufferedImage(width, height, transparency == Transparency.OPAQUE
+                    ? BufferedImage.TYPE_INT_RGB : BufferedImage.TYPE_INT_ARGB);
+        }
+
+        return GraphicsEnvironment.getLocalGraphicsEnvironment().getDefaultScreenDevice()
+                .getDefaultConfiguration().createCompatibleImage(width, height, transparency);
+    }
+}
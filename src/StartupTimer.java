@@ -0,0 +1,45 @@
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * For use in the game DinoType (Version 2)
+ *  Times the phases of starting the game. Every phase is measured from the
+ *  moment the JVM started, so the report includes the time the JVM itself
+ *  took to get to main. Phases can finish on any thread.
+ * @author Jay Acosta
+ */
+public class StartupTimer {
+
+    // the JVM start, on the System.nanoTime() clock
+    private final long startNanos;
+    // time from the JVM start to the end of each phase, in the order they finished
+    private final Map<String, Long> phases = new LinkedHashMap<>();
+
+    public StartupTimer() {
+        startNanos = System.nanoTime() - ManagementFactory.getRuntimeMXBean().getUptime() * 1_000_000L;
+        phaseDone("jvm");
+    }
+
+    // post: records that the phase finished now
+    public synchronized void phaseDone(String phase) {
+        phases.put(phase, (System.nanoTime() - startNanos) / 1_000_000L);
+    }
+
+    // returns the milliseconds from the JVM start to the end of each phase so far
+    public synchronized Map<String, Long> getPhaseMillis() {
+        return new LinkedHashMap<>(phases);
+    }
+
+    // post: prints how long after the JVM started each phase finished
+    public synchronized void report() {
+
+        StringBuilder line = new StringBuilder("Startup:");
+        for (Map.Entry<String, Long> phase : phases.entrySet()) {
+            line.append(' ').append(phase.getKey()).append(' ').append(phase.getValue()).append(" ms,");
+        }
+        line.setLength(line.length() - 1);
+
+        System.out.println(line);
+    }
+}
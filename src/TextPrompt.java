@@ -0,0 +1,22 @@
+/**
+ * For use in the game DinoType (Version 2)
+ *  A prompt whose segments are already in memory, such as the messages shown
+ *  when there is no file to play.
+ * @author Jay Acosta
+ */
+public final class TextPrompt implements PromptSequence {
+
+    private final String[] segments;
+
+    public TextPrompt(String... segments) {
+        this.segments = segments.clone();
+    }
+
+    public int size() {
+        return segments.length;
+    }
+
+    public String getSegment(int index) {
+        return segments[index];
+    }
+}
@@ -0,0 +1,146 @@
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * For use in the game DinoType (Version 2)
+ *  Plays recorded games back through a GameEngine without a window or a
+ *  clock, as fast as the engine can tick, and checks each one still ends
+ *  the way it did when it was recorded. Run it on a directory of traces to
+ *  catch changes to the game rules:
+ *
+ *      java TraceReplayer [--repeat N] traces/
+ *
+ *  It exits with status 1 if any game ended differently.
+ * @author Jay Acosta
+ */
+public class TraceReplayer {
+
+    // class constants
+    public static final String TRACE_EXTENSION = ".trace";
+    private static final String DEFAULT_TRACES_DIR_PATH = "./traces/";
+
+    /**
+     * pre: trace.isFinished()
+     * post: plays the recorded keys on the ticks they were typed and returns
+     *  the engine as the game ended
+     */
+    public static GameEngine replay(KeystrokeTrace trace) {
+
+        // check preconditions
+        if (!trace.isFinished()) {
+            throw new IllegalArgumentException("only finished games can be replayed");
+        }
+
+        GameEngine engine = new GameEngine(trace.getTickNanos());
+        engine.setPrompt(trace.getPrompt());
+        engine.setDifficulty(trace.getDifficulty());
+
+        KeystrokeTrace.Cursor keys = trace.keys();
+        while (keys.next() && !engine.isOver()) {
+            advanceTo(engine, keys.getTick());
+            engine.keyTyped(keys.getKey());
+        }
+
+        // a lost game keeps running after the last key until the dino runs out of laps
+        advanceTo(engine, trace.getEndTick());
+
+        return engine;
+    }
+
+    // returns true if the replayed game ended exactly the way the recorded one did
+    public static boolean matches(KeystrokeTrace trace, GameEngine engine) {
+        return engine.getState() == trace.getOutcome()
+                && engine.getTicks() == trace.getEndTick()
+                && engine.getLives() == trace.getFinalLives()
+                && engine.getPromptIndex() == trace.getFinalPromptIndex();
+    }
+
+    private static void advanceTo(GameEngine engine, long tick) {
+        while (engine.getTicks() < tick && !engine.isOver()) {
+            engine.tick();
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+
+        int repeat = 1;
+        List<Path> paths = new ArrayList<>();
+
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--repeat") && i + 1 < args.length) {
+                repeat = Integer.parseInt(args[++i]);
+            } else {
+                paths.add(Paths.get(args[i]));
+            }
+        }
+
+        if (paths.isEmpty()) {
+            paths.add(Paths.get(DEFAULT_TRACES_DIR_PATH));
+        }
+
+        List<Path> files = new ArrayList<>();
+        for (Path path : paths) {
+            addTraceFiles(path, files);
+        }
+
+        List<KeystrokeTrace> traces = new ArrayList<>();
+        for (Path file : files) {
+            traces.add(KeystrokeTrace.load(file));
+        }
+
+        int mismatches = 0;
+        long ticks = 0;
+        long start = System.nanoTime();
+
+        for (int round = 0; round < repeat; round++) {
+            for (int i = 0; i < traces.size(); i++) {
+
+                GameEngine engine = replay(traces.get(i));
+                ticks += engine.getTicks();
+
+                if (!matches(traces.get(i), engine)) {
+                    mismatches++;
+                    if (round == 0) {
+                        KeystrokeTrace trace = traces.get(i);
+                        System.out.printf("%s: recorded %s with %d lives on segment %d after %d ticks, "
+                                        + "replayed %s with %d lives on segment %d after %d ticks%n",
+                                files.get(i).getFileName(), trace.getOutcome(), trace.getFinalLives(),
+                                trace.getFinalPromptIndex(), trace.getEndTick(), engine.getState(),
+                                engine.getLives(), engine.getPromptIndex(), engine.getTicks());
+                    }
+                }
+            }
+        }
+
+        double seconds = (System.nanoTime() - start) / 1e9;
+        int games = traces.size() * repeat;
+
+        System.out.printf("Replayed %d games (%d ticks) in %.3f s, %.0f games per second, %d ended differently%n",
+                games, ticks, seconds, games / Math.max(seconds, 1e-9), mismatches);
+
+        if (mismatches > 0) {
+            System.exit(1);
+        }
+    }
+
+    // post: adds the file, or every trace in the directory, to files
+    private static void addTraceFiles(Path path, List<Path> files) throws IOException {
+
+        if (!Files.isDirectory(path)) {
+            files.add(path);
+            return;
+        }
+
+        try (DirectoryStream<Path> directory = Files.newDirectoryStream(path, "*" + TRACE_EXTENSION)) {
+            List<Path> traces = new ArrayList<>();
+            directory.forEach(traces::add);
+            traces.sort(null);
+            files.addAll(traces);
+        }
+    }
+}
@@ -0,0 +1,84 @@
+/**
+ * For use in the game DinoType (Version 2)
+ *  Tracks how much of a prompt segment the player has typed correctly.
+ *  Instead of comparing strings after every key, the matcher remembers the
+ *  index of the first mismatch, so appending or deleting a character is O(1)
+ *  and allocates nothing.
+ * @author Jay Acosta
+ */
+public class TypingMatcher {
+
+    private String prompt;
+
+    // number of characters currently typed by the player
+    private int typedLength;
+    // length of the longest prefix of the typed text that matches the prompt
+    private int matchedLength;
+
+    public TypingMatcher() {
+        reset("");
+    }
+
+    /**
+     * pre: prompt != null
+     * post: starts matching against the given prompt with nothing typed
+     */
+    public void reset(String prompt) {
+
+        // check preconditions
+        if (prompt == null) {
+            throw new IllegalArgumentException("prompt may not be null");
+        }
+
+        this.prompt = prompt;
+        typedLength = 0;
+        matchedLength = 0;
+    }
+
+    // post: records that the player typed the given character
+    public void append(char typed) {
+
+        // the prefix only grows if everything before this character was correct
+        if (matchedLength == typedLength && typedLength < prompt.length()
+                && prompt.charAt(typedLength) == typed) {
+            matchedLength++;
+        }
+
+        typedLength++;
+    }
+
+    // post: records that the player deleted the last character, if any
+    public void deleteLast() {
+
+        if (typedLength > 0) {
+            typedLength--;
+
+            // characters before the first mismatch stay correct
+            if (matchedLength > typedLength) {
+                matchedLength = typedLength;
+            }
+        }
+    }
+
+    // returns true if the typed text is exactly the prompt
+    public boolean isComplete() {
+        return typedLength == prompt.length() && matchedLength == typedLength;
+    }
+
+    // returns true if the typed text is not a prefix of the prompt
+    public boolean hasError() {
+        return matchedLength < typedLength;
+    }
+
+    public int getTypedLength() {
+        return typedLength;
+    }
+
+    public int getMatchedLength() {
+        return matchedLength;
+    }
+
+    public String getPrompt() {
+        return prompt;
+    }
+}
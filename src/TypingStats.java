@@ -0,0 +1,300 @@
+import java.util.Arrays;
+
+/**
+ * For use in the game DinoType (Version 2)
+ *  Words per minute, accuracy and the time between keys over the last
+ *  WINDOW_NANOS of typing. Keys are kept in fixed rings of primitives and
+ *  the totals are updated as keys enter and leave the window, so recording a
+ *  key never allocates and reading the stats never walks the window. The
+ *  time before each ASCII key is also kept in a small histogram of its own.
+ *  Not thread safe, callers share the lock of the game they measure.
+ * @author Jay Acosta
+ */
+public class TypingStats {
+
+    // class constants
+    public static final long WINDOW_NANOS = 30_000_000_000L;
+    // more keys than anyone types in a window, older ones are dropped early if it ever fills
+    private static final int CAPACITY = 4096;
+    // a longer gap is a pause, not a slow key
+    private static final long MAX_INTERVAL_NANOS = 2_000_000_000L;
+    private static final int CHARS_PER_WORD = 5;
+    private static final int KEY_COUNT = 128;
+    // keys typed fewer times than this are not ranked as slow
+    private static final int MIN_KEY_SAMPLES = 3;
+    // the per-key histograms split intervals into half octaves from 10 ms up to MAX_INTERVAL_NANOS
+    private static final long[] BUCKET_LIMIT_NANOS = bucketLimits(10_000_000L, MAX_INTERVAL_NANOS);
+
+    // what each key in the ring did
+    private static final byte CORRECT = 0;
+    private static final byte WRONG = 1;
+    private static final byte DELETE = 2;
+
+    // the keys in the window, oldest at head
+    private final long[] keyNanos = new long[CAPACITY];
+    private final byte[] keyKind = new byte[CAPACITY];
+    private int head;
+    private int size;
+
+    // totals over the window
+    private int correctCount;
+    private int wrongCount;
+
+    // totals over the whole game
+    private int gameKeyCount;
+    private int gameCorrectCount;
+    private int gameWrongCount;
+
+    private boolean started;
+    private long firstKeyNanos;
+    private long lastKeyNanos;
+
+    // time between keys over the whole game, overall and for each ASCII key.
+    // The count of key k in bucket b is keyBuckets[k * buckets + b].
+    private final LatencyHistogram intervals = new LatencyHistogram("keyInterval");
+    private final long[] keyIntervalSum = new long[KEY_COUNT];
+    private final int[] keyIntervalCount = new int[KEY_COUNT];
+    private final int[] keyBuckets = new int[KEY_COUNT * BUCKET_LIMIT_NANOS.length];
+
+    // post: forgets every key
+    public void reset() {
+        head = 0;
+        size = 0;
+        correctCount = 0;
+        wrongCount = 0;
+        gameKeyCount = 0;
+        gameCorrectCount = 0;
+        gameWrongCount = 0;
+        started = false;
+        firstKeyNanos = 0;
+        lastKeyNanos = 0;
+        intervals.reset();
+        Arrays.fill(keyIntervalSum, 0);
+        Arrays.fill(keyIntervalCount, 0);
+        Arrays.fill(keyBuckets, 0);
+    }
+
+    /**
+     * pre: nanos is not before the previous key
+     * post: records a key typed at nanos on the System.nanoTime() clock.
+     *  A deleting key is neither correct nor wrong.
+     */
+    public void keyTyped(long nanos, char key, boolean deleting, boolean correct) {
+
+        if (started) {
+            long interval = nanos - lastKeyNanos;
+
+            if (interval < MAX_INTERVAL_NANOS) {
+                intervals.record(interval);
+
+                if (key < KEY_COUNT) {
+                    keyIntervalSum[key] += interval;
+                    keyIntervalCount[key]++;
+                    keyBuckets[key * BUCKET_LIMIT_NANOS.length + bucketOf(interval)]++;
+                }
+            }
+        } else {
+            started = true;
+            firstKeyNanos = nanos;
+        }
+
+        lastKeyNanos = nanos;
+        expire(nanos);
+
+        if (size == CAPACITY) {
+            removeOldest();
+        }
+
+        int tail = (head + size) % CAPACITY;
+        keyNanos[tail] = nanos;
+        keyKind[tail] = deleting ? DELETE : correct ? CORRECT : WRONG;
+        size++;
+
+        gameKeyCount++;
+        if (!deleting) {
+            if (correct) {
+                correctCount++;
+                gameCorrectCount++;
+            } else {
+                wrongCount++;
+                gameWrongCount++;
+            }
+        }
+    }
+
+    /**
+     * pre: none
+     * post: returns the correct characters typed per minute in the window
+     *  ending at nowNanos, counting five characters as a word
+     */
+    public double getWordsPerMinute(long nowNanos) {
+
+        expire(nowNanos);
+
+        if (size == 0) {
+            return 0;
+        }
+
+        // until the window fills, measure over the time actually spent typing
+        long span = Math.min(WINDOW_NANOS, Math.max(nowNanos - firstKeyNanos, 1_000_000_000L));
+
+        return correctCount / (double) CHARS_PER_WORD * 60e9 / span;
+    }
+
+    // returns the fraction of the characters in the window that were typed wrong
+    public double getErrorRate(long nowNanos) {
+
+        expire(nowNanos);
+
+        int typed = correctCount + wrongCount;
+        return typed == 0 ? 0 : (double) wrongCount / typed;
+    }
+
+    // returns the correct characters typed per minute over a whole game that took durationNanos
+    public double getGameWordsPerMinute(long durationNanos) {
+        return durationNanos <= 0 ? 0 : gameCorrectCount / (double) CHARS_PER_WORD * 60e9 / durationNanos;
+    }
+
+    // returns the fraction of the characters typed over the whole game that were wrong
+    public double getGameErrorRate() {
+        int typed = gameCorrectCount + gameWrongCount;
+        return typed == 0 ? 0 : (double) gameWrongCount / typed;
+    }
+
+    // returns the number of keys typed over the whole game, deletes included
+    public int getGameKeyCount() {
+        return gameKeyCount;
+    }
+
+    // pre: 0 <= quantile <= 1
+    // post: returns the time between keys that the given fraction of keys were faster than
+    public long getIntervalNanos(double quantile) {
+        return intervals.getPercentileNanos(quantile);
+    }
+
+    // returns the ASCII key with the longest average time before it, or 0 if no key has enough samples
+    public char getSlowestKey() {
+
+        char slowest = 0;
+        long slowestMean = -1;
+
+        // start after the space, control characters and the space itself are not worth practising
+        for (int key = '!'; key < KEY_COUNT; key++) {
+            if (keyIntervalCount[key] >= MIN_KEY_SAMPLES) {
+                long mean = keyIntervalSum[key] / keyIntervalCount[key];
+                if (mean > slowestMean) {
+                    slowest = (char) key;
+                    slowestMean = mean;
+                }
+            }
+        }
+
+        return slowest;
+    }
+
+    // returns the average time before the given key in nanoseconds, or 0 if it was never timed
+    public long getMeanIntervalNanos(char key) {
+
+        if (key >= KEY_COUNT || keyIntervalCount[key] == 0) {
+            return 0;
+        }
+
+        return keyIntervalSum[key] / keyIntervalCount[key];
+    }
+
+    /**
+     * pre: 0 <= quantile <= 1
+     * post: returns the time before the given key that the given fraction of its
+     *  intervals were at most, rounded up to the end of its histogram bucket,
+     *  or 0 if the key was never timed
+     */
+    public long getIntervalNanos(char key, double quantile) {
+
+        // check preconditions
+        if (quantile < 0 || quantile > 1) {
+            throw new IllegalArgumentException("quantile must be between 0 and 1, not " + quantile);
+        }
+
+        if (key >= KEY_COUNT || keyIntervalCount[key] == 0) {
+            return 0;
+        }
+
+        // the rank of the interval wanted, counting from 1
+        long rank = Math.max(1, (long) Math.ceil(quantile * keyIntervalCount[key]));
+        int first = key * BUCKET_LIMIT_NANOS.length;
+        long seen = 0;
+
+        for (int bucket = 0; bucket < BUCKET_LIMIT_NANOS.length; bucket++) {
+            seen += keyBuckets[first + bucket];
+            if (seen >= rank) {
+                return BUCKET_LIMIT_NANOS[bucket];
+            }
+        }
+
+        return MAX_INTERVAL_NANOS;
+    }
+
+    // returns a copy of the histogram of the time before the given key, see getBucketLimitsNanos
+    public int[] getKeyHistogram(char key) {
+
+        if (key >= KEY_COUNT) {
+            return new int[BUCKET_LIMIT_NANOS.length];
+        }
+
+        int first = key * BUCKET_LIMIT_NANOS.length;
+        return Arrays.copyOfRange(keyBuckets, first, first + BUCKET_LIMIT_NANOS.length);
+    }
+
+    // returns the upper limit of each bucket of the per-key histograms, in nanoseconds
+    public static long[] getBucketLimitsNanos() {
+        return BUCKET_LIMIT_NANOS.clone();
+    }
+
+    // returns the first bucket whose limit is not below the interval
+    private static int bucketOf(long intervalNanos) {
+
+        int bucket = 0;
+        while (bucket < BUCKET_LIMIT_NANOS.length - 1 && intervalNanos > BUCKET_LIMIT_NANOS[bucket]) {
+            bucket++;
+        }
+
+        return bucket;
+    }
+
+    // returns limits growing by a half octave from lowest, the last one at highest
+    private static long[] bucketLimits(long lowest, long highest) {
+
+        int count = 1;
+        while (lowest * Math.pow(2, count / 2.0) < highest) {
+            count++;
+        }
+
+        long[] limits = new long[count + 1];
+        for (int i = 0; i < count; i++) {
+            limits[i] = Math.round(lowest * Math.pow(2, i / 2.0));
+        }
+        limits[count] = highest;
+
+        return limits;
+    }
+
+    // post: drops the keys that left the window
+    private void expire(long nowNanos) {
+        while (size > 0 && nowNanos - keyNanos[head] > WINDOW_NANOS) {
+            removeOldest();
+        }
+    }
+
+    private void removeOldest() {
+
+        byte kind = keyKind[head];
+        if (kind == CORRECT) {
+            correctCount--;
+        } else if (kind == WRONG) {
+            wrongCount--;
+        }
+
+        head = (head + 1) % CAPACITY;
+        size--;
+    }
+}
@@ -0,0 +1,138 @@
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * For use in the game DinoType (Version 2)
+ *  Tests of PromptCatalog: the shuffle bag plays every name once a round, the
+ *  alias table picks names in proportion to their weights, and the sorted
+ *  names follow every change.
+ * @author Jay Acosta
+ */
+class PromptCatalogTest {
+
+    @Test
+    void shufflePlaysEveryNameOnceARound() {
+
+        PromptCatalog catalog = catalogOf(50);
+        Random random = new Random(42);
+
+        String lastOfRound = null;
+        for (int round = 0; round < 5; round++) {
+
+            Set<String> played = new HashSet<>();
+            for (int i = 0; i < 50; i++) {
+                String name = catalog.pick(PromptCatalog.Selection.SHUFFLE, random);
+                if (i == 0) {
+                    assertNotEquals(lastOfRound, name, "a round started with the name that ended the last");
+                }
+                assertTrue(played.add(name), name + " was played twice in a round");
+                lastOfRound = name;
+            }
+        }
+    }
+
+    @Test
+    void shuffleKeepsTheRoundAcrossChanges() {
+
+        PromptCatalog catalog = catalogOf(20);
+        Random random = new Random(7);
+
+        Set<String> played = new HashSet<>();
+        for (int i = 0; i < 10; i++) {
+            played.add(catalog.pick(PromptCatalog.Selection.SHUFFLE, random));
+        }
+
+        // a new name joins this round, a played name deleted and created again does not
+        String replayed = played.iterator().next();
+        catalog.remove(replayed);
+        catalog.add(replayed);
+        catalog.add("New.txt");
+
+        Set<String> rest = new HashSet<>();
+        for (int i = 0; i < 11; i++) {
+            rest.add(catalog.pick(PromptCatalog.Selection.SHUFFLE, random));
+        }
+
+        assertEquals(11, rest.size());
+        assertTrue(rest.contains("New.txt"));
+        assertFalse(rest.contains(replayed));
+        for (String name : rest) {
+            assertFalse(played.contains(name), name + " was played twice in a round");
+        }
+    }
+
+    @Test
+    void weightedPicksFollowTheWeights() {
+
+        PromptCatalog catalog = catalogOf(10);
+        catalog.setWeight("Song0.txt", 9);
+        Random random = new Random(1);
+
+        int picks = 200_000;
+        Map<String, Integer> counts = new HashMap<>();
+        for (int i = 0; i < picks; i++) {
+            counts.merge(catalog.pick(PromptCatalog.Selection.WEIGHTED, random), 1, Integer::sum);
+        }
+
+        // a weight of 9 among nine names of weight 1 is half the total
+        assertEquals(0.5, counts.get("Song0.txt") / (double) picks, 0.01);
+        for (int i = 1; i < 10; i++) {
+            assertEquals(1 / 18.0, counts.get("Song" + i + ".txt") / (double) picks, 0.01);
+        }
+
+        // the table is rebuilt once the heavy name is gone
+        catalog.remove("Song0.txt");
+        for (int i = 0; i < 10_000; i++) {
+            assertNotEquals("Song0.txt", catalog.pick(PromptCatalog.Selection.WEIGHTED, random));
+        }
+    }
+
+    @Test
+    void rejectsWeightsItCannotUse() {
+
+        PromptCatalog catalog = catalogOf(2);
+
+        assertThrows(IllegalArgumentException.class, () -> catalog.setWeight("Missing.txt", 1));
+        assertThrows(IllegalArgumentException.class, () -> catalog.setWeight("Song0.txt", 0));
+    }
+
+    @Test
+    void keepsTheNamesSorted() {
+
+        PromptCatalog catalog = new PromptCatalog();
+        for (String name : List.of("c.txt", "a.txt", "d.txt", "b.txt", "a.txt")) {
+            catalog.add(name);
+        }
+        catalog.remove("c.txt");
+
+        assertEquals(List.of("a.txt", "b.txt", "d.txt"), catalog.getSortedNames());
+        assertEquals(List.of("b.txt", "d.txt"), catalog.getSortedNames(1, 5));
+        assertEquals(2, catalog.getSortedIndex("d.txt"));
+        assertEquals(-1, catalog.getSortedIndex("c.txt"));
+        assertNull(catalog.getSortedName(3));
+        assertEquals(3, catalog.size());
+
+        assertNull(new PromptCatalog().pick(PromptCatalog.Selection.UNIFORM, new Random()));
+    }
+
+    private static PromptCatalog catalogOf(int count) {
+        PromptCatalog catalog = new PromptCatalog();
+        for (int i = 0; i < count; i++) {
+            catalog.add("Song" + i + ".txt");
+        }
+        return catalog;
+    }
+}
@@ -0,0 +1,114 @@
+import org.junit.jupiter.api.Test;
+
+import javax.swing.SwingUtilities;
+import javax.swing.event.ListDataEvent;
+import javax.swing.event.ListDataListener;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+/**
+ * For use in the game DinoType (Version 2)
+ *  Tests of PromptListModel: every row matches the size the list was told,
+ *  even while the catalog is ahead of the EDT, and rows are described a page
+ *  at a time.
+ * @author Jay Acosta
+ */
+class PromptListModelTest {
+
+    @Test
+    void rowsFollowTheCatalogOneEventAtATime() throws Exception {
+
+        PromptCatalog catalog = new PromptCatalog();
+        for (String name : List.of("b.txt", "d.txt", "f.txt")) {
+            catalog.add(name);
+        }
+
+        PromptListModel model = onEdt(catalog);
+
+        // what the list would show after each event it is given
+        List<List<String>> seen = new ArrayList<>();
+        SwingUtilities.invokeAndWait(() -> model.addListDataListener(new ListDataListener() {
+            public void intervalAdded(ListDataEvent e) {
+                seen.add(rows(model));
+            }
+
+            public void intervalRemoved(ListDataEvent e) {
+                seen.add(rows(model));
+            }
+
+            public void contentsChanged(ListDataEvent e) {
+                seen.add(rows(model));
+            }
+        }));
+
+        // hold the EDT so the catalog gets ahead of the list
+        CountDownLatch held = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        SwingUtilities.invokeLater(() -> {
+            held.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        held.await();
+
+        catalog.add("a.txt");
+        catalog.remove("d.txt");
+        catalog.add("e.txt");
+
+        // a removed name still shows in its row until the list is told
+        assertEquals(3, model.getSize());
+        assertEquals(List.of("b.txt", "d.txt", "f.txt"), rows(model));
+        assertNull(model.getElementAt(3));
+
+        release.countDown();
+        SwingUtilities.invokeAndWait(() -> {
+        });
+
+        assertEquals(List.of(List.of("a.txt", "b.txt", "d.txt", "f.txt"), List.of("a.txt", "b.txt", "f.txt"),
+                List.of("a.txt", "b.txt", "e.txt", "f.txt")), seen);
+        assertEquals(catalog.getSortedNames(), rows(model));
+    }
+
+    @Test
+    void describesEveryRowOnItsPage() throws Exception {
+
+        PromptCatalog catalog = new PromptCatalog();
+        for (int i = 0; i < 200; i++) {
+            catalog.add(String.format("Song%03d.txt", i));
+        }
+
+        PromptListModel model = onEdt(catalog);
+
+        List<String> descriptions = new ArrayList<>();
+        SwingUtilities.invokeAndWait(() -> {
+            for (int i = model.getSize() - 1; i >= 0; i--) {
+                descriptions.add(0, model.getDescription(i));
+            }
+        });
+
+        for (int i = 0; i < 200; i++) {
+            assertEquals(String.format("SONG%03d.TXT", i), descriptions.get(i));
+        }
+    }
+
+    private static PromptListModel onEdt(PromptCatalog catalog) throws Exception {
+        PromptListModel[] model = new PromptListModel[1];
+        SwingUtilities.invokeAndWait(() -> model[0] = new PromptListModel(catalog, String::toUpperCase));
+        return model[0];
+    }
+
+    private static List<String> rows(PromptListModel model) {
+        List<String> rows = new ArrayList<>();
+        for (int i = 0; i < model.getSize(); i++) {
+            rows.add(model.getElementAt(i));
+        }
+        return rows;
+    }
+}
@@ -0,0 +1,105 @@
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * For use in the game DinoType (Version 2)
+ *  Tests of RaceProtocol framing: a frame is only complete once all of it has
+ *  arrived, frames read back as written, and strings and progress are cut to
+ *  what their fields hold.
+ * @author Jay Acosta
+ */
+class RaceProtocolTest {
+
+    @Test
+    void readsBackTheFramesItWrote() {
+
+        ByteBuffer buffer = ByteBuffer.allocate(RaceProtocol.MAX_FRAME_BYTES);
+
+        int join = RaceProtocol.beginFrame(buffer, RaceProtocol.JOIN);
+        RaceProtocol.putString(buffer, "Jay", RaceProtocol.MAX_NAME_BYTES);
+        RaceProtocol.endFrame(buffer, join);
+
+        int progress = RaceProtocol.beginFrame(buffer, RaceProtocol.PROGRESS);
+        RaceProtocol.putProgress(buffer, 5_000, 3, 2, GameEngine.State.PLAYING.ordinal());
+        RaceProtocol.endFrame(buffer, progress);
+
+        buffer.flip();
+
+        // the type and a name of a two byte count and three bytes
+        assertEquals(1 + 2 + 3, RaceProtocol.completeFrameLength(buffer));
+        buffer.getShort();
+        assertEquals(RaceProtocol.JOIN, buffer.get());
+        assertEquals("Jay", RaceProtocol.getString(buffer));
+
+        assertEquals(1 + RaceProtocol.PROGRESS_BYTES, RaceProtocol.completeFrameLength(buffer));
+        buffer.getShort();
+        assertEquals(RaceProtocol.PROGRESS, buffer.get());
+        assertEquals(5_000, buffer.getShort() & 0xFFFF);
+        assertEquals(3, buffer.getShort() & 0xFFFF);
+        assertEquals(2, buffer.getShort());
+        assertEquals(GameEngine.State.PLAYING.ordinal(), buffer.get());
+
+        assertFalse(buffer.hasRemaining());
+    }
+
+    @Test
+    void waitsForTheWholeFrame() {
+
+        ByteBuffer frame = ByteBuffer.allocate(64);
+        int start = RaceProtocol.beginFrame(frame, RaceProtocol.WELCOME);
+        frame.putInt(42);
+        RaceProtocol.endFrame(frame, start);
+        frame.flip();
+
+        int whole = frame.remaining();
+        for (int arrived = 0; arrived < whole; arrived++) {
+            ByteBuffer partial = frame.duplicate();
+            partial.limit(arrived);
+            assertEquals(-1, RaceProtocol.completeFrameLength(partial), arrived + " bytes are not a frame");
+        }
+
+        assertEquals(1 + 4, RaceProtocol.completeFrameLength(frame));
+    }
+
+    @Test
+    void cutsStringsToTheirLimit() {
+
+        ByteBuffer buffer = ByteBuffer.allocate(256);
+        RaceProtocol.putString(buffer, "x".repeat(100), RaceProtocol.MAX_NAME_BYTES);
+        buffer.flip();
+
+        assertEquals(2 + RaceProtocol.MAX_NAME_BYTES, buffer.remaining());
+        assertEquals("x".repeat(RaceProtocol.MAX_NAME_BYTES), RaceProtocol.getString(buffer));
+
+        // a name with characters outside ASCII is measured in bytes
+        buffer.clear();
+        RaceProtocol.putString(buffer, "d\u00edno", RaceProtocol.MAX_NAME_BYTES);
+        buffer.flip();
+        assertEquals("d\u00edno".getBytes(StandardCharsets.UTF_8).length, buffer.getShort(0));
+        assertEquals("d\u00edno", RaceProtocol.getString(buffer));
+    }
+
+    @Test
+    void clampsProgressToItsFields() {
+
+        ByteBuffer buffer = ByteBuffer.allocate(RaceProtocol.PROGRESS_BYTES);
+        RaceProtocol.putProgress(buffer, RaceProtocol.PROGRESS_SCALE, 100_000, 100_000, 0);
+        buffer.flip();
+
+        assertEquals(RaceProtocol.PROGRESS_SCALE, buffer.getShort() & 0xFFFF);
+        assertEquals(0xFFFF, buffer.getShort() & 0xFFFF);
+        assertEquals(Short.MAX_VALUE, buffer.getShort());
+
+        assertTrue(RaceProtocol.isValidProgress(0, 0));
+        assertTrue(RaceProtocol.isValidProgress(RaceProtocol.PROGRESS_SCALE, GameEngine.State.values().length - 1));
+        assertFalse(RaceProtocol.isValidProgress(RaceProtocol.PROGRESS_SCALE + 1, 0));
+        assertFalse(RaceProtocol.isValidProgress(-1, 0));
+        assertFalse(RaceProtocol.isValidProgress(0, GameEngine.State.values().length));
+    }
+}
@@ -0,0 +1,176 @@
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * For use in the game DinoType (Version 2)
+ *  Tests of SessionStore: results survive the game closing, a record whose
+ *  checksum does not match is dropped and written over, and compaction keeps
+ *  the best and the most recent results in their order.
+ * @author Jay Acosta
+ */
+class SessionStoreTest {
+
+    // the first bytes of the log, before the first record
+    private static final int HEADER_BYTES = 8;
+    private static final int RECORD_HEADER_BYTES = 8;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void keepsResultsAcrossReopening() throws IOException {
+
+        Path path = directory.resolve("sessions.log");
+        List<SessionResult> written = List.of(result("Jay", "TakeOnMe.txt", 0, 80f, 1),
+                result("Jay", "TakeOnMe.txt", 1, 65.5f, 2), result("Ana", "Africa.txt", 2, 102f, 3));
+
+        SessionStore store = SessionStore.open(path);
+        for (SessionResult result : written) {
+            assertTrue(store.append(result));
+        }
+        store.close();
+
+        SessionStore reopened = SessionStore.open(path);
+        assertResults(written, reopened.readAll());
+        reopened.close();
+    }
+
+    @Test
+    void dropsARecordWhoseChecksumDoesNotMatch() throws IOException {
+
+        Path path = directory.resolve("sessions.log");
+        List<SessionResult> written = List.of(result("Jay", "TakeOnMe.txt", 0, 80f, 1),
+                result("Jay", "TakeOnMe.txt", 0, 81f, 2), result("Jay", "TakeOnMe.txt", 0, 82f, 3));
+
+        SessionStore store = SessionStore.open(path);
+        for (SessionResult result : written) {
+            store.append(result);
+        }
+        store.close();
+
+        // flip a byte in the body of the last record, as a crash part way through writing it could
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+
+            ByteBuffer length = ByteBuffer.allocate(4);
+            long position = HEADER_BYTES;
+            for (int i = 0; i < written.size() - 1; i++) {
+                length.clear();
+                channel.read(length, position);
+                position += RECORD_HEADER_BYTES + length.getInt(0);
+            }
+
+            ByteBuffer body = ByteBuffer.allocate(1);
+            channel.read(body, position + RECORD_HEADER_BYTES);
+            body.put(0, (byte) (body.get(0) ^ 0xFF));
+            body.rewind();
+            channel.write(body, position + RECORD_HEADER_BYTES);
+        }
+
+        SessionStore recovered = SessionStore.open(path);
+        assertResults(written.subList(0, 2), recovered.readAll());
+
+        // the next result goes where the torn one was
+        SessionResult next = result("Jay", "TakeOnMe.txt", 0, 90f, 4);
+        recovered.append(next);
+        recovered.close();
+
+        SessionStore reopened = SessionStore.open(path);
+        assertResults(List.of(written.get(0), written.get(1), next), reopened.readAll());
+        reopened.close();
+    }
+
+    @Test
+    void compactsToTheBestAndMostRecentResults() throws IOException {
+
+        Path path = directory.resolve("sessions.log");
+        // long player names fill the log past the size it is compacted at with fewer results
+        String player = "p".repeat(250);
+        int count = 40_000;
+
+        List<SessionResult> written = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            // every speed is different, 7919 and count share no factor
+            float wordsPerMinute = (i * 7919L) % count;
+            written.add(result(player, "Song" + i % 4 + ".txt", (i / 4) % 2, wordsPerMinute, i));
+        }
+
+        SessionStore store = SessionStore.open(path);
+        for (SessionResult result : written) {
+            assertTrue(store.append(result));
+        }
+        store.close();
+
+        SessionStore reopened = SessionStore.open(path);
+        List<SessionResult> kept = reopened.readAll();
+        reopened.close();
+
+        assertTrue(kept.size() < count, "the log was never compacted");
+
+        Set<Long> keptTimes = new HashSet<>();
+        long previousTime = -1;
+        for (SessionResult result : kept) {
+            assertTrue(result.getTimeMillis() > previousTime, "results are out of order");
+            previousTime = result.getTimeMillis();
+            keptTimes.add(result.getTimeMillis());
+        }
+
+        for (int i = count - SessionStore.KEEP_RECENT; i < count; i++) {
+            assertTrue(keptTimes.contains((long) i), "recent result " + i + " was dropped");
+        }
+
+        Map<String, List<SessionResult>> groups = new HashMap<>();
+        for (SessionResult result : written) {
+            groups.computeIfAbsent(result.getPromptName() + result.getDifficulty(), key -> new ArrayList<>())
+                    .add(result);
+        }
+        for (List<SessionResult> group : groups.values()) {
+            group.sort(SessionResult.BEST_FIRST);
+            for (SessionResult best : group.subList(0, SessionStore.KEEP_BEST)) {
+                assertTrue(keptTimes.contains(best.getTimeMillis()),
+                        "a best result of " + best.getPromptName() + " was dropped");
+            }
+        }
+    }
+
+    private static SessionResult result(String player, String prompt, int difficulty, float wordsPerMinute,
+                                        long timeMillis) {
+        return new SessionResult(player, prompt, difficulty, true, timeMillis, 60_000, wordsPerMinute, 0.05f,
+                300, 180f);
+    }
+
+    private static void assertResults(List<SessionResult> expected, List<SessionResult> actual) {
+
+        assertEquals(expected.size(), actual.size());
+
+        Comparator<SessionResult> fields = Comparator.comparing(SessionResult::getPlayerName)
+                .thenComparing(SessionResult::getPromptName)
+                .thenComparingInt(SessionResult::getDifficulty)
+                .thenComparing(SessionResult::isWon)
+                .thenComparingLong(SessionResult::getTimeMillis)
+                .thenComparingInt(SessionResult::getDurationMillis)
+                .thenComparingDouble(SessionResult::getWordsPerMinute)
+                .thenComparingDouble(SessionResult::getErrorRate)
+                .thenComparingInt(SessionResult::getKeyCount)
+                .thenComparingDouble(SessionResult::getMedianKeyMillis);
+
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(0, fields.compare(expected.get(i), actual.get(i)), "result " + i + " differs");
+        }
+    }
+}
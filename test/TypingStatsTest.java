@@ -0,0 +1,78 @@
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * For use in the game DinoType (Version 2)
+ *  Tests of TypingStats: keys leave the window WINDOW_NANOS after they were
+ *  typed, while the totals of the whole game keep them.
+ * @author Jay Acosta
+ */
+class TypingStatsTest {
+
+    // an arbitrary point on the System.nanoTime() clock
+    private static final long START = 1_000_000_000_000L;
+    private static final long SECOND = 1_000_000_000L;
+
+    @Test
+    void measuresTheWindowSoFar() {
+
+        TypingStats stats = new TypingStats();
+
+        // fifty correct keys, ten a second
+        for (int i = 0; i < 50; i++) {
+            stats.keyTyped(START + i * SECOND / 10, 'a', false, true);
+        }
+
+        // fifty characters are ten words, typed in five seconds
+        assertEquals(120, stats.getWordsPerMinute(START + 5 * SECOND), 1e-9);
+        assertEquals(0, stats.getErrorRate(START + 5 * SECOND));
+    }
+
+    @Test
+    void forgetsKeysOlderThanTheWindow() {
+
+        TypingStats stats = new TypingStats();
+
+        // ten wrong keys, then ten correct ones twenty seconds later
+        for (int i = 0; i < 10; i++) {
+            stats.keyTyped(START + i * SECOND / 10, 'a', false, false);
+        }
+        for (int i = 0; i < 10; i++) {
+            stats.keyTyped(START + 20 * SECOND + i * SECOND / 10, 'a', false, true);
+        }
+
+        assertEquals(0.5, stats.getErrorRate(START + 25 * SECOND));
+
+        // the wrong keys leave the window once they are older than it
+        assertEquals(0.5, stats.getErrorRate(START + TypingStats.WINDOW_NANOS));
+        assertEquals(0, stats.getErrorRate(START + TypingStats.WINDOW_NANOS + SECOND));
+        assertEquals(10 / 5.0 * 60 / 30, stats.getWordsPerMinute(START + TypingStats.WINDOW_NANOS + SECOND), 1e-9);
+
+        // and the correct ones after them
+        assertEquals(0, stats.getWordsPerMinute(START + 20 * SECOND + TypingStats.WINDOW_NANOS + SECOND));
+
+        // the game keeps every key
+        assertEquals(20, stats.getGameKeyCount());
+        assertEquals(0.5, stats.getGameErrorRate());
+    }
+
+    @Test
+    void countsDeletesAsKeysOnly() {
+
+        TypingStats stats = new TypingStats();
+
+        stats.keyTyped(START, 'a', false, true);
+        stats.keyTyped(START + SECOND / 10, 'b', false, false);
+        stats.keyTyped(START + 2 * SECOND / 10, '\b', true, false);
+        stats.keyTyped(START + 3 * SECOND / 10, 'c', false, true);
+
+        assertEquals(4, stats.getGameKeyCount());
+        assertEquals(1 / 3.0, stats.getErrorRate(START + SECOND), 1e-9);
+        assertEquals(1 / 3.0, stats.getGameErrorRate(), 1e-9);
+
+        stats.reset();
+        assertEquals(0, stats.getGameKeyCount());
+        assertEquals(0, stats.getWordsPerMinute(START + SECOND));
+    }
+}